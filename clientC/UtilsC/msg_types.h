@@ -8,6 +8,8 @@ enum {
   CP_TYPE_CLIENT_ACK   = 0x01, // s -> c
   CP_TYPE_INIT_GEOM    = 0x02, // s -> c (LEGACY INIT_STATIC)
   CP_TYPE_INIT_STATIC  = 0x02, // alias
+  CP_TYPE_UDP_OFFER    = 0x03, // s -> c (TCP: u16 udp port, u32 token)
+  CP_TYPE_UDP_HELLO    = 0x04, // c -> s (UDP: u32 token), echoed back once bound
   CP_TYPE_STATE_BUNDLE = 0x10, // s -> c (TLV adentro)
   CP_TYPE_TLV_STATE_HEADER = 0x11,
   CP_TYPE_TLV_PLAYER_CORR  = 0x12,
@@ -34,8 +36,16 @@ enum {
 };
 
 // TLVs (dentro de STATE_BUNDLE)
+// Besides these, a bundle may batch events: TLV type = frame type (CP_TYPE_*),
+// value = that frame's payload, applied in order.
 enum {
   TLV_STATE_HEADER  = 0x10, // u32 tick
   TLV_PLAYER_CORR   = 0x11, // u8 grounded, i16 platId, i16 yCorr, i16 vyCorr
-  TLV_ENTITIES_CORR = 0x12  // futuro
+  TLV_ENTITIES_CORR = 0x12, // u8 count + count * (kind, spriteId, x, y)
+  TLV_ENTITIES_DELTA = 0x13 // u8 count, u8 changed, changed * (u8 index + entity)
+};
+
+// SPECTATE_REQUEST flags (optional second payload byte)
+enum {
+  SPECTATE_FLAG_DELTA = 0x01 // spectator applies TLV_ENTITIES_DELTA
 };
\ No newline at end of file
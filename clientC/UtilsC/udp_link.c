@@ -0,0 +1,93 @@
+// UtilsC/udp_link.c
+#include "udp_link.h"
+#include "proto.h"
+#include "msg_types.h"
+#include "../clientPlayer/net.h"
+#include <stdio.h>
+#include <string.h>
+
+#define UDP_HELLO_EVERY   30 // frames between hellos (~0.5 s at 60 fps)
+#define UDP_HELLO_TRIES   10 // then give up and stay on TCP
+#define UDP_MAX_DATAGRAM  2048
+
+static int      g_udpSock = -1;
+static uint32_t g_udpToken = 0;
+static bool     g_udpReady = false;
+static int      g_helloCountdown = 0;
+static int      g_helloTries = 0;
+
+// last SPECTATOR_STATE sequence number (header reserved field)
+static bool     g_haveSeq = false;
+static uint16_t g_lastSeq = 0;
+
+static void send_hello(void){
+    uint8_t raw[16 + 4];
+    raw[0]=CP_VERSION; raw[1]=CP_TYPE_UDP_HELLO; wr_be16(&raw[2],0);
+    wr_be32(&raw[4],0); wr_be32(&raw[8],0); wr_be32(&raw[12],4);
+    wr_be32(&raw[16],g_udpToken);
+    net_udp_send(g_udpSock, raw, sizeof(raw));
+    g_helloTries++;
+    g_helloCountdown = UDP_HELLO_EVERY;
+}
+
+void udp_link_offer(const char* serverIp, const uint8_t* payload, uint32_t len){
+    if (len < 6 || g_udpSock >= 0) return;
+    uint16_t port = be16(payload);
+    g_udpToken = be32(payload + 2);
+
+    g_udpSock = net_udp_open(serverIp, port);
+    if (g_udpSock < 0) {
+        fprintf(stderr, "[UDP] could not open socket, staying on TCP\n");
+        return;
+    }
+    send_hello();
+}
+
+bool udp_link_ready(void){
+    return g_udpReady;
+}
+
+void udp_link_poll(UdpFrameHandler onFrame){
+    if (g_udpSock < 0) return;
+
+    if (!g_udpReady && g_helloTries < UDP_HELLO_TRIES && --g_helloCountdown <= 0) {
+        send_hello();
+    }
+
+    uint8_t raw[UDP_MAX_DATAGRAM];
+    long n;
+    while ((n = net_udp_recv(g_udpSock, raw, sizeof(raw))) > 0) {
+        if (n < 16 || raw[0] != CP_VERSION || be32(&raw[12]) != (uint32_t)(n - 16)) continue;
+        uint8_t type = raw[1];
+
+        if (type == CP_TYPE_UDP_HELLO) {
+            if (!g_udpReady && n >= 20 && be32(&raw[16]) == g_udpToken) {
+                g_udpReady = true;
+                fprintf(stdout, "[UDP] fast path ready\n");
+            }
+            continue;
+        }
+        if (type == CP_TYPE_SPECTATOR_STATE) {
+            uint16_t seq = be16(&raw[2]);
+            if (g_haveSeq && (int16_t)(seq - g_lastSeq) <= 0) continue; // late or repeated
+            g_haveSeq = true;
+            g_lastSeq = seq;
+        }
+        if (onFrame) onFrame(type, raw + 16, (uint32_t)(n - 16));
+    }
+}
+
+bool udp_link_send_frame(uint8_t type, const void* payload, uint32_t len){
+    if (!g_udpReady || 16 + len > UDP_MAX_DATAGRAM) return false;
+    uint8_t raw[UDP_MAX_DATAGRAM];
+    raw[0]=CP_VERSION; raw[1]=type; wr_be16(&raw[2],0);
+    wr_be32(&raw[4],0); wr_be32(&raw[8],0); wr_be32(&raw[12],len);
+    if (len) memcpy(raw + 16, payload, len);
+    return net_udp_send(g_udpSock, raw, 16 + len) == (long)(16 + len);
+}
+
+void udp_link_close(void){
+    if (g_udpSock >= 0) net_close(g_udpSock);
+    g_udpSock = -1;
+    g_udpReady = false;
+}
@@ -0,0 +1,25 @@
+// UtilsC/udp_link.h
+#pragma once
+#include <stdint.h>
+#include <stdbool.h>
+
+// Optional datagram path for PLAYER_PROPOSED / SPECTATOR_STATE.
+// The server offers it over TCP (UDP_OFFER); until the server echoes our
+// UDP_HELLO, udp_link_ready() is false and everything stays on TCP.
+
+typedef void (*UdpFrameHandler)(uint8_t type, const uint8_t* payload, uint32_t len);
+
+// Handle a UDP_OFFER payload (u16 port, u32 token): open the socket and say hello.
+void udp_link_offer(const char* serverIp, const uint8_t* payload, uint32_t len);
+
+// True once the server has confirmed the datagram path.
+bool udp_link_ready(void);
+
+// Drain waiting datagrams (call once per frame). Stale or repeated
+// SPECTATOR_STATE datagrams are dropped; the rest go to onFrame.
+void udp_link_poll(UdpFrameHandler onFrame);
+
+// Send one frame as a datagram; false if the path is not ready.
+bool udp_link_send_frame(uint8_t type, const void* payload, uint32_t len);
+
+void udp_link_close(void);
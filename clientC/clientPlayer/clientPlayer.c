@@ -10,6 +10,7 @@
 #include "../UI/Game/game.h"
 #include "net.h"
 #include "../UtilsC/tlv.h"
+#include "../UtilsC/udp_link.h"
 
 
 
@@ -93,6 +94,9 @@ static void on_state_bundle(const uint8_t* payloadPtr, uint32_t payloadLen){
             int16_t yCorrection  = (int16_t)((tlvValuePtr[3]<<8)|tlvValuePtr[4]);
             int16_t vyCorrection = (int16_t)((tlvValuePtr[5]<<8)|tlvValuePtr[6]);
             game_apply_correction(tick, grounded, platformId, yCorrection, vyCorrection);
+        } else if (tlvType != CP_TYPE_STATE_BUNDLE){
+            // batched event: TLV type is the frame type, value is its payload
+            disp_handle(tlvType, tlvValuePtr, tlvLen);
         }
     }
 }
@@ -135,6 +139,18 @@ static void on_game_restart(const uint8_t* p, uint32_t n){
     game_restart();//restart game after a game over
 }
 
+// ---- UDP fast path ----
+static const char* g_serverIp = NULL;
+static uint32_t g_gameId = 0; // room assigned in CLIENT_ACK, echoed in our frames
+
+static void on_udp_offer(const uint8_t* p, uint32_t n){
+    udp_link_offer(g_serverIp, p, n);
+}
+
+static void on_udp_frame(uint8_t type, const uint8_t* p, uint32_t n){
+    disp_handle(type, p, n);
+}
+
 // ---- send the player proposed ----
 //receive proposed state of the player (socket connected, clientId, position, flag) from game and send to server
 static int send_player_proposed(int socketFd, uint32_t clientId, uint32_t tick, int16_t posX,int16_t posY,int16_t velX,int16_t velY,uint8_t flags,
@@ -158,7 +174,10 @@ static int send_player_proposed(int socketFd, uint32_t clientId, uint32_t tick,
         memcpy(outBuf + 13, entitiesTlv, entitiesTlvLen);
     }
     
-    int result = cp_send_frame(socketFd, CP_TYPE_PLAYER_PROP, clientId, 0, outBuf, (uint32_t)totalLen) ? 1 : 0;
+    // datagram once the server confirmed the UDP path (tick orders them), TCP otherwise
+    int result = udp_link_ready()
+        ? (udp_link_send_frame(CP_TYPE_PLAYER_PROP, outBuf, (uint32_t)totalLen) ? 1 : 0)
+        : (cp_send_frame(socketFd, CP_TYPE_PLAYER_PROP, clientId, g_gameId, outBuf, (uint32_t)totalLen) ? 1 : 0);
     free(outBuf);
     return result;
 }
@@ -166,12 +185,12 @@ static int send_player_proposed(int socketFd, uint32_t clientId, uint32_t tick,
 // ---- send notifications to server ----
 static int send_notify_death_collision(int socketFd, uint32_t clientId)
 {
-    return cp_send_frame(socketFd, CP_TYPE_NOTIFY_DEATH_COLLISION, clientId, 0, NULL, 0) ? 1 : 0;
+    return cp_send_frame(socketFd, CP_TYPE_NOTIFY_DEATH_COLLISION, clientId, g_gameId, NULL, 0) ? 1 : 0;
 }
 
 static int send_notify_victory(int socketFd, uint32_t clientId)
 {
-    return cp_send_frame(socketFd, CP_TYPE_NOTIFY_VICTORY, clientId, 0, NULL, 0) ? 1 : 0;
+    return cp_send_frame(socketFd, CP_TYPE_NOTIFY_VICTORY, clientId, g_gameId, NULL, 0) ? 1 : 0;
 }
 
 static int send_notify_fruit_pick(int socketFd, uint32_t clientId, int16_t fruitX, int16_t fruitY){
@@ -180,13 +199,13 @@ static int send_notify_fruit_pick(int socketFd, uint32_t clientId, int16_t fruit
     buf[1] = fruitX & 0xFF;
     buf[2] = fruitY >> 8;
     buf[3] = fruitY & 0xFF;
-    return cp_send_frame(socketFd, CP_TYPE_NOTIFY_FRUIT_PICK, clientId, 0, buf, sizeof(buf)) ? 1 : 0;
+    return cp_send_frame(socketFd, CP_TYPE_NOTIFY_FRUIT_PICK, clientId, g_gameId, buf, sizeof(buf)) ? 1 : 0;
 }
 
 //sent request to restart the game after game over
 static int send_request_restart(int socketFd, uint32_t clientId)
 {
-    return cp_send_frame(socketFd, CP_TYPE_REQUEST_RESTART, clientId, 0, NULL, 0) ? 1 : 0;
+    return cp_send_frame(socketFd, CP_TYPE_REQUEST_RESTART, clientId, g_gameId, NULL, 0) ? 1 : 0;
 }
 
 
@@ -201,6 +220,7 @@ int run_player_client(const char* ip, uint16_t port)
     }
 
     int socketFd = net_connect(ip, port); // socket TCP
+    g_serverIp = ip;
     if (socketFd < 0) {
         net_cleanup();
         return 1;
@@ -230,6 +250,7 @@ int run_player_client(const char* ip, uint16_t port)
     disp_register(CP_TYPE_SCORE_UPDATE, on_score_update);
     disp_register(CP_TYPE_CROC_SPEED_INCREASE, on_croc_speed_increase);
     disp_register(CP_TYPE_GAME_RESTART, on_game_restart);
+    disp_register(CP_TYPE_UDP_OFFER, on_udp_offer);
 
 
 
@@ -243,6 +264,7 @@ int run_player_client(const char* ip, uint16_t port)
         fprintf(stderr, "Bad ACK (expected CLIENT_ACK)\n");
         goto done;
     }
+    g_gameId = header.gameId;
 
     // read payload, get role byte as minimun
     if (header.payloadLen > 0) {
@@ -307,6 +329,7 @@ int run_player_client(const char* ip, uint16_t port)
             disp_handle(header.type, payloadBuf, header.payloadLen);
             free(payloadBuf);
         }
+        udp_link_poll(on_udp_frame);
 
             ProposedState proposedState;
         game_update_and_get_proposal(cp_get_static(), &proposedState);
@@ -357,6 +380,7 @@ int run_player_client(const char* ip, uint16_t port)
     game_shutdown();
 
 done:
+    udp_link_close();
     cp_free_static();
     net_close(socketFd);
     net_cleanup();
@@ -22,4 +22,13 @@ long net_write_n(int sock, const void *buf, size_t n);
 
 void net_close(int sock);
 
+// UDP socket bound to one server address, non-blocking (returns handle or -1)
+int  net_udp_open(const char *ipv4, uint16_t port);
+
+// Send one datagram (returns bytes sent or -1)
+long net_udp_send(int sock, const void *buf, size_t n);
+
+// Receive one datagram without blocking (returns its size, 0 if none waiting, -1 on error)
+long net_udp_recv(int sock, void *buf, size_t cap);
+
 #endif // NET_H
@@ -7,6 +7,7 @@
 #include <string.h>
 #include <stdio.h>
 #include <sys/ioctl.h>
+#include <fcntl.h>
 
 // Initializes the networking system (placeholder for platforms that need setup)
 bool net_init(void) { 
@@ -100,3 +101,46 @@ void net_close(int sock) {
     close(sock); 
 }
 
+// Open a non-blocking UDP socket connected to an IPv4 address and port,
+// so send/recv only talk to the server.
+// Returns: socket fd on success, -1 on error.
+int net_udp_open(const char *ipv4, uint16_t port) {
+    int s = socket(AF_INET, SOCK_DGRAM, 0);
+    if (s < 0) {
+        perror("socket(udp)");
+        return -1;
+    }
+
+    struct sockaddr_in addr;
+    memset(&addr, 0, sizeof(addr));
+    addr.sin_family = AF_INET;
+    addr.sin_port   = htons(port);
+
+    if (inet_pton(AF_INET, ipv4, &addr.sin_addr) != 1 ||
+        connect(s, (struct sockaddr*)&addr, sizeof(addr)) < 0 ||
+        fcntl(s, F_SETFL, fcntl(s, F_GETFL, 0) | O_NONBLOCK) < 0) {
+        close(s);
+        return -1;
+    }
+
+    return s;
+}
+
+// Send one datagram to the connected address.
+// Returns: bytes sent, or -1 on error.
+long net_udp_send(int sock, const void *buf, size_t n) {
+    ssize_t r = send(sock, buf, n, 0);
+    return (r < 0) ? -1 : (long)r;
+}
+
+// Receive one datagram if one is waiting.
+// Returns: datagram size, 0 if nothing is waiting, or -1 on error.
+long net_udp_recv(int sock, void *buf, size_t cap) {
+    ssize_t r = recv(sock, buf, cap, 0);
+    if (r < 0) {
+        // nothing queued, or an ICMP error from an earlier send: not fatal
+        if (errno == EAGAIN || errno == EWOULDBLOCK || errno == EINTR || errno == ECONNREFUSED) return 0;
+        return -1;
+    }
+    return (long)r;
+}
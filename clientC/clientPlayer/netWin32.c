@@ -103,3 +103,47 @@ void net_close(int sock) {
     closesocket((SOCKET)sock);
 }
 
+// Open a non-blocking UDP socket connected to an IPv4 address and port,
+// so send/recv only talk to the server.
+// Returns: socket handle on success, or -1 on error.
+int net_udp_open(const char *ipv4, uint16_t port) {
+    SOCKET s = socket(AF_INET, SOCK_DGRAM, IPPROTO_UDP);
+    if (s == INVALID_SOCKET) {
+        return -1;
+    }
+
+    struct sockaddr_in addr;
+    memset(&addr, 0, sizeof(addr));
+    addr.sin_family = AF_INET;
+    addr.sin_port   = htons(port);
+
+    u_long nonBlocking = 1;
+    if (InetPtonA(AF_INET, ipv4, &addr.sin_addr) != 1 ||
+        connect(s, (struct sockaddr*)&addr, sizeof(addr)) == SOCKET_ERROR ||
+        ioctlsocket(s, FIONBIO, &nonBlocking) == SOCKET_ERROR) {
+        closesocket(s);
+        return -1;
+    }
+
+    return (int)s;
+}
+
+// Send one datagram to the connected address.
+// Returns: bytes sent, or -1 on error.
+long net_udp_send(int sock, const void *buf, size_t n) {
+    int r = send((SOCKET)sock, (const char*)buf, (int)n, 0);
+    return (r == SOCKET_ERROR) ? -1 : (long)r;
+}
+
+// Receive one datagram if one is waiting.
+// Returns: datagram size, 0 if nothing is waiting, or -1 on error.
+long net_udp_recv(int sock, void *buf, size_t cap) {
+    int r = recv((SOCKET)sock, (char*)buf, (int)cap, 0);
+    if (r == SOCKET_ERROR) {
+        // nothing queued, or an ICMP error from an earlier send: not fatal
+        int err = WSAGetLastError();
+        if (err == WSAEWOULDBLOCK || err == WSAECONNRESET) return 0;
+        return -1;
+    }
+    return (long)r;
+}
@@ -9,12 +9,90 @@
 #include "../UI/Game/game.h"
 #include "net.h"
 #include "../UtilsC/tlv.h"
+#include "../UtilsC/entities_tlv.h"
+#include "../UtilsC/udp_link.h"
 
 // Dispatcher type for handling incoming frames
 typedef void (*FrameHandler)(const uint8_t*, uint32_t);
 static FrameHandler g_frameHandlers[256];
 
 // ---- spectator state from the server ----
+
+// Entity list as last received; TLV_ENTITIES_DELTA frames patch it in place.
+#define SPEC_MAX_ENTITIES 255
+static EntitySnapshot g_specEntities[SPEC_MAX_ENTITIES];
+static uint8_t g_specEntityCount = 0;
+
+static void read_entity(const uint8_t* p, EntitySnapshot* e)
+{
+    e->kind     = p[0];
+    e->spriteId = p[1];
+    e->x        = (int16_t)((p[2] << 8) | p[3]);
+    e->y        = (int16_t)((p[4] << 8) | p[5]);
+}
+
+// Replace every entity on screen with g_specEntities.
+static void rebuild_entities(void)
+{
+    game_clear_all_entities();
+
+    for (uint8_t i = 0; i < g_specEntityCount; ++i) {
+        const EntitySnapshot* e = &g_specEntities[i];
+
+        // Skip player entity (kind 0) - position handled separately
+        if (e->kind == ENTITY_KIND_PLAYER) continue;
+
+        // Spawn crocodile (kind 1)
+        if (e->kind == ENTITY_KIND_CROC) {
+            uint8_t variant = (e->spriteId == 1) ? 2 : 1;
+            game_spawn_croc(variant, e->x, e->y);
+        }
+        // Spawn fruit (kind 2)
+        else if (e->kind == ENTITY_KIND_FRUIT) {
+            uint8_t variant;
+            if (e->spriteId == 1) variant = 2;      // APPLE
+            else if (e->spriteId == 2) variant = 3; // ORANGE
+            else variant = 1;                        // BANANA (spriteId==3 or default)
+            game_spawn_fruit(variant, e->x, e->y);
+        }
+    }
+}
+
+// Full snapshot: u8 count + count * (kind, spriteId, x, y) = 6 bytes each
+static void apply_entities_full(const uint8_t* valuePtr, uint16_t valueLen)
+{
+    if (valueLen < 1) return;
+    uint8_t entityCount = valuePtr[0];
+    const uint8_t* entityPtr = valuePtr + 1;
+
+    uint8_t n = 0;
+    for (uint8_t i = 0; i < entityCount; ++i) {
+        if ((entityPtr - valuePtr) + 6 > valueLen) break;
+        read_entity(entityPtr, &g_specEntities[n++]);
+        entityPtr += 6;
+    }
+    g_specEntityCount = n;
+    rebuild_entities();
+}
+
+// Delta against the previous frame: u8 count, u8 changed, changed * (u8 index + 6-byte entity)
+static void apply_entities_delta(const uint8_t* valuePtr, uint16_t valueLen)
+{
+    if (valueLen < 2) return;
+    uint8_t entityCount = valuePtr[0];
+    uint8_t changed     = valuePtr[1];
+    if (valueLen < 2u + changed * 7u) return;
+
+    const uint8_t* p = valuePtr + 2;
+    for (uint8_t i = 0; i < changed; ++i, p += 7) {
+        uint8_t idx = p[0];
+        if (idx >= entityCount) continue;
+        read_entity(p + 1, &g_specEntities[idx]);
+    }
+    g_specEntityCount = entityCount;
+    rebuild_entities();
+}
+
 static void on_spectator_state(const uint8_t* payloadPtr, uint32_t payloadLen)
 {
     // Expect: x,y,vx,vy (int16) + flags (uint8) = 9 bytes + entities TLV
@@ -32,59 +110,15 @@ static void on_spectator_state(const uint8_t* payloadPtr, uint32_t payloadLen)
     // Apply the remote player state to the spectator view
     game_apply_remote_state(x, y, vx, vy, flags);
 
-    // Parse entities TLV (bytes 9+)
-    if (payloadLen > 9) {
-        const uint8_t* tlvPtr = payloadPtr + 9;
-        uint32_t tlvLen = payloadLen - 9;
-
-        // Verify we have at least TLV header (type + length)
-        if (tlvLen < 3) return;
-
-        uint8_t tlvType = tlvPtr[0];
-        uint16_t valueLen = (uint16_t)((tlvPtr[1] << 8) | tlvPtr[2]);
-
-        // Verify it's the entities TLV
-        if (tlvType != TLV_ENTITIES_CORR) return;
-
-        // Verify we have the full value
-        if (tlvLen < (uint32_t)(3 + valueLen)) return;
-
-        const uint8_t* valuePtr = tlvPtr + 3;
-
-        // First clear all existing entities (full snapshot)
-        game_clear_all_entities();
-
-        // Parse entity count
-        if (valueLen < 1) return;
-        uint8_t entityCount = valuePtr[0];
-        const uint8_t* entityPtr = valuePtr + 1;
-
-        // Parse each entity: kind(1) + spriteId(1) + x(2) + y(2) = 6 bytes
-        for (uint8_t i = 0; i < entityCount; ++i) {
-            if ((entityPtr - valuePtr) + 6 > valueLen) break;
-
-            uint8_t kind = entityPtr[0];
-            uint8_t spriteId = entityPtr[1];
-            int16_t ex = (int16_t)((entityPtr[2] << 8) | entityPtr[3]);
-            int16_t ey = (int16_t)((entityPtr[4] << 8) | entityPtr[5]);
-            entityPtr += 6;
-
-            // Skip player entity (kind 0) - position handled separately
-            if (kind == 0) continue;
-
-            // Spawn crocodile (kind 1)
-            if (kind == 1) {
-                uint8_t variant = (spriteId == 1) ? 2 : 1;
-                game_spawn_croc(variant, ex, ey);
-            }
-            // Spawn fruit (kind 2)
-            else if (kind == 2) {
-                uint8_t variant;
-                if (spriteId == 1) variant = 2;      // APPLE
-                else if (spriteId == 2) variant = 3; // ORANGE
-                else variant = 1;                     // BANANA (spriteId==3 or default)
-                game_spawn_fruit(variant, ex, ey);
-            }
+    // Parse entities TLV (bytes 9+): full list or delta
+    TLVBuf tlv;
+    tlv_init(&tlv, payloadPtr + 9, payloadLen - 9);
+    uint8_t tlvType; uint16_t valueLen; const uint8_t* valuePtr;
+    while (tlv_next(&tlv, &tlvType, &valueLen, &valuePtr)) {
+        if (tlvType == TLV_ENTITIES_CORR) {
+            apply_entities_full(valuePtr, valueLen);
+        } else if (tlvType == TLV_ENTITIES_DELTA) {
+            apply_entities_delta(valuePtr, valueLen);
         }
     }
 }
@@ -102,12 +136,15 @@ static void disp_handle(uint8_t frameType, const uint8_t* payloadPtr, uint32_t p
     }
 }
 
+static uint32_t g_gameId = 0; // room offered in CLIENT_ACK
+
 // ---- client → server: spectate request ----
 static int send_spectate_request(int socketFd, uint8_t slot) {
-    uint8_t buf[1];
+    uint8_t buf[2];
     buf[0] = slot;  // 1 or 2 (target player slot)
-    // clientId and gameId are set to 0; server already knows the real clientId
-    return cp_send_frame(socketFd, CP_TYPE_SPECTATE_REQUEST, 0, 0, buf, sizeof(buf)) ? 1 : 0;
+    buf[1] = SPECTATE_FLAG_DELTA;  // we can apply TLV_ENTITIES_DELTA
+    // clientId is 0 (server already knows it); gameId is the room offered in CLIENT_ACK
+    return cp_send_frame(socketFd, CP_TYPE_SPECTATE_REQUEST, 0, g_gameId, buf, sizeof(buf)) ? 1 : 0;
 }
 
 // ---- gameplay event handlers ----
@@ -187,10 +224,24 @@ static void on_state_bundle(const uint8_t* payloadPtr, uint32_t payloadLen){
             int16_t vyCorrection  = (int16_t)((tlvValuePtr[5] << 8) | tlvValuePtr[6]);
 
             game_apply_correction(tick, grounded, platformId, yCorrection, vyCorrection);
+        } else if (tlvType != CP_TYPE_STATE_BUNDLE) {
+            // batched event: TLV type is the frame type, value is its payload
+            disp_handle(tlvType, tlvValuePtr, tlvLen);
         }
     }
 }
 
+// ---- UDP fast path (SPECTATOR_STATE as datagrams) ----
+static const char* g_serverIp = NULL;
+
+static void on_udp_offer(const uint8_t* p, uint32_t n){
+    udp_link_offer(g_serverIp, p, n);
+}
+
+static void on_udp_frame(uint8_t type, const uint8_t* p, uint32_t n){
+    disp_handle(type, p, n);
+}
+
 // ---- main spectator client entry point ----
 int run_spectator_client(const char* ip, uint16_t port, uint8_t desiredSlot) {
 
@@ -200,6 +251,7 @@ int run_spectator_client(const char* ip, uint16_t port, uint8_t desiredSlot) {
     }
 
     int socketFd = net_connect(ip, port);
+    g_serverIp = ip;
     if (socketFd < 0) {
         fprintf(stderr, "net_connect failed\n");
         net_cleanup();
@@ -230,6 +282,7 @@ int run_spectator_client(const char* ip, uint16_t port, uint8_t desiredSlot) {
     disp_register(CP_TYPE_SCORE_UPDATE,            on_score_update);
     disp_register(CP_TYPE_CROC_SPEED_INCREASE,     on_croc_speed_increase);
     disp_register(CP_TYPE_GAME_RESTART,            on_game_restart);
+    disp_register(CP_TYPE_UDP_OFFER,               on_udp_offer);
 
     CP_Header header;
     uint8_t roleByte = 0;
@@ -239,6 +292,7 @@ int run_spectator_client(const char* ip, uint16_t port, uint8_t desiredSlot) {
         fprintf(stderr, "Expected CLIENT_ACK\n");
         goto done;
     }
+    g_gameId = header.gameId;
 
     if (header.payloadLen > 0) {
         uint8_t* tmp = (uint8_t*)malloc(header.payloadLen);
@@ -317,6 +371,7 @@ int run_spectator_client(const char* ip, uint16_t port, uint8_t desiredSlot) {
             disp_handle(header.type, payloadBuf, header.payloadLen);
             free(payloadBuf);
         }
+        udp_link_poll(on_udp_frame);
 
         // Local spectator update and drawing
         game_update_spectator(cp_get_static());
@@ -326,6 +381,7 @@ int run_spectator_client(const char* ip, uint16_t port, uint8_t desiredSlot) {
     game_shutdown();
 
 done:
+    udp_link_close();
     cp_free_static();
     net_close(socketFd);
     net_cleanup();
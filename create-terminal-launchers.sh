@@ -1,6 +1,7 @@
 #!/bin/bash
 # create-terminal-launchers.sh
 # Creates AppleScript .app bundles that open Terminal and run make commands
+# The server (make run-server) needs JDK 21 or newer: it uses virtual threads.
 
 set -e
 
@@ -9,6 +10,12 @@ echo "Creating Terminal Launcher Apps..."
 echo "Project directory: $PROJECT_DIR"
 echo ""
 
+JAVA_MAJOR=$(java -version 2>&1 | awk -F'"' '/version/ { split($2, v, "."); print v[1]; exit }')
+if [ -z "$JAVA_MAJOR" ] || [ "$JAVA_MAJOR" -lt 21 ]; then
+    echo "WARNING: the server needs JDK 21 or newer (found: ${JAVA_MAJOR:-no java})."
+    echo ""
+fi
+
 # ============================================
 # 1. Start Server.app
 # ============================================
@@ -168,5 +175,6 @@ echo "  1. Double-click 'Start Server.app'"
 echo "  2. Double-click 'Start Launcher.app'"
 echo ""
 echo "These apps open Terminal and run the make commands."
+echo "The server requires JDK 21 or newer."
 echo "Much simpler and more reliable!"
 echo ""
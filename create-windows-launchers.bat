@@ -1,10 +1,21 @@
 @echo off
 REM create-windows-launchers.bat
 REM Creates Windows batch file launchers for DonCEy Kong Jr
+REM The server (mingw32-make run-server) needs JDK 21 or newer: it uses virtual threads.
 
 echo Creating Windows Launcher Scripts...
 echo.
 
+set "JAVA_VERSION=no java"
+set "JAVA_MAJOR=0"
+for /f "tokens=3" %%v in ('java -version 2^>^&1 ^| findstr /i "version"') do set "JAVA_VERSION=%%~v"
+for /f "delims=." %%m in ("%JAVA_VERSION%") do set "JAVA_MAJOR=%%m"
+if "%JAVA_VERSION%"=="no java" set "JAVA_MAJOR=0"
+if %JAVA_MAJOR% LSS 21 (
+    echo WARNING: the server needs JDK 21 or newer ^(found: %JAVA_VERSION%^).
+    echo.
+)
+
 REM Get the current directory (project root)
 set "PROJECT_DIR=%CD%"
 echo Project directory: %PROJECT_DIR%
@@ -186,6 +197,7 @@ echo     1. Double-click "Start Server.bat"
 echo     2. Double-click "Start Launcher.bat"
 echo.
 echo   Build first if needed: Double-click "Build.bat"
+echo   The server requires JDK 21 or newer.
 echo.
 echo ================================================
 echo.
@@ -1,87 +1,190 @@
 package Classes.Player;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * Lightweight data model for a game player.
  * <p>
  * This class stores position, velocity, lives, death state, and score.
- * It exposes minimal mutators for lives and score management and keeps all
- * fields package-visible for performance in tight server loops.
+ * It is written by the player's own session and read from other threads
+ * (spectator attach, GUI, admin), so the state is packed into two
+ * {@code long} words that are always read and written whole:
+ * <ul>
+ *   <li><b>motion</b>: x, y, vx, vy as signed 16-bit values (the wire
+ *       format of PLAYER_PROPOSED). Written with a release store and read
+ *       with an acquire load: no lock, no CAS, and a reader never sees
+ *       x from one update and y from another.</li>
+ *   <li><b>stats</b>: score (32 bits), dead flag and lives (16 bits).
+ *       Updated by compare-and-set, so concurrent
+ *       {@link #decreaseLives()} / {@link #increaseScore(int)} never lose an
+ *       update, and lives and score are read as one consistent pair.</li>
+ * </ul>
+ * Use {@link #motion()} or {@link #stats()} with the static decoders to read
+ * several values from the same instant.
  */
 public class player {
-    /** X position in pixels (world coordinates). */
-    public int x;
-    /** Y position in pixels (world coordinates). */
-    public int y;
-    /** X velocity in pixels per tick. */
-    public int vx;
-    /** Y velocity in pixels per tick. */
-    public int vy;
-
-    /** Remaining lives; reaching {@code 0} sets {@link #isDead} to true. */
-    public int lives = 3;
-    /** True when the player has no lives left. */
-    public boolean isDead = false;
-    /** Accumulated score points. */
-    public int score = 0;
+
+    private static final VarHandle MOTION, STATS;
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            MOTION = l.findVarHandle(player.class, "motion", long.class);
+            STATS  = l.findVarHandle(player.class, "stats", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int  MAX_LIVES = 0xFFFF;
+    private static final long DEAD      = 1L << 16;
+
+    // x | y << 16 | vx << 32 | vy << 48, each a 16-bit two's complement value.
+    private long motion;  // accessed through MOTION after construction
+    // lives | DEAD | score << 32.
+    private long stats;   // accessed through STATS after construction
 
     /**
-     * Creates a player at the given position.
+     * Creates a player at the given position, with 3 lives and no score.
      *
      * @param x initial X position in pixels
      * @param y initial Y position in pixels
      */
     public player(int x, int y){
-        this.x = x;
-        this.y = y;
+        // Plain writes: the player is published to other threads through the server's map.
+        this.motion = packMotion(x, y, 0, 0);
+        this.stats  = packStats(3, false, 0);
     }
 
+    // ---- motion ----
+
     /**
-     * Decreases lives by one and marks the player as dead when lives reach zero.
+     * Publishes a new position and velocity as one store.
+     *
+     * @param x  X position in pixels (world coordinates)
+     * @param y  Y position in pixels (world coordinates)
+     * @param vx X velocity in pixels per tick
+     * @param vy Y velocity in pixels per tick
      */
-    public void decreaseLives(){
-        this.lives--;
-        if (this.lives <= 0){
-            this.isDead = true;
-        }
+    public void setMotion(int x, int y, int vx, int vy){
+        MOTION.setRelease(this, packMotion(x, y, vx, vy));
+    }
+
+    /** @return position and velocity of one instant; decode with {@link #x(long)} etc. */
+    public long motion(){
+        return (long) MOTION.getAcquire(this);
+    }
+
+    public static long packMotion(int x, int y, int vx, int vy){
+        return (x & 0xFFFFL) | (y & 0xFFFFL) << 16 | (vx & 0xFFFFL) << 32 | (vy & 0xFFFFL) << 48;
+    }
+
+    public static int x(long motion)  { return (short) motion; }
+    public static int y(long motion)  { return (short) (motion >>> 16); }
+    public static int vx(long motion) { return (short) (motion >>> 32); }
+    public static int vy(long motion) { return (short) (motion >>> 48); }
+
+    /** @return X position in pixels. */
+    public int getX(){ return x(motion()); }
+    /** @return Y position in pixels. */
+    public int getY(){ return y(motion()); }
+
+    // ---- lives and score ----
+
+    /** @return lives, dead flag and score of one instant; decode with {@link #lives(long)} etc. */
+    public long stats(){
+        return (long) STATS.getAcquire(this);
+    }
+
+    private static long packStats(int lives, boolean dead, int score){
+        return Math.max(0, Math.min(MAX_LIVES, lives)) | (dead ? DEAD : 0) | (long) score << 32;
+    }
+
+    public static int lives(long stats)      { return (int) (stats & MAX_LIVES); }
+    public static boolean isDead(long stats) { return (stats & DEAD) != 0; }
+    public static int score(long stats)      { return (int) (stats >>> 32); }
+
+    /**
+     * Decreases lives by one, never below zero, and marks the player as dead
+     * when lives reach zero.
+     *
+     * @return lives left
+     */
+    public int decreaseLives(){
+        long cur, next;
+        do {
+            cur = stats();
+            int lives = Math.max(0, lives(cur) - 1);
+            next = packStats(lives, isDead(cur) || lives == 0, score(cur));
+        } while (!STATS.compareAndSet(this, cur, next));
+        return lives(next);
     }
 
     /**
      * Increases the score by the specified number of points.
      *
      * @param points points to add (may be negative if needed by game rules)
+     * @return new score
      */
-    public void increaseScore(int points){
-        this.score += points;
+    public int increaseScore(int points){
+        long cur, next;
+        do {
+            cur = stats();
+            next = packStats(lives(cur), isDead(cur), score(cur) + points);
+        } while (!STATS.compareAndSet(this, cur, next));
+        return score(next);
     }
 
     /**
      * Increases lives by one (revival logic is handled elsewhere).
+     *
+     * @return new lives
+     */
+    public int increaseLives(){
+        long cur, next;
+        do {
+            cur = stats();
+            next = packStats(lives(cur) + 1, isDead(cur), score(cur));
+        } while (!STATS.compareAndSet(this, cur, next));
+        return lives(next);
+    }
+
+    /**
+     * Resets lives and score in one step (game restart), clearing the dead flag.
      */
-    public void increaseLives(){
-        this.lives++;
+    public void reset(int lives, int score){
+        STATS.setRelease(this, packStats(lives, false, score));
     }
 
     /**
      * @return current number of lives.
      */
     public int getLives(){
-        return this.lives;
+        return lives(stats());
     }
 
     /**
      * @return current score.
      */
     public int getScore(){
-        return this.score;
+        return score(stats());
+    }
+
+    /** @return true when the player has no lives left. */
+    public boolean isDead(){
+        return isDead(stats());
     }
 
     /**
-     * Sets the number of lives; does not toggle {@link #isDead}.
+     * Sets the number of lives; does not toggle the dead flag.
      *
      * @param lives new lives value
      */
     public void setLives(int lives){
-        this.lives = lives;
+        long cur;
+        do {
+            cur = stats();
+        } while (!STATS.compareAndSet(this, cur, packStats(lives, isDead(cur), score(cur))));
     }
 
     /**
@@ -90,6 +193,9 @@ public class player {
      * @param score new score value
      */
     public void setScore(int score){
-        this.score = score;
+        long cur;
+        do {
+            cur = stats();
+        } while (!STATS.compareAndSet(this, cur, packStats(lives(cur), isDead(cur), score)));
     }
 }
@@ -2,198 +2,217 @@ package MessageManagement;
 
 import java.io.*;
 import serverJava.GameServer;
+import serverJava.MoveValidator;
 import Utils.MsgType;
 import Classes.Player.player;
 
+/**
+ * Game-side handling of inbound client messages.
+ * <p>
+ * One instance is shared by all connections. The constructor registers one
+ * {@link Handler} per message type in the server's {@link MessageRegistry};
+ * {@link #processFrame} is then a single table lookup. Handlers keep no
+ * per-connection state: everything they need comes from the frame and the
+ * session (see {@link Session#player()}).
+ */
 public class AnswerProcessor {
 
     public interface Handler {
-        void handle(byte[] payload, Session sess) throws IOException;
+        void handle(FrameDecoder frame, Session sess) throws IOException;
     }
 
     private final GameServer server;
-    private final Messenger messenger;
+    private final MessageRegistry registry;
 
-    public AnswerProcessor(GameServer server){
+    public AnswerProcessor(GameServer server, MessageRegistry registry){
         this.server = server;
-        this.messenger = new Messenger(server);
+        this.registry = registry;
+
+        registry.register(MsgType.PLAYER_PROPOSED,        "PLAYER_PROPOSED",        this::onPlayerProposed)
+                .register(MsgType.STATE_BUNDLE,           "STATE_BUNDLE",           this::onStateBundle)
+                .register(MsgType.NOTIFY_DEATH_COLLISION, "NOTIFY_DEATH_COLLISION", this::onDeathCollision)
+                .register(MsgType.NOTIFY_FRUIT_PICK,      "NOTIFY_FRUIT_PICK",      this::onFruitPick)
+                .register(MsgType.NOTIFY_VICTORY,         "NOTIFY_VICTORY",         this::onVictory)
+                .register(MsgType.SPECTATE_REQUEST,       "SPECTATE_REQUEST",       this::handleSpectateRequest)
+                .register(MsgType.REQUEST_RESTART,        "REQUEST_RESTART",        this::onRequestRestart);
     }
 
-    
-    private void handleSpectateRequest(byte[] payload, Session sess) throws IOException {
-        if (payload == null || payload.length < 1) {
+    /**
+     * Handles one decoded frame. The payload has already been consumed from
+     * the connection, so returning early never desynchronises the stream.
+     * Frames addressed to another game than the sender's room are ignored;
+     * gameId 0 means "my room". SPECTATE_REQUEST may name any room.
+     *
+     * @param f    current frame; its buffer is only valid during this call
+     * @param sess session of the sending client
+     * @throws IOException if the client must be dropped
+     */
+    public void processFrame(FrameDecoder f, Session sess) throws IOException {
+        int gameId = f.gameId();
+        if (gameId != 0 && gameId != sess.gameId() && f.type() != MsgType.SPECTATE_REQUEST) {
             return;
         }
-
-        int desiredSlot = payload[0] & 0xFF;  // 1 o 2
-        int spectatorId = sess.clientId();
-
-        boolean ok = server.attachSpectatorToSlot(spectatorId, desiredSlot);
-        if (!ok) {
-            System.out.println("Spectator " + spectatorId
-                    + " failed to attach to slot " + desiredSlot + " (no player or full).");
-            System.out.println("Disconnecting spectator " + spectatorId);
-            
-            // Force disconnect by throwing an exception 
-            throw new IOException("Failed to attach to player slot " + desiredSlot + " - slot may be full or player not found");
-        }
+        registry.dispatch(f, sess);
     }
 
-    public void processFrame(DataInputStream in, Session sess) throws IOException {
-        byte version = in.readByte();
-        byte type    = in.readByte();
-        int  _res    = in.readUnsignedShort();
-        int  fromId  = in.readInt();
-        int  gameId  = in.readInt();
-        int  len     = in.readInt();
-
-        //Mensajes con payload estructurado conocido
-        if (type == MsgType.PLAYER_PROPOSED) {
-            int   tick  = in.readInt();
-            short x     = in.readShort();
-            short y     = in.readShort();
-            short vx    = in.readShort();
-            short vy    = in.readShort();
-            byte  flags = in.readByte();
-
-            // Read remaining bytes as entities TLV
-            int entitiesLen = len - 13;
-            byte[] entitiesTlv = null;
-            if (entitiesLen > 0) {
-                entitiesTlv = in.readNBytes(entitiesLen);
+    // --- PLAYER_PROPOSED (60 Hz) ---
+    private void onPlayerProposed(FrameDecoder f, Session sess) {
+        int len = f.length();
+        if (len < 13) return;
+        int   tick  = f.i32(0);
+        if (!sess.acceptProposedTick(tick)) return; // older than a state already applied (TCP or UDP)
+        short x     = f.i16(4);
+        short y     = f.i16(6);
+        short vx    = f.i16(8);
+        short vy    = f.i16(10);
+        byte  flags = (byte) f.u8(12);
+
+        player p1 = sess.player();
+        MoveValidator moves = server.moveValidator();
+        if (p1 != null && moves != null) {
+            // Spectators get the accepted state; the player is corrected if y had to move.
+            byte[] corr = moves.validate(p1, tick & 0xFFFFFFFFL, x, y, vx, vy, flags);
+            if (corr != null) {
+                sess.send(new StateBundle()
+                        .eventI32(MsgType.TLV_STATE_HEADER, tick)
+                        .event(MsgType.TLV_PLAYER_CORR, corr)
+                        .toFrame());
             }
+            long m = p1.motion();
+            x  = (short) player.x(m);
+            y  = (short) player.y(m);
+            vx = (short) player.vx(m);
+            vy = (short) player.vy(m);
+        } else if (p1 != null) {
+            p1.setMotion(x, y, vx, vy);
+        }
 
-            player p1 = server.getPlayerFromServer(sess.clientId());
-            if (p1 != null) {
-                p1.x  = x;
-                p1.y  = y;
-                p1.vx = vx;
-                p1.vy = vy;
-            }
+        // Broadcast to spectators WITH entities TLV (remaining bytes, forwarded as-is)
+        server.broadcastPlayerStateToSpectators(sess.clientId(), x, y, vx, vy, flags,
+                f.array(), f.offset() + 13, len - 13);
+    }
 
-            // Broadcast to spectators WITH entities TLV
-            server.broadcastPlayerStateToSpectators(sess.clientId(), x, y, vx, vy, flags, entitiesTlv);
-            return;
-        }
+    // --- STATE_BUNDLE ---
+    private void onStateBundle(FrameDecoder f, Session sess) {
+        TLVParser tlv = f.tlvs(0);
+        while (tlv.next()) {
+            if (tlv.type() == MsgType.TLV_ENTITIES_CORR) {
 
-        // --- STATE_BUNDLE ---
-        if (type == MsgType.STATE_BUNDLE) {
-            byte[] buf = (len > 0) ? in.readNBytes(len) : new byte[0];
-            TLVParser tlv = new TLVParser(buf);
-            while (tlv.remaining() > 0) {
-                TLVParser.TLV t = tlv.next();
-                if (t == null) break;
-                if (t.type == MsgType.TLV_ENTITIES_CORR) {
-                    
-                }
             }
-            return;
         }
+    }
 
-        // --- NOTIFY_DEATH_COLLISION ---
-        if (type == MsgType.NOTIFY_DEATH_COLLISION) {
-            player p = server.getPlayerFromServer(sess.clientId());
-            if (p == null) return;
+    // --- NOTIFY_DEATH_COLLISION ---
+    private void onDeathCollision(FrameDecoder f, Session sess) {
+        player p = sess.player();
+        if (p == null) return;
 
-            if (p.getLives() > 0) p.decreaseLives();
+        int left = p.decreaseLives();
+        restartMoveBaseline(p);
 
-            server.clearEntitiesForNewRound();
-            byte lives = (byte) p.getLives();
+        server.clearEntitiesForNewRound(sess.clientId());
+        byte lives = (byte) left;
 
-            // HUD for player + spectators
-            server.broadcastLivesUpdateToGroup(sess.clientId(), lives);
+        // HUD + respawn (or game over) for player + spectators, in one frame
+        server.broadcastBundleToGroup(sess.clientId(), new StateBundle()
+                .eventU8(MsgType.LIVES_UPDATE, lives)
+                .event(left > 0 ? MsgType.PLAYER_RESPAWN : MsgType.PLAYER_GAME_OVER));
+    }
 
-            if (p.getLives() > 0) {
-                // respawn for everyone watching this player
-                server.broadcastRespawnDeathToGroup(sess.clientId());
-            } else {
-                // game over for everyone watching this player
-                server.broadcastGameOverToGroup(sess.clientId());
-            }
-            return;
-        }
+    // --- NOTIFY_FRUIT_PICK ---
+    private void onFruitPick(FrameDecoder f, Session sess) {
+        // Expect payload: 2 bytes x, 2 bytes y (coordinates of picked fruit)
+        if (f.length() < 4) return;
 
-        if (type == MsgType.NOTIFY_FRUIT_PICK) {
-            // Expect payload: 2 bytes x, 2 bytes y (coordinates of picked fruit)
-            if (len < 4) return;
-            
-            byte[] payload = in.readNBytes(len);
-            
-            
-            int fruitX = ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF);
-            int fruitY = ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
-            
-            player p = server.getPlayerFromServer(sess.clientId());
-            if (p == null) return;
-
-            p.increaseScore(400);
-            
-            // Broadcast score update to player + spectators
-            server.broadcastScoreUpdateToGroup(sess.clientId(), p.getScore());
-            
-            // Remove the fruit for player + spectators
-            server.sendToPlayerGroup(sess.clientId(), h -> h.sendRemoveFruit(fruitX, fruitY));
-            
-            // Remove from server's fruit list
-            server.fruits.removeIf(r -> r.x() == fruitX && r.y() == fruitY);
-            server.fruitStates.removeIf(f -> f.x == fruitX && f.y == fruitY);
-            
-            return;
-        }
+        int fruitX = f.u16(0);
+        int fruitY = f.u16(2);
 
-        // --- NOTIFY_VICTORY ---
-        if (type == MsgType.NOTIFY_VICTORY) {
-            player p = server.getPlayerFromServer(sess.clientId());
-            if (p == null) return;
+        player p = sess.player();
+        if (p == null) return;
 
-            p.increaseLives();
-            System.out.println("Player " + sess.clientId() + " won! Lives now: " + p.getLives());
-            server.clearEntitiesForNewRound();
+        int score = p.increaseScore(400);
 
-            byte lives = (byte) p.getLives();
+        // Score update + fruit removal for player + spectators, in one frame
+        server.broadcastBundleToGroup(sess.clientId(), new StateBundle()
+                .eventI32(MsgType.SCORE_UPDATE, score)
+                .event(MsgType.REMOVE_FRUIT, new byte[]{
+                        (byte)(fruitX>>8), (byte)fruitX,
+                        (byte)(fruitY>>8), (byte)fruitY }));
 
-            // HUD and respawn for everyone in the group
-            server.broadcastLivesUpdateToGroup(sess.clientId(), lives);
-            server.broadcastCrocSpeedIncreaseToGroup(sess.clientId());
-            server.broadcastRespawnWinToGroup(sess.clientId());
-            return;
-        }
+        // Remove from the room's fruit list
+        server.removeFruit(sess.clientId(), fruitX, fruitY);
+    }
+
+    // --- NOTIFY_VICTORY ---
+    private void onVictory(FrameDecoder f, Session sess) {
+        player p = sess.player();
+        if (p == null) return;
+
+        byte lives = (byte) p.increaseLives();
+        restartMoveBaseline(p);
+        System.out.println("Player " + sess.clientId() + " won! Lives now: " + lives);
+        server.clearEntitiesForNewRound(sess.clientId());
 
-        // --- SPECTATE_REQUEST  ---
-        if (type == MsgType.SPECTATE_REQUEST) {
-            byte[] payload = (len > 0) ? in.readNBytes(len) : new byte[0];
-            handleSpectateRequest(payload, sess);
+
+        // HUD, speed-up and respawn for everyone in the group, in one frame
+        server.broadcastBundleToGroup(sess.clientId(), new StateBundle()
+                .eventU8(MsgType.LIVES_UPDATE, lives)
+                .event(MsgType.CROC_SPEED_INCREASE)
+                .event(MsgType.RESPAWN_VICTORY));
+    }
+
+    // --- SPECTATE_REQUEST ---
+    private void handleSpectateRequest(FrameDecoder f, Session sess) throws IOException {
+        if (f.length() < 1) {
             return;
         }
 
-        // --- REQUEST_RESTART (player requests full game restart) ---
-        if (type == MsgType.REQUEST_RESTART) {
-            player p = server.getPlayerFromServer(sess.clientId());
-            if (p == null) return;
+        int desiredSlot = f.u8(0);  // 1 o 2
+        int spectatorId = sess.clientId();
+        // Optional flags byte; spectators that predate it get full entity lists.
+        boolean delta = f.length() >= 2 && (f.u8(1) & MsgType.SPECTATE_FLAG_DELTA) != 0;
+        // Optional state rate in Hz; 0 or absent means the server-wide rate.
+        int hz = (f.length() >= 3) ? f.u8(2) : 0;
 
-            System.out.println("Player " + sess.clientId() + " requested game restart");
+        // Header gameId picks the room; 0 keeps the one offered in CLIENT_ACK.
+        boolean ok = server.attachSpectatorToSlot(spectatorId, f.gameId(), desiredSlot, delta, hz);
+        if (!ok) {
+            System.out.println("Spectator " + spectatorId
+                    + " failed to attach to slot " + desiredSlot + " (no player or full).");
+            System.out.println("Disconnecting spectator " + spectatorId);
+
+            // Force disconnect by throwing an exception
+            throw new IOException("Failed to attach to player slot " + desiredSlot + " - slot may be full or player not found");
+        }
+    }
 
-            // Reset player state
-            p.setLives(3);
-            p.setScore(0);
+    // --- REQUEST_RESTART (player requests full game restart) ---
+    private void onRequestRestart(FrameDecoder f, Session sess) {
+        player p = sess.player();
+        if (p == null) return;
 
-            // Clear all entities
-            server.clearEntitiesForNewRound();
+        System.out.println("Player " + sess.clientId() + " requested game restart");
 
-            // Reset crocodile speed on server 
-            server.resetCrocodileSpeed();
+        // Reset player state
+        p.reset(3, 0);
+        restartMoveBaseline(p);
 
-            // Broadcast restart to player + spectators
-            server.broadcastGameRestartToGroup(sess.clientId());
+        // Clear all entities of this room
+        server.clearEntitiesForNewRound(sess.clientId());
 
-            // Send updated HUD
-            server.broadcastLivesUpdateToGroup(sess.clientId(), (byte) 3);
-            server.broadcastScoreUpdateToGroup(sess.clientId(), 0);
+        // Reset crocodile speed on server
+        server.resetCrocodileSpeed();
 
-            return;
-        }
+        // Restart + fresh HUD for player + spectators, in one frame
+        server.broadcastBundleToGroup(sess.clientId(), new StateBundle()
+                .event(MsgType.GAME_RESTART)
+                .eventU8(MsgType.LIVES_UPDATE, 3)
+                .eventI32(MsgType.SCORE_UPDATE, 0));
+    }
 
-        
-        if (len > 0) in.skipNBytes(len);
+    // The client teleports to the spawn point on respawn and restart.
+    private void restartMoveBaseline(player p) {
+        MoveValidator moves = server.moveValidator();
+        if (moves != null) moves.reset(p);
     }
-}
\ No newline at end of file
+}
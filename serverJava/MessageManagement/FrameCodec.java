@@ -0,0 +1,244 @@
+package MessageManagement;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import Utils.Rect;
+import Utils.MsgType;
+import serverJava.EntityStore;
+
+/**
+ * Allocation-free counterpart of {@link Proto}: encodes headers, rects, TLVs
+ * and every outbound message straight into a caller-supplied
+ * {@link ByteBuffer}, heap or direct. {@link Messenger}, {@link StateBundle},
+ * the CLIENT_ACK encoders and the UDP channel all send through it.
+ * <p>
+ * All writes are absolute: each method takes the index to start at and
+ * returns the index just past the last byte written, and never touches the
+ * buffer's position or limit. The buffer must be in big-endian order (the
+ * {@code ByteBuffer} default) and have room for the whole frame; sizes are
+ * given by the {@code *_LEN} constants and {@link #initStaticLength}.
+ * Running out of room throws {@link IndexOutOfBoundsException} part-way
+ * through, so size the buffer first.
+ * <p>
+ * Output is byte-for-byte the same as the {@link Proto} stream helpers;
+ * {@code test/MessageManagement/FrameCodecTest} checks every message against them.
+ */
+public final class FrameCodec {
+
+    /** Frame length of messages without payload (respawn, game over, restart...). */
+    public static final int EMPTY_LEN = Proto.HEADER_LEN;
+    /** Frame length of REMOVE_FRUIT. */
+    public static final int REMOVE_FRUIT_LEN = Proto.HEADER_LEN + 4;
+    /** Frame length of LIVES_UPDATE. */
+    public static final int LIVES_UPDATE_LEN = Proto.HEADER_LEN + 1;
+    /** Frame length of SCORE_UPDATE. */
+    public static final int SCORE_UPDATE_LEN = Proto.HEADER_LEN + 4;
+    /** Frame length of CLIENT_ACK. */
+    public static final int CLIENT_ACK_LEN = Proto.HEADER_LEN + 3;
+    /** Frame length of SPECTATOR_STATE before its entities TLV. */
+    public static final int SPECTATOR_STATE_LEN = Proto.HEADER_LEN + 9;
+
+    private FrameCodec() { /* no instances */ }
+
+    // ---- Primitives ----
+
+    /**
+     * Writes a frame header, same layout as {@link Proto#writeHeader}.
+     *
+     * @return index just past the header
+     */
+    public static int putHeader(ByteBuffer buf, int at, byte type, int destClientId, int gameId, int payloadLen) {
+        buf.put(at, Proto.VERSION);
+        buf.put(at + 1, type);
+        buf.putShort(at + 2, (short) 0);
+        buf.putInt(at + 4, destClientId);
+        buf.putInt(at + 8, gameId);
+        buf.putInt(at + 12, payloadLen);
+        return at + Proto.HEADER_LEN;
+    }
+
+    /**
+     * Writes an unsigned 16-bit integer in big-endian order (low 16 bits of {@code v}).
+     */
+    public static int putU16(ByteBuffer buf, int at, int v) {
+        buf.putShort(at, (short) v);
+        return at + 2;
+    }
+
+    /**
+     * Writes a rectangle as four unsigned 16-bit fields (x, y, w, h).
+     */
+    public static int putRect(ByteBuffer buf, int at, Rect r) {
+        buf.putShort(at,     (short) r.x());
+        buf.putShort(at + 2, (short) r.y());
+        buf.putShort(at + 4, (short) r.w());
+        buf.putShort(at + 6, (short) r.h());
+        return at + 8;
+    }
+
+    /**
+     * Writes a u16 count followed by the rects.
+     */
+    public static int putRects(ByteBuffer buf, int at, List<Rect> rects) {
+        int n = rects.size();
+        at = putU16(buf, at, n);
+        for (int i = 0; i < n; i++) {
+            at = putRect(buf, at, rects.get(i));
+        }
+        return at;
+    }
+
+    /**
+     * Writes a u16 count followed by one rect per entity, read straight from
+     * the store's columns.
+     */
+    public static int putEntityRects(ByteBuffer buf, int at, EntityStore.Entities e) {
+        int n = e.count();
+        at = putU16(buf, at, n);
+        for (int i = 0; i < n; i++) {
+            buf.putShort(at,     (short) e.x(i));
+            buf.putShort(at + 2, (short) e.y(i));
+            buf.putShort(at + 4, (short) EntityStore.ENTITY_SIZE);
+            buf.putShort(at + 6, (short) EntityStore.ENTITY_SIZE);
+            at += 8;
+        }
+        return at;
+    }
+
+    /**
+     * Writes a TLV header only; the caller writes {@code length} value bytes after it.
+     */
+    public static int putTLVHeader(ByteBuffer buf, int at, int type, int length) {
+        buf.put(at, (byte) type);
+        buf.putShort(at + 1, (short) length);
+        return at + 3;
+    }
+
+    // ---- Messages (same bytes as the Messenger send* methods) ----
+
+    /**
+     * @return frame length of an INIT_STATIC with the given list sizes
+     */
+    public static int initStaticLength(int nPlatforms, int nVines, int nCrocs, int nFruits) {
+        return Proto.HEADER_LEN + 8
+             + 2 + nPlatforms * 8
+             + 2 + nVines * 8
+             + 2 + nCrocs * 8
+             + 2 + nFruits * 8;
+    }
+
+    public static int putInitStatic(ByteBuffer buf, int at, int destClientId, Rect player,
+                                    List<Rect> platforms, List<Rect> vines,
+                                    EntityStore.Entities crocs, EntityStore.Entities fruits) {
+        int frameLen = initStaticLength(platforms.size(), vines.size(), crocs.count(), fruits.count());
+        at = putHeader(buf, at, MsgType.INIT_STATIC, destClientId, 0, frameLen - Proto.HEADER_LEN);
+        at = putRect(buf, at, player);
+        at = putRects(buf, at, platforms);
+        at = putRects(buf, at, vines);
+        at = putEntityRects(buf, at, crocs);
+        return putEntityRects(buf, at, fruits);
+    }
+
+    /**
+     * Any message whose payload is already encoded (e.g. the spawn payloads
+     * built by the {@code Messages.factories}). Frame length is
+     * {@code Proto.HEADER_LEN + payload.length}.
+     */
+    public static int putMessage(ByteBuffer buf, int at, byte type, int destClientId, byte[] payload) {
+        at = putHeader(buf, at, type, destClientId, 0, payload.length);
+        buf.put(at, payload);
+        return at + payload.length;
+    }
+
+    public static int putRemoveFruit(ByteBuffer buf, int at, int destClientId, int x, int y) {
+        at = putHeader(buf, at, MsgType.REMOVE_FRUIT, destClientId, 0, 4);
+        buf.putShort(at,     (short) x);
+        buf.putShort(at + 2, (short) y);
+        return at + 4;
+    }
+
+    /**
+     * Any payload-less message: PLAYER_RESPAWN, PLAYER_GAME_OVER,
+     * RESPAWN_VICTORY, CROC_SPEED_INCREASE, GAME_RESTART.
+     */
+    public static int putEmpty(ByteBuffer buf, int at, byte type, int destClientId) {
+        return putHeader(buf, at, type, destClientId, 0, 0);
+    }
+
+    public static int putLivesUpdate(ByteBuffer buf, int at, int destClientId, byte lives) {
+        at = putHeader(buf, at, MsgType.LIVES_UPDATE, destClientId, 0, 1);
+        buf.put(at, lives);
+        return at + 1;
+    }
+
+    public static int putScoreUpdate(ByteBuffer buf, int at, int destClientId, int score) {
+        at = putHeader(buf, at, MsgType.SCORE_UPDATE, destClientId, 0, 4);
+        buf.putInt(at, score);
+        return at + 4;
+    }
+
+    /**
+     * CLIENT_ACK: role byte (0 rejected, 1 player, 2 spectator, 3 relay), then
+     * one byte per player slot: its spectator count, or 255 if the slot is inactive.
+     *
+     * @param gameId room the client was admitted to, echoed by the client in its frames
+     */
+    public static int putClientAck(ByteBuffer buf, int at, int destClientId, int gameId,
+                                   byte roleByte, int slot1, int slot2) {
+        at = putHeader(buf, at, MsgType.CLIENT_ACK, destClientId, gameId, 3);
+        buf.put(at,     roleByte);
+        buf.put(at + 1, (byte) slot1);
+        buf.put(at + 2, (byte) slot2);
+        return at + 3;
+    }
+
+    /**
+     * SPECTATOR_STATE: 9-byte player state, then the entities TLV as received.
+     * Frame length is {@link #SPECTATOR_STATE_LEN} {@code + tlvLen}.
+     */
+    public static int putSpectatorState(ByteBuffer buf, int at, int destClientId,
+                                        short x, short y, short vx, short vy, byte flags,
+                                        byte[] tlvBuf, int tlvOff, int tlvLen) {
+        at = putHeader(buf, at, MsgType.SPECTATOR_STATE, destClientId, 0, 9 + tlvLen);
+        at = putPlayerState(buf, at, x, y, vx, vy, flags);
+        if (tlvLen > 0) {
+            buf.put(at, tlvBuf, tlvOff, tlvLen);
+        }
+        return at + tlvLen;
+    }
+
+    /**
+     * SPECTATOR_STATE with a {@link MsgType#TLV_ENTITIES_DELTA} against the
+     * previous frame. Frame length is
+     * {@link #SPECTATOR_STATE_LEN} {@code + 5 + 7 * nChanged}.
+     */
+    public static int putSpectatorDelta(ByteBuffer buf, int at, int destClientId,
+                                        short x, short y, short vx, short vy, byte flags,
+                                        byte[] ents, int entsOff, int count,
+                                        int[] changed, int nChanged) {
+        int valueLen = 2 + nChanged * 7;
+        at = putHeader(buf, at, MsgType.SPECTATOR_STATE, destClientId, 0, 9 + 3 + valueLen);
+        at = putPlayerState(buf, at, x, y, vx, vy, flags);
+        at = putTLVHeader(buf, at, MsgType.TLV_ENTITIES_DELTA, valueLen);
+        buf.put(at,     (byte) count);
+        buf.put(at + 1, (byte) nChanged);
+        at += 2;
+        for (int i = 0; i < nChanged; i++) {
+            int idx = changed[i];
+            buf.put(at, (byte) idx);
+            buf.put(at + 1, ents, entsOff + idx * 6, 6);
+            at += 7;
+        }
+        return at;
+    }
+
+    private static int putPlayerState(ByteBuffer buf, int at, short x, short y, short vx, short vy, byte flags) {
+        buf.putShort(at,     x);
+        buf.putShort(at + 2, y);
+        buf.putShort(at + 4, vx);
+        buf.putShort(at + 6, vy);
+        buf.put(at + 8, flags);
+        return at + 9;
+    }
+}
@@ -0,0 +1,141 @@
+package MessageManagement;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reusable view of one inbound frame.
+ * <p>
+ * There is one instance per connection. Blocking sessions read each frame into
+ * the decoder's own growable buffer with {@link #readFrom}; NIO connections
+ * point it at a frame already sitting in their read buffer with {@link #wrap}.
+ * Either way handlers read header and payload fields in place, so decoding
+ * allocates nothing once the buffer has grown to the largest frame seen.
+ * <p>
+ * Payload accessors take offsets relative to the start of the payload and
+ * read big-endian values, matching {@link DataInputStream}.
+ */
+public final class FrameDecoder {
+
+    private final int maxPayload;
+    private byte[] own = new byte[512];
+    private final TLVParser tlv = new TLVParser();
+
+    private byte[] buf;
+    private int off;
+    private int len;
+
+    private byte version;
+    private byte type;
+    private int fromId;
+    private int gameId;
+
+    /**
+     * @param maxPayload largest payload accepted before the frame is rejected
+     */
+    public FrameDecoder(int maxPayload) {
+        this.maxPayload = maxPayload;
+    }
+
+    /**
+     * Blocks until the next whole frame has been read into the reusable buffer.
+     * Payloads of types the registry does not handle are skipped unread and
+     * the frame is presented with length 0.
+     *
+     * @param in    client stream positioned at a frame header
+     * @param known registry deciding which payloads are worth buffering
+     * @throws IOException on end of stream or an out-of-range payload length
+     */
+    public void readFrom(DataInputStream in, MessageRegistry known) throws IOException {
+        version = in.readByte();
+        type    = in.readByte();
+        in.readUnsignedShort(); // reserved
+        fromId  = in.readInt();
+        gameId  = in.readInt();
+        int n   = in.readInt();
+        checkLength(n);
+
+        if (!known.handles(type)) {
+            in.skipNBytes(n);
+            n = 0;
+        }
+        if (own.length < n) {
+            own = new byte[Math.min(maxPayload, Math.max(n, own.length * 2))];
+        }
+        in.readFully(own, 0, n);
+        buf = own;
+        off = 0;
+        len = n;
+    }
+
+    /**
+     * Points the decoder at a complete frame held by the caller. The bytes must
+     * stay untouched until the frame has been handled.
+     *
+     * @param src        buffer holding the frame
+     * @param frameStart index of the first header byte
+     * @throws IOException if the header's payload length is out of range
+     */
+    public void wrap(byte[] src, int frameStart) throws IOException {
+        version = src[frameStart];
+        type    = src[frameStart + 1];
+        fromId  = readInt(src, frameStart + 4);
+        gameId  = readInt(src, frameStart + 8);
+        int n   = readInt(src, frameStart + 12);
+        checkLength(n);
+
+        buf = src;
+        off = frameStart + Proto.HEADER_LEN;
+        len = n;
+    }
+
+    private void checkLength(int n) throws IOException {
+        if (n < 0 || n > maxPayload) {
+            throw new IOException("invalid payload length " + n);
+        }
+    }
+
+    /** @return protocol version byte of the current frame. */
+    public byte version() { return version; }
+    /** @return message type of the current frame. */
+    public byte type() { return type; }
+    /** @return sender id written by the client (informational). */
+    public int fromId() { return fromId; }
+    /** @return game id from the header. */
+    public int gameId() { return gameId; }
+
+    /** @return buffer holding the payload; valid only until the next frame. */
+    public byte[] array() { return buf; }
+    /** @return index of the first payload byte in {@link #array()}. */
+    public int offset() { return off; }
+    /** @return payload length in bytes. */
+    public int length() { return len; }
+
+    /**
+     * @param from payload offset where the records start
+     * @return this decoder's TLV parser, reset over the rest of the payload
+     */
+    public TLVParser tlvs(int from) {
+        return tlv.reset(buf, off + from, Math.max(0, len - from));
+    }
+
+    /** @return unsigned byte at payload offset {@code pos}. */
+    public int u8(int pos) { return buf[off + pos] & 0xFF; }
+
+    /** @return signed 16-bit value at payload offset {@code pos}. */
+    public short i16(int pos) {
+        int i = off + pos;
+        return (short) (((buf[i] & 0xFF) << 8) | (buf[i + 1] & 0xFF));
+    }
+
+    /** @return unsigned 16-bit value at payload offset {@code pos}. */
+    public int u16(int pos) { return i16(pos) & 0xFFFF; }
+
+    /** @return signed 32-bit value at payload offset {@code pos}. */
+    public int i32(int pos) { return readInt(buf, off + pos); }
+
+    private static int readInt(byte[] b, int i) {
+        return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16)
+             | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,95 @@
+package MessageManagement;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Table of inbound message handlers indexed by the frame's type byte.
+ * <p>
+ * Handlers are registered once at startup (see {@link AnswerProcessor}) and the
+ * table is read-only afterwards, so dispatch is a single array load shared by
+ * every connection. Each registered type gets call and time counters for the
+ * admin {@code stats} command; frames of unregistered types are counted and
+ * dropped without touching a handler.
+ */
+public final class MessageRegistry {
+
+    private static final int TYPES = 256;
+
+    private final AnswerProcessor.Handler[] handlers = new AnswerProcessor.Handler[TYPES];
+    private final String[]    names = new String[TYPES];
+    private final LongAdder[] calls = new LongAdder[TYPES];
+    private final LongAdder[] nanos = new LongAdder[TYPES];
+    private final LongAdder   unknown = new LongAdder();
+
+    /**
+     * Registers the handler for one message type.
+     *
+     * @param type    wire type code
+     * @param name    label for statistics
+     * @param handler code run for every frame of this type
+     * @return this registry
+     * @throws IllegalStateException if the type already has a handler
+     */
+    public MessageRegistry register(byte type, String name, AnswerProcessor.Handler handler) {
+        int i = type & 0xFF;
+        if (handlers[i] != null) {
+            throw new IllegalStateException("type 0x" + Integer.toHexString(i)
+                    + " already handled by " + names[i]);
+        }
+        names[i] = name;
+        calls[i] = new LongAdder();
+        nanos[i] = new LongAdder();
+        handlers[i] = handler;
+        return this;
+    }
+
+    /**
+     * @return {@code true} if frames of this type have a handler; decoders use
+     *         it to skip unknown payloads without buffering them.
+     */
+    public boolean handles(byte type) {
+        return handlers[type & 0xFF] != null;
+    }
+
+    /**
+     * Runs the handler registered for the frame's type, timing the call.
+     *
+     * @param f    current frame
+     * @param sess session of the sending client
+     * @throws IOException if the handler decides to drop the client
+     */
+    public void dispatch(FrameDecoder f, Session sess) throws IOException {
+        int i = f.type() & 0xFF;
+        AnswerProcessor.Handler h = handlers[i];
+        if (h == null) {
+            unknown.increment();
+            return;
+        }
+        long t0 = System.nanoTime();
+        try {
+            h.handle(f, sess);
+        } finally {
+            nanos[i].add(System.nanoTime() - t0);
+            calls[i].increment();
+        }
+    }
+
+    /**
+     * Prints one line per registered type that has been seen.
+     *
+     * @param out destination stream
+     */
+    public void printStats(PrintStream out) {
+        for (int i = 0; i < TYPES; i++) {
+            if (handlers[i] == null) continue;
+            long n = calls[i].sum();
+            if (n == 0) continue;
+            long total = nanos[i].sum();
+            out.printf("  0x%02x %-22s calls=%d avg=%.1fus total=%dms%n",
+                    i, names[i], n, total / 1000.0 / n, total / 1_000_000);
+        }
+        out.printf("  unknown frames=%d%n", unknown.sum());
+    }
+}
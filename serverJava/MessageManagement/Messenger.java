@@ -1,13 +1,14 @@
 package MessageManagement;
 import serverJava.GameServer;
-import java.io.*;
+import java.nio.ByteBuffer;
 
-import Utils.Rect;
 import Utils.MsgType;
 import Messages.OutboundMessage;
 import Messages.factories.CrocodileFactory;
 import Messages.factories.FruitFactory;
 import serverJava.ClientRole;
+import serverJava.EntityStore;
+import serverJava.Room;
 
 
 public class Messenger {
@@ -17,131 +18,123 @@ public class Messenger {
 
     public Messenger(GameServer server){ this.server = server; }
 
+    // Every frame is encoded by FrameCodec straight into the array the session queues.
+    private static ByteBuffer frame(int frameLen) {
+        return ByteBuffer.wrap(new byte[frameLen]);
+    }
 
+    private static void sendEmpty(Session session, byte type) {
+        ByteBuffer buf = frame(FrameCodec.EMPTY_LEN);
+        FrameCodec.putEmpty(buf, 0, type, session.clientId());
+        session.send(buf.array());
+    }
 
-    // A) INIT_STATIC legacy (server -> client)
-    public void sendInitStaticLegacy(int destClientId, DataOutputStream out) throws IOException {
-        int nP = server.platforms.size(), nV = server.vines.size(),
-            nE = server.crocodiles.size(),   nF = server.fruits.size();
-
-        final int rectBytes = 8;
-        int payloadLen = 8 // player
-                       + 2 + nP*rectBytes
-                       + 2 + nV*rectBytes
-                       + 2 + nE*rectBytes
-                       + 2 + nF*rectBytes;
-        
-
-        Proto.writeHeader(out, MsgType.INIT_STATIC, destClientId, 0, payloadLen);
+    private static void sendMessage(Session session, OutboundMessage message) {
+        ByteBuffer buf = frame(Proto.HEADER_LEN + message.payload().length);
+        FrameCodec.putMessage(buf, 0, message.type(), session.clientId(), message.payload());
+        session.send(buf.array());
+    }
 
-        Proto.writeRect(out, server.player);
-        Proto.writeU16(out, nP); for (Rect r: server.platforms) Proto.writeRect(out, r);
-        Proto.writeU16(out, nV); for (Rect r: server.vines)     Proto.writeRect(out, r);
-        Proto.writeU16(out, nE); for (Rect r: server.crocodiles)   Proto.writeRect(out, r);
-        Proto.writeU16(out, nF); for (Rect r: server.fruits)    Proto.writeRect(out, r);
 
-        out.flush();
+    // A) INIT_STATIC legacy (server -> client)
+    // Crocodiles and fruits come from the client's room (none if it has no room yet).
+    public void sendInitStaticLegacy(Session session, Room room) {
+        EntityStore.Snapshot entities = (room == null) ? EntityStore.Snapshot.EMPTY : room.entities().snapshot();
+        EntityStore.Entities crocodiles = entities.crocodiles(), fruits = entities.fruits();
+
+        ByteBuffer buf = frame(FrameCodec.initStaticLength(
+                server.platforms.size(), server.vines.size(), crocodiles.count(), fruits.count()));
+        FrameCodec.putInitStatic(buf, 0, session.clientId(), server.player,
+                server.platforms, server.vines, crocodiles, fruits);
+        session.send(buf.array());
     }
 
-    public void sendSpawnCroc(Session session, byte variant, int x, int y) throws IOException {
-        DataOutputStream out = session.out();
-        OutboundMessage message = crocFactory.spawn(variant, x, y);
-        byte[] pl = message.payload();
-        Proto.writeHeader(session.out(), message.type(), session.clientId(), 0, pl.length);
-        if (pl.length > 0) session.out().write(pl);
-        out.flush();
-
+    public void sendSpawnCroc(Session session, byte variant, int x, int y) {
+        sendMessage(session, crocFactory.spawn(variant, x, y));
     }
 
 
-    public void sendSpawnFruit(Session session, byte variant, int x, int y) throws IOException {
-        DataOutputStream out = session.out();
-        OutboundMessage message = fruitFactory.spawn(variant, x, y);
-        byte[] pl = message.payload();
-        Proto.writeHeader(out, message.type(), session.clientId(), 0, pl.length);
-        if (pl.length > 0) out.write(pl);
-        out.flush();
-    }   
+    public void sendSpawnFruit(Session session, byte variant, int x, int y) {
+        sendMessage(session, fruitFactory.spawn(variant, x, y));
+    }
 
-    public void sendRemoveFruit(Session session, int x, int y) throws IOException {
-        byte[] pl = new byte[]{
-            (byte)(x>>8),(byte)x,
-            (byte)(y>>8),(byte)y
-        };
-        Proto.writeHeader(session.out(), MsgType.REMOVE_FRUIT, session.clientId(), 0, pl.length);
-        session.out().write(pl);
-        session.out().flush();
+    public void sendRemoveFruit(Session session, int x, int y) {
+        ByteBuffer buf = frame(FrameCodec.REMOVE_FRUIT_LEN);
+        FrameCodec.putRemoveFruit(buf, 0, session.clientId(), x, y);
+        session.send(buf.array());
     }
 
-    public void sendRespawnDeath(Session session) throws IOException {
-        Proto.writeHeader(session.out(), MsgType.PLAYER_RESPAWN, session.clientId(), 0, 0);
-        session.out().flush();
+    public void sendRespawnDeath(Session session) {
+        sendEmpty(session, MsgType.PLAYER_RESPAWN);
     }
 
-    public void sendLivesUpdate(Session s, byte lives) throws IOException {
-        DataOutputStream out = s.out();
-        Proto.writeHeader(out, MsgType.LIVES_UPDATE, s.clientId(), 0, 1);
-        out.writeByte(lives);
-        out.flush();
+    public void sendLivesUpdate(Session s, byte lives) {
+        ByteBuffer buf = frame(FrameCodec.LIVES_UPDATE_LEN);
+        FrameCodec.putLivesUpdate(buf, 0, s.clientId(), lives);
+        s.send(buf.array());
     }
 
-    public void sendScoreUpdate(Session s, int score) throws IOException {
-        DataOutputStream out = s.out();
-        Proto.writeHeader(out, MsgType.SCORE_UPDATE, s.clientId(), 0, 4);
-        out.writeInt(score);
-        out.flush();
+    public void sendScoreUpdate(Session s, int score) {
+        ByteBuffer buf = frame(FrameCodec.SCORE_UPDATE_LEN);
+        FrameCodec.putScoreUpdate(buf, 0, s.clientId(), score);
+        s.send(buf.array());
     }
 
-    public void sendGameOver(Session session) throws IOException {
-        Proto.writeHeader(session.out(), MsgType.PLAYER_GAME_OVER, session.clientId(), 0, 0);
-        session.out().flush();
+    public void sendGameOver(Session session) {
+        sendEmpty(session, MsgType.PLAYER_GAME_OVER);
     }
 
-    public void sendRespawnWin(Session session) throws IOException {
-        Proto.writeHeader(session.out(), MsgType.RESPAWN_VICTORY, session.clientId(), 0, 0);
-        session.out().flush();
+    public void sendRespawnWin(Session session) {
+        sendEmpty(session, MsgType.RESPAWN_VICTORY);
     }
 
-    public void sendSpectatorState(Session s, short x, short y, short vx, short vy, byte flags, byte[] entitiesTlv) throws IOException 
+    /**
+     * Encodes one SPECTATOR_STATE frame to be shared by every spectator of a
+     * player. The header's destClientId is left at 0; each session's writer
+     * stamps its own id when the frame goes out.
+     *
+     * @param tlvBuf buffer holding the entities TLV (may be {@code null} when {@code tlvLen} is 0)
+     * @param tlvOff index of the TLV's first byte in {@code tlvBuf}
+     * @param tlvLen TLV length in bytes, 0 if the player sent none
+     * @return complete frame: header, 9-byte player state, then the entities TLV as received
+     */
+    public static byte[] encodeSpectatorState(short x, short y, short vx, short vy, byte flags,
+                                              byte[] tlvBuf, int tlvOff, int tlvLen)
     {
+        ByteBuffer buf = frame(FrameCodec.SPECTATOR_STATE_LEN + tlvLen);
+        FrameCodec.putSpectatorState(buf, 0, 0, x, y, vx, vy, flags, tlvBuf, tlvOff, tlvLen);
+        return buf.array();
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(baos);
-
-        // Player state (9 bytes)
-        out.writeShort(x);
-        out.writeShort(y);
-        out.writeShort(vx);
-        out.writeShort(vy);
-        out.writeByte(flags);
-
-        // Entities TLV (variable length)
-        if (entitiesTlv != null && entitiesTlv.length > 0) {
-            out.write(entitiesTlv);
-        }
-
-        byte[] payload = baos.toByteArray();
-
-        // Write the message header
-        Proto.writeHeader(s.out(),
-                        MsgType.SPECTATOR_STATE,
-                        s.clientId(),
-                        0,
-                        payload.length);
-
-        s.out().write(payload);
-        s.out().flush();
+    /**
+     * Encodes a SPECTATOR_STATE whose entities are a {@code TLV_ENTITIES_DELTA}
+     * against the previous frame. Shared like {@link #encodeSpectatorState}.
+     *
+     * @param ents    buffer holding the current 6-byte entity records
+     * @param entsOff index of entity 0 in {@code ents}
+     * @param count   current entity count
+     * @param changed indices of the entities to resend, ascending
+     * @param nChanged number of valid entries in {@code changed}
+     * @return complete frame
+     */
+    public static byte[] encodeSpectatorDelta(short x, short y, short vx, short vy, byte flags,
+                                              byte[] ents, int entsOff, int count,
+                                              int[] changed, int nChanged)
+    {
+        ByteBuffer buf = frame(FrameCodec.SPECTATOR_STATE_LEN + 5 + 7 * nChanged);
+        FrameCodec.putSpectatorDelta(buf, 0, 0, x, y, vx, vy, flags, ents, entsOff, count, changed, nChanged);
+        return buf.array();
     }
 
     // --- CLIENT_ACK with role byte and optional slot info ---
-    public void sendClientAck(Session s, ClientRole role) throws IOException {
+    public void sendClientAck(Session s, ClientRole role) {
         sendClientAck(s, role, 0, 0, false, false);
     }
 
     // Extended CLIENT_ACK with slot availability for spectators
-    public void sendClientAck(Session s, ClientRole role, 
+    public void sendClientAck(Session s, ClientRole role,
                              int player1SpecCount, int player2SpecCount,
-                             boolean player1Active, boolean player2Active) throws IOException {
+                             boolean player1Active, boolean player2Active) {
         byte roleByte = 0;
         if (role == ClientRole.PLAYER) {
             roleByte = 1;
@@ -154,32 +147,19 @@ public class Messenger {
         // Byte 0: roleByte (0=rejected, 1=player, 2=spectator)
         // Byte 1: player1 spectator count (0-2) or 255 if inactive
         // Byte 2: player2 spectator count (0-2) or 255 if inactive
-        int payloadLen = 3;
-
-        // Header
-        Proto.writeHeader(
-                s.out(),
-                MsgType.CLIENT_ACK,
-                s.clientId(),
-                0,
-                payloadLen
-        );
-
-        // Payload
-        s.out().writeByte(roleByte);
-        s.out().writeByte(player1Active ? player1SpecCount : 255);
-        s.out().writeByte(player2Active ? player2SpecCount : 255);
-        s.out().flush();
+        ByteBuffer buf = frame(FrameCodec.CLIENT_ACK_LEN);
+        FrameCodec.putClientAck(buf, 0, s.clientId(), 0, roleByte,
+                player1Active ? player1SpecCount : 255,
+                player2Active ? player2SpecCount : 255);
+        s.send(buf.array());
     }
 
-    public void sendCrocSpeedIncrease(Session session) throws IOException {
-        Proto.writeHeader(session.out(), MsgType.CROC_SPEED_INCREASE, session.clientId(), 0, 0);
-        session.out().flush();
+    public void sendCrocSpeedIncrease(Session session) {
+        sendEmpty(session, MsgType.CROC_SPEED_INCREASE);
     }
 
-    public void sendGameRestart(Session session) throws IOException {
-        Proto.writeHeader(session.out(), MsgType.GAME_RESTART, session.clientId(), 0, 0);
-        session.out().flush();
+    public void sendGameRestart(Session session) {
+        sendEmpty(session, MsgType.GAME_RESTART);
     }
 
-}
\ No newline at end of file
+}
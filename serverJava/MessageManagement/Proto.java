@@ -30,6 +30,11 @@ public final class Proto {
      */
     public static final byte VERSION = 1;
 
+    /**
+     * Size in bytes of the frame header written by {@link #writeHeader}.
+     */
+    public static final int HEADER_LEN = 16;
+
     private Proto() { /* no instances */ }
 
     /**
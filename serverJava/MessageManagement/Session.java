@@ -1,33 +1,96 @@
 package MessageManagement;
 
-import java.io.DataOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import Classes.Player.player;
 
 /**
  * Lightweight session descriptor for a connected client.
- * Holds the client identifier and the output stream used to send messages.
+ * Holds the client identifier and the encoded frames waiting to be written
+ * to the client's socket.
+ * <p>
+ * Any thread may {@link #send} a frame; only the session's {@link Writer}
+ * drains it. Senders never block. Outbound data has two lanes:
+ * <ul>
+ *   <li>a bounded queue for frames that must all arrive (HUD, spawns, game
+ *       over...); a client that falls so far behind that it fills up is dropped;</li>
+ *   <li>a single latest-state slot ({@link #sendLatest}) for periodic snapshots
+ *       such as SPECTATOR_STATE: a newer snapshot replaces one not yet written,
+ *       so a lagging client skips stale states instead of queueing them.</li>
+ * </ul>
+ * Writers take queued frames first, then the latest snapshot. The writer
+ * reports progress after each write so the server can disconnect clients
+ * whose socket has stopped draining ({@link #stalledMillis}).
+ * <p>
+ * Queued frames may be shared by several sessions (one encode per broadcast).
+ * Writers therefore never write a frame's destClientId as-is; they stamp
+ * {@link #clientId} into header bytes {@value #DEST_ID_OFFSET}..+3 and the
+ * session's {@link #gameId()} into bytes {@value #GAME_ID_OFFSET}..+3 on the way out.
  */
 public class Session {
+
+    /**
+     * Transport side of a session: drains the queue and can drop the peer.
+     */
+    public interface Writer {
+        /** Called after a frame is queued; the writer must eventually drain it. */
+        void wake();
+
+        /**
+         * Called when the peer cannot keep up (queue overflow or stall).
+         *
+         * @param reason text for the disconnect log
+         */
+        void abort(String reason);
+    }
+
     /**
      * Unique identifier of the connected client.
      */
     public final int clientId;
 
-    private final DataOutputStream out;
+    /** Offset of the int32 destClientId field inside a frame header. */
+    public static final int DEST_ID_OFFSET = 4;
+
+    /** Offset of the int32 gameId field inside a frame header. */
+    public static final int GAME_ID_OFFSET = 8;
 
     /**
      * Maximum supported payload size (bytes) for safety checks upstream.
      */
     public final int maxPayload = 64 * 1024;
 
+    private final ArrayBlockingQueue<byte[]> outbound;
+    private final AtomicReference<byte[]> latest = new AtomicReference<>();
+    private final Writer writer;
+    private final AtomicBoolean aborted = new AtomicBoolean();
+    private volatile player player;
+    private volatile int gameId = 0;
+
+    // Written by the writer after each frame, and by senders when an idle session gets output.
+    private volatile long lastProgressNanos = System.nanoTime();
+    private final AtomicLong dropped   = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    // Newest PLAYER_PROPOSED tick accepted, whether it came over TCP or a datagram.
+    private static final long NO_TICK = -1; // ticks are kept as unsigned 32 bits
+    private final AtomicLong proposedTick = new AtomicLong(NO_TICK);
+    private final AtomicLong staleProposals = new AtomicLong();
+
     /**
      * Creates a new session wrapper.
      *
-     * @param clientId client identifier assigned by the server
-     * @param out      output stream bound to the client's socket
+     * @param clientId      client identifier assigned by the server
+     * @param queueCapacity frames that may wait for the writer before the client is dropped
+     * @param writer        transport that drains this session
      */
-    public Session(int clientId, DataOutputStream out){
+    public Session(int clientId, int queueCapacity, Writer writer){
         this.clientId = clientId;
-        this.out = out;
+        this.outbound = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = writer;
     }
 
     /**
@@ -36,9 +99,177 @@ public class Session {
     public int clientId(){ return clientId; }
 
     /**
-     * @return the output stream for sending data to this client.
+     * Binds the game-side player state of this client so message handlers
+     * reach it without a map lookup per frame.
+     *
+     * @param p player state resolved at connect time
+     */
+    public void bindPlayer(player p){ this.player = p; }
+
+    /**
+     * @return player state bound at connect time, or {@code null} if none.
+     */
+    public player player(){ return player; }
+
+    /**
+     * @return game (room) this client belongs to, stamped into every outbound header; 0 if none yet.
+     */
+    public int gameId(){ return gameId; }
+
+    /**
+     * Sets the game stamped into outbound headers from the next written frame on.
+     *
+     * @param gameId room id, or 0
+     */
+    public void setGameId(int gameId){ this.gameId = gameId; }
+
+    /**
+     * Queues a complete frame (header + payload) for this client. Never blocks.
+     *
+     * @param frame encoded frame, possibly shared with other sessions; must not
+     *              be modified after this call
+     * @return {@code false} if the queue was full and the client is being dropped
      */
-    public DataOutputStream out(){ return out; }
+    public boolean send(byte[] frame){
+        if (aborted.get()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (!hasPending()) lastProgressNanos = System.nanoTime();
+        if (!outbound.offer(frame)) {
+            dropped.incrementAndGet();
+            abort("send queue full (" + outbound.size() + " frames)");
+            return false;
+        }
+        writer.wake();
+        return true;
+    }
+
+    /**
+     * Offers a snapshot frame that supersedes any earlier one. If the previous
+     * snapshot has not been written yet it is discarded and counted as coalesced.
+     * Never blocks and never overflows.
+     *
+     * @param frame encoded frame, possibly shared with other sessions
+     * @return {@code false} if the client is being dropped
+     */
+    public boolean sendLatest(byte[] frame){
+        if (aborted.get()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (!hasPending()) lastProgressNanos = System.nanoTime();
+        if (latest.getAndSet(frame) != null) {
+            coalesced.incrementAndGet();
+            return true; // writer already has a wake-up pending
+        }
+        writer.wake();
+        return true;
+    }
+
+    /**
+     * Offers a snapshot that is only valid if nothing is pending, such as a
+     * delta against the frame the writer took last. If an earlier snapshot is
+     * still unwritten, it is replaced by {@code otherwise} instead (a
+     * self-contained snapshot), because {@code ifIdle} would then apply to a
+     * frame the client never receives.
+     *
+     * @param ifIdle    frame used when the latest-state slot is empty
+     * @param otherwise frame used when it replaces an unwritten snapshot
+     * @return {@code false} if the client is being dropped
+     */
+    public boolean sendLatest(byte[] ifIdle, byte[] otherwise){
+        if (aborted.get()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (!hasPending()) lastProgressNanos = System.nanoTime();
+        if (latest.compareAndSet(null, ifIdle)) {
+            writer.wake();
+            return true;
+        }
+        if (latest.getAndSet(otherwise) != null) {
+            coalesced.incrementAndGet();
+        } else {
+            writer.wake(); // the writer took the old one in between
+        }
+        return true;
+    }
+
+    /**
+     * Takes the next frame to write: queued frames first, then the latest snapshot.
+     *
+     * @return next frame, or {@code null} if none.
+     */
+    public byte[] poll(){
+        byte[] f = outbound.poll();
+        return (f != null) ? f : latest.getAndSet(null);
+    }
+
+    /**
+     * @return {@code true} if frames are waiting for the writer.
+     */
+    public boolean hasPending(){
+        return !outbound.isEmpty() || latest.get() != null;
+    }
+
+    /**
+     * Called by the writer after a frame has been handed to the socket.
+     */
+    public void markProgress(){
+        lastProgressNanos = System.nanoTime();
+    }
+
+    /**
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return how long output has been waiting without the writer making
+     *         progress, in milliseconds; 0 if nothing is pending
+     */
+    public long stalledMillis(long nowNanos){
+        if (!hasPending()) return 0;
+        return (nowNanos - lastProgressNanos) / 1_000_000;
+    }
+
+    /**
+     * Drops the client once; later sends are discarded.
+     *
+     * @param reason text for the disconnect log
+     */
+    public void abort(String reason){
+        if (aborted.compareAndSet(false, true)) {
+            writer.abort(reason + " dropped=" + dropped.get() + " coalesced=" + coalesced.get());
+        }
+    }
+
+    /** @return frames discarded because the client was behind or being dropped. */
+    public long droppedFrames(){ return dropped.get(); }
+
+    /** @return snapshots replaced by a newer one before they were written. */
+    public long coalescedFrames(){ return coalesced.get(); }
+
+    /**
+     * Orders this client's PLAYER_PROPOSED by tick, over TCP and datagrams
+     * alike: once a newer state arrived by datagram, a proposal that TCP held
+     * back behind a lost segment is refused instead of overwriting it.
+     * Ticks compare with wrap-around.
+     *
+     * @param tick u32 tick from the frame
+     * @return {@code false} if it is not newer than the last accepted tick
+     */
+    public boolean acceptProposedTick(int tick){
+        long cur;
+        do {
+            cur = proposedTick.get();
+            if (cur != NO_TICK && tick - (int) cur <= 0) {
+                staleProposals.incrementAndGet();
+                return false;
+            }
+        } while (!proposedTick.compareAndSet(cur, tick & 0xFFFFFFFFL));
+        return true;
+    }
+
+    /** @return PLAYER_PROPOSED refused as not newer than one already accepted. */
+    public long staleProposals(){ return staleProposals.get(); }
 
     /**
      * Writes a prefixed message to standard output for debugging purposes.
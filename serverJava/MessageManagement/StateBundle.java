@@ -0,0 +1,88 @@
+package MessageManagement;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import Utils.MsgType;
+
+/**
+ * Builds one STATE_BUNDLE frame out of several events, so a transition
+ * (lives + respawn, restart + HUD reset...) reaches each client as a single
+ * frame and a single write and is never seen half applied.
+ * <p>
+ * Each event becomes a TLV whose type is the event's own message type and
+ * whose value is the payload that message carries on its own; clients apply
+ * them in order through their normal frame handlers. The frame's
+ * destClientId is left at 0 and stamped by each session's writer, so one
+ * bundle is encoded once and shared by a whole group.
+ */
+public final class StateBundle {
+
+    // Frame under construction; the header is written by toFrame, TLVs from HEADER_LEN to at.
+    private byte[] frame = new byte[Proto.HEADER_LEN + 32];
+    private ByteBuffer buf = ByteBuffer.wrap(frame);
+    private int at = Proto.HEADER_LEN;
+
+    /**
+     * Adds an event without payload (respawn, game over, restart...).
+     *
+     * @param type message type of the event
+     * @return this bundle
+     */
+    public StateBundle event(byte type) {
+        at = FrameCodec.putTLVHeader(reserve(0), at, type, 0);
+        return this;
+    }
+
+    /**
+     * Adds an event with a one-byte payload (e.g. LIVES_UPDATE).
+     */
+    public StateBundle eventU8(byte type, int value) {
+        at = FrameCodec.putTLVHeader(reserve(1), at, type, 1);
+        buf.put(at++, (byte) value);
+        return this;
+    }
+
+    /**
+     * Adds an event with a big-endian int32 payload (e.g. SCORE_UPDATE).
+     */
+    public StateBundle eventI32(byte type, int value) {
+        at = FrameCodec.putTLVHeader(reserve(4), at, type, 4);
+        buf.putInt(at, value);
+        at += 4;
+        return this;
+    }
+
+    /**
+     * Adds an event with an arbitrary payload.
+     *
+     * @param type    message type of the event
+     * @param payload payload exactly as the standalone message would carry it
+     * @return this bundle
+     */
+    public StateBundle event(byte type, byte[] payload) {
+        at = FrameCodec.putTLVHeader(reserve(payload.length), at, type, payload.length);
+        buf.put(at, payload);
+        at += payload.length;
+        return this;
+    }
+
+    /**
+     * @return complete STATE_BUNDLE frame (header + TLVs), shareable across sessions
+     */
+    public byte[] toFrame() {
+        byte[] out = Arrays.copyOf(frame, at);
+        FrameCodec.putHeader(ByteBuffer.wrap(out), 0, MsgType.STATE_BUNDLE, 0, 0, at - Proto.HEADER_LEN);
+        return out;
+    }
+
+    // Room for one more TLV with a valueLen-byte value; returns the buffer to write it into.
+    private ByteBuffer reserve(int valueLen) {
+        int need = at + 3 + valueLen;
+        if (need > frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(need, frame.length * 2));
+            buf = ByteBuffer.wrap(frame);
+        }
+        return buf;
+    }
+}
@@ -4,10 +4,26 @@ package MessageManagement;
  * Minimal TLV (Type-Length-Value) buffer iterator for parsing inbound payloads.
  * Buffer layout (big-endian length):
  * The parser is forward-only: each call to {@link #next()} advances the cursor.
+ * <p>
+ * Records are exposed as views (type, value offset, value length) into the
+ * source buffer; nothing is copied, so one parser can be {@link #reset} and
+ * reused for every frame of a connection.
  */
-public class TLVParser {
-    private final byte[] buf;
+public final class TLVParser {
+    private byte[] buf;
     private int pos;
+    private int end;
+
+    private byte type;
+    private int valueOffset;
+    private int valueLength;
+
+    /**
+     * Creates an empty parser; call {@link #reset} before use.
+     */
+    public TLVParser() {
+        this.buf = new byte[0];
+    }
 
     /**
      * Creates a parser over the provided byte buffer.
@@ -15,55 +31,62 @@ public class TLVParser {
      * @param buf source buffer containing TLV records (not modified)
      */
     public TLVParser(byte[] buf) {
+        reset(buf, 0, buf.length);
+    }
+
+    /**
+     * Points the parser at a new region of records.
+     *
+     * @param buf source buffer (not modified)
+     * @param off index of the first record
+     * @param len number of bytes holding records
+     * @return this parser
+     */
+    public TLVParser reset(byte[] buf, int off, int len) {
         this.buf = buf;
-        this.pos = 0;
+        this.pos = off;
+        this.end = off + len;
+        this.type = 0;
+        this.valueOffset = 0;
+        this.valueLength = 0;
+        return this;
     }
 
     /**
      * @return remaining unread bytes in the buffer.
      */
     public int remaining() {
-        return buf.length - pos;
+        return end - pos;
     }
 
     /**
-     * Decodes the next TLV record if enough bytes remain.
+     * Advances to the next TLV record if enough bytes remain.
      *
-     * @return a {@link TLV} instance, or {@code null} if the buffer does not
-     *         contain a full record (including value bytes)
+     * @return {@code true} if a full record (including value bytes) is now
+     *         current; {@code false} if the buffer ends or is truncated
      */
-    public TLV next() {
-        if (remaining() < 4) return null;
+    public boolean next() {
+        if (remaining() < 3) return false;
 
-        byte type = buf[pos];
         int len = ((buf[pos + 1] & 0xFF) << 8) | (buf[pos + 2] & 0xFF);
-        int valueStart = pos + 3;
-
-        if (remaining() < 3 + len) return null;
-
-        byte[] value = new byte[len];
-        System.arraycopy(buf, valueStart, value, 0, len);
+        if (remaining() < 3 + len) return false;
 
+        type        = buf[pos];
+        valueOffset = pos + 3;
+        valueLength = len;
         pos += 3 + len;
-
-        return new TLV(type, len, value);
+        return true;
     }
 
-    /**
-     * Immutable view of a single TLV record.
-     */
-    public static class TLV {
-        /** Application-defined record type (0..255). */
-        public final byte type;
-        /** Value length in bytes. */
-        public final int length;
-        /** Value bytes (defensive-copied from source buffer). */
-        public final byte[] value;
+    /** @return application-defined type (0..255) of the current record. */
+    public byte type() { return type; }
 
-        TLV(byte type, int length, byte[] value) {
-            this.type = type;
-            this.length = length;
-            this.value = value;
-        }
-    }
+    /** @return buffer holding the current record's value. */
+    public byte[] array() { return buf; }
+
+    /** @return index of the current record's first value byte in {@link #array()}. */
+    public int valueOffset() { return valueOffset; }
+
+    /** @return value length of the current record in bytes. */
+    public int valueLength() { return valueLength; }
 }
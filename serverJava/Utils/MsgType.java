@@ -14,6 +14,12 @@ public final class MsgType {
     /** Server → client: legacy static-map bootstrap (player start, platforms, vines, etc.). */
     public static final byte INIT_STATIC        = 0x02;
 
+    /** Server → client (TCP): UDP fast path available; payload u16 port, u32 token. */
+    public static final byte UDP_OFFER          = 0x03;
+
+    /** Client → server (UDP): bind this datagram socket; payload u32 token. Echoed back on success. */
+    public static final byte UDP_HELLO          = 0x04;
+
     /** Server → client: bundle container for state TLVs (alias of {@link #TLV_STATE_HEADER}). */
     public static final byte STATE_BUNDLE       = 0x10;
 
@@ -26,6 +32,12 @@ public final class MsgType {
     /** Server → client: TLV carrying entities correction (spawn/despawn sync, etc.). */
     public static final byte TLV_ENTITIES_CORR  = 0x12;
 
+    /**
+     * Server → spectator: entity changes since the previous SPECTATOR_STATE
+     * (u8 count, u8 changed, then changed × (u8 index + 6-byte entity)).
+     */
+    public static final byte TLV_ENTITIES_DELTA = 0x13;
+
     /** Client → server: player's proposed state for this tick (x, y, vx, vy, flags). */
     public static final byte PLAYER_PROPOSED    = 0x20;
 
@@ -41,9 +53,15 @@ public final class MsgType {
     /** Server → spectator: forward live player state (x, y, vx, vy, flags). */
     public static final byte SPECTATOR_STATE    = 0x50;
 
-    /** Client → server: spectator asks to attach to a player slot (1 or 2). */
+    /**
+     * Client → server: spectator asks to attach to a player slot (1 or 2);
+     * optional flags byte, then optional state rate in Hz (0 = server default).
+     */
     public static final byte SPECTATE_REQUEST   = 0x51;
 
+    /** SPECTATE_REQUEST flag: spectator understands {@link #TLV_ENTITIES_DELTA}. */
+    public static final int SPECTATE_FLAG_DELTA = 0x01;
+
     /** Client → server: notify death due to collision (server drives lives/respawn). */
     public static final byte NOTIFY_DEATH_COLLISION = 0x60;
 
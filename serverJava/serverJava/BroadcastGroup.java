@@ -0,0 +1,136 @@
+package serverJava;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Spectators of one player: everyone a player's HUD events and
+ * SPECTATOR_STATE stream are fanned out to.
+ * <p>
+ * Membership is copy-on-write: an immutable array of members, replaced as a
+ * whole by a compare-and-set on every join or leave. A broadcast reads the
+ * array once through {@link #members()} and loops over it with no lock, no
+ * iterator and no allocation; it sees exactly the members present when it
+ * started, and joins and leaves meanwhile never disturb it or wait for it.
+ * Membership changes are rare next to 60 Hz broadcasts, so paying an array
+ * copy on each change is the right trade.
+ * <p>
+ * The seat count travels in the same snapshot, so reading it is O(1) and a
+ * join checks the cap in the same compare-and-set that adds it: concurrent
+ * joins can never overshoot the cap. Privileged members (downstream
+ * {@link SpectatorRelay}s) receive everything but take no seat.
+ */
+final class BroadcastGroup {
+
+    /** Spectator count at which the launchers in clientC show a slot as full. */
+    static final int LAUNCHER_FULL = 2;
+
+    /** Members and seats at one instant; never modified once published. */
+    private static final class Members {
+        static final Members EMPTY = new Members(new ClientHandler[0], new boolean[0], 0);
+
+        final ClientHandler[] all;
+        final boolean[] seated; // parallel to all
+        final int seats;
+
+        Members(ClientHandler[] all, boolean[] seated, int seats) {
+            this.all = all;
+            this.seated = seated;
+            this.seats = seats;
+        }
+
+        int indexOf(ClientHandler h) {
+            for (int i = 0; i < all.length; i++) {
+                if (all[i] == h) return i;
+            }
+            return -1;
+        }
+    }
+
+    private final int cap;
+    private final AtomicReference<Members> members = new AtomicReference<>(Members.EMPTY);
+
+    /**
+     * @param cap seats available to non-privileged members
+     */
+    BroadcastGroup(int cap) {
+        this.cap = cap;
+    }
+
+    /**
+     * Adds a member if a seat is free.
+     *
+     * @param privileged join without taking a seat (never refused for capacity)
+     * @return {@code false} if the group is full or {@code h} is already a member
+     */
+    boolean tryJoin(ClientHandler h, boolean privileged) {
+        while (true) {
+            Members cur = members.get();
+            if (!privileged && cur.seats >= cap) return false;
+            if (cur.indexOf(h) >= 0) return false;
+            int n = cur.all.length;
+            ClientHandler[] all = new ClientHandler[n + 1];
+            boolean[] seated = new boolean[n + 1];
+            System.arraycopy(cur.all, 0, all, 0, n);
+            System.arraycopy(cur.seated, 0, seated, 0, n);
+            all[n] = h;
+            seated[n] = !privileged;
+            if (members.compareAndSet(cur, new Members(all, seated, cur.seats + (privileged ? 0 : 1)))) return true;
+        }
+    }
+
+    /** Removes a member, freeing its seat. @return {@code false} if it was not a member. */
+    boolean leave(ClientHandler h) {
+        while (true) {
+            Members cur = members.get();
+            int i = cur.indexOf(h);
+            if (i < 0) return false;
+            int n = cur.all.length - 1;
+            Members next = Members.EMPTY;
+            if (n > 0) {
+                ClientHandler[] all = new ClientHandler[n];
+                boolean[] seated = new boolean[n];
+                System.arraycopy(cur.all, 0, all, 0, i);
+                System.arraycopy(cur.all, i + 1, all, i, n - i);
+                System.arraycopy(cur.seated, 0, seated, 0, i);
+                System.arraycopy(cur.seated, i + 1, seated, i, n - i);
+                next = new Members(all, seated, cur.seats - (cur.seated[i] ? 1 : 0));
+            }
+            if (members.compareAndSet(cur, next)) return true;
+        }
+    }
+
+    /**
+     * @return current members, privileged or not. The array is shared and
+     *         never changes: read it, never write to it.
+     */
+    ClientHandler[] members() {
+        return members.get().all;
+    }
+
+    /** @return members holding a seat (privileged members excluded). */
+    int size() {
+        return members.get().seats;
+    }
+
+    int cap() {
+        return cap;
+    }
+
+    boolean isFull() {
+        return size() >= cap;
+    }
+
+    /** @return {@code true} if there is no member at all, privileged or not. */
+    boolean isEmpty() {
+        return members.get().all.length == 0;
+    }
+
+    /**
+     * Spectator count for a CLIENT_ACK slot byte. Launchers only know the
+     * default two seats, so larger groups report open (0 or 1) or full
+     * ({@value #LAUNCHER_FULL}); with the default cap this is the exact count.
+     */
+    int ackCount() {
+        return isFull() ? LAUNCHER_FULL : Math.min(size(), LAUNCHER_FULL - 1);
+    }
+}
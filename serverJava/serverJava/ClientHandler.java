@@ -2,49 +2,112 @@ package serverJava;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import MessageManagement.Messenger;
 import MessageManagement.Session;
 import MessageManagement.AnswerProcessor;
+import MessageManagement.FrameDecoder;
 import Classes.Player.player;
 
 
 
-public class ClientHandler extends Thread {
+public final class ClientHandler implements Runnable {
 
     private final int clientId;
-    private final Socket socket;
+    private final Closeable link;
+    private final String remote;
     private final GameServer server;
 
     private final DataInputStream in;
     private final Session session;
+    private final Session.Writer writer;
     private final AnswerProcessor answerProcessor;
+    private final FrameDecoder decoder;
     private final Messenger messenger;
     private player player;
 
     private ClientRole role;
-    private Integer observedPlayerId;
+    // Spectator side: player watched, claimed once by compare-and-set when attaching.
+    private final AtomicReference<Integer> observedPlayerId = new AtomicReference<>();
+    // Game this client plays or watches; spectators move to the room they attach to.
+    private volatile Room room;
+
+    // Player side: encoder of this player's SPECTATOR_STATE stream (null for spectators).
+    private final SpectatorFeed spectatorFeed;
+    // Spectator side: delta opt-in, send rate and last feed frame offered, owned by the observed player's feed.
+    private volatile boolean wantsDelta = false;
+    private volatile int feedSeq = -1;
+    private volatile long feedVersion = -1;
+    private volatile long feedIntervalNanos = -1; // -1: server-wide rate
+    private volatile long feedNextDue;
+
+    // UDP fast path (see UdpChannel): offer token, bound datagram peer and outbound
+    // SPECTATOR_STATE sequence. Feeds of any player may send to this client, and
+    // HELLO rebinds from the receiver.
+    private static final int UDP_OUT_INITIAL = 2 * 1024;
+    private volatile int udpToken;
+    private volatile SocketAddress udpPeer;
+    private final AtomicInteger udpSeq = new AtomicInteger();
+    // Direct datagram staging buffer, owned by whoever set udpSending.
+    private final AtomicBoolean udpSending = new AtomicBoolean();
+    private ByteBuffer udpOut;
+
+    /**
+     * Blocking session: {@link #run()} reads frames from the socket on its own thread
+     * and starts a second thread that drains the outbound queue.
+     */
+    public ClientHandler(int clientId, Socket socket, GameServer server, ClientRole role, Room room) throws IOException {
+        this(clientId, socket, socket.getRemoteSocketAddress().toString(),
+             new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+             new SocketWriter(clientId, socket),
+             server, role, room);
+    }
+
+    /**
+     * Non-blocking session: the connection's selector thread feeds frames to
+     * {@link #onFrame} and drains the outbound queue.
+     */
+    public ClientHandler(int clientId, NioConnection conn, GameServer server, ClientRole role, Room room) {
+        this(clientId, conn, conn.remote(), null, conn,
+             server, role, room);
+    }
 
-    public ClientHandler(int clientId, Socket socket, GameServer server, ClientRole role, Integer observedPlayerId) throws IOException {
-        super("Client-" + clientId);
+    private ClientHandler(int clientId, Closeable link, String remote, DataInputStream in, Session.Writer writer,
+                          GameServer server, ClientRole role, Room room) {
         this.clientId = clientId;
-        this.socket   = socket;
+        this.link     = link;
+        this.remote   = remote;
         this.server   = server;   // store reference to GameServer
-        this.player   = server.getPlayerFromServer(clientId);
+        this.player   = (role == ClientRole.PLAYER) ? server.getPlayerFromServer(clientId) : null;
         this.role     = role;
-        this.observedPlayerId = observedPlayerId;
-
-        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
-        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
-
-        this.session         = new Session(clientId, out);
-        this.answerProcessor = new AnswerProcessor(server);
+        this.spectatorFeed = (role == ClientRole.PLAYER)
+                ? new SpectatorFeed(server.config().spectatorKeyframe, server.config().spectatorHz,
+                                    server.trailingFeeds())
+                : null;
+
+        this.in = in;
+        this.writer = writer;
+
+        this.session         = new Session(clientId, server.config().sendQueue, writer);
+        this.session.bindPlayer(player);
+        setRoom(room);
+        this.answerProcessor = server.answers();
+        this.decoder         = new FrameDecoder(session.maxPayload);
         this.messenger       = new Messenger(server);
 
       
 
         // --- Mapa estático inicial ---
-        messenger.sendInitStaticLegacy(clientId, out);
+        messenger.sendInitStaticLegacy(session, room);
+
+        if (server.udp() != null) {
+            server.udp().offer(this);
+        }
     }
     
     public ClientRole getRole() {
@@ -52,9 +115,10 @@ public class ClientHandler extends Thread {
     }
 
     public Integer getObservedPlayerId() {
-        return observedPlayerId;
+        return observedPlayerId.get();
     }
 
+    /** @return lives, score and motion of this client, or {@code null} unless it is a PLAYER. */
     public player getPlayer() {
         return player;
     }
@@ -63,115 +127,306 @@ public class ClientHandler extends Thread {
         return clientId;
     }
 
-    public synchronized void setObservedPlayerId(Integer pid) {
-        this.observedPlayerId = pid;
+    /** @return the outbound session drained by this client's writer. */
+    public Session session() {
+        return session;
     }
 
-    public void sendSpectatorState(short x, short y, short vx, short vy, byte flags, byte[] entitiesTlv) {
-        try {
-            messenger.sendSpectatorState(session, x, y, vx, vy, flags, entitiesTlv);
-            //session.log("Sent SPECTATOR_STATE to client " + clientId +
-              //          " (x=" + x + ", y=" + y + ", vx=" + vx + ", vy=" + vy +
-                //        ", flags=" + flags + ")");
-        } catch (IOException e) {
-            session.log("Error sending SPECTATOR_STATE: " + e.getMessage());
+    public void setObservedPlayerId(Integer pid) {
+        observedPlayerId.set(pid);
+    }
+
+    /** Starts watching {@code pid}; @return {@code false} if this client already watches someone. */
+    boolean claimObservedPlayer(Integer pid) {
+        return observedPlayerId.compareAndSet(null, pid);
+    }
+
+    /** Undoes {@link #claimObservedPlayer} if the claim still stands. */
+    void releaseObservedPlayer(Integer pid) {
+        observedPlayerId.compareAndSet(pid, null);
+    }
+
+    /** @return room this client belongs to (for spectators, the one offered or attached to). */
+    public Room room() {
+        return room;
+    }
+
+    /** Moves the client to a room; its outbound frames carry that room's gameId. */
+    void setRoom(Room room) {
+        this.room = room;
+        session.setGameId((room != null) ? room.gameId() : 0);
+    }
+
+    SpectatorFeed spectatorFeed() {
+        return spectatorFeed;
+    }
+
+    /**
+     * Starts a fresh SPECTATOR_STATE stream for this spectator: the next frame
+     * it receives is a keyframe.
+     *
+     * @param delta {@code true} if the spectator accepts TLV_ENTITIES_DELTA
+     * @param hz    requested state rate, or 0 for the server-wide rate
+     */
+    void resetFeed(boolean delta, int hz) {
+        this.wantsDelta = delta;
+        this.feedSeq = -1;
+        this.feedVersion = -1;
+        this.feedIntervalNanos = (hz > 0) ? SpectatorFeed.intervalNanos(hz) : -1;
+        this.feedNextDue = System.nanoTime();
+    }
+
+    long feedVersion() {
+        return feedVersion;
+    }
+
+    void setFeedVersion(long version) {
+        this.feedVersion = version;
+    }
+
+    long feedIntervalNanos() {
+        return feedIntervalNanos;
+    }
+
+    long feedNextDue() {
+        return feedNextDue;
+    }
+
+    void setFeedNextDue(long at) {
+        this.feedNextDue = at;
+    }
+
+    // Deltas need every frame to arrive, which datagrams do not promise.
+    boolean wantsDelta() {
+        return wantsDelta && udpPeer == null;
+    }
+
+    int feedSeq() {
+        return feedSeq;
+    }
+
+    void setUdpToken(int token) {
+        this.udpToken = token;
+    }
+
+    int udpToken() {
+        return udpToken;
+    }
+
+    /** Routes this client's SPECTATOR_STATE over datagrams from now on. */
+    void bindUdp(SocketAddress peer) {
+        this.udpPeer = peer;
+    }
+
+    SocketAddress udpPeer() {
+        return udpPeer;
+    }
+
+    /** @return next u16 datagram sequence number. */
+    int nextUdpSeq() {
+        return udpSeq.incrementAndGet() & 0xFFFF;
+    }
+
+    /**
+     * Takes this client's datagram staging buffer for one send.
+     *
+     * @param len bytes the caller will put in it
+     * @return the buffer, cleared and with room for {@code len} bytes, or
+     *         {@code null} if another thread is sending to this client right now
+     */
+    ByteBuffer claimUdpOut(int len) {
+        if (!udpSending.compareAndSet(false, true)) return null;
+        if (udpOut == null || udpOut.capacity() < len) {
+            udpOut = ByteBuffer.allocateDirect(Math.max(len, UDP_OUT_INITIAL));
         }
+        return udpOut.clear();
     }
 
-    public void sendCrocSpeedIncrease() {
-        try {
-            messenger.sendCrocSpeedIncrease(session);
-        } catch (IOException e) {
-            session.log("Error CROC_SPEED_INCREASE: " + e.getMessage());
+    /** Hands the buffer from {@link #claimUdpOut} back. */
+    void releaseUdpOut() {
+        udpSending.set(false);
+    }
+
+    void setFeedSeq(int seq) {
+        this.feedSeq = seq;
+    }
+
+    /**
+     * Offers a SPECTATOR_STATE frame encoded once for the whole spectator group.
+     * If the previous state has not been written yet it is replaced, so a slow
+     * spectator only ever has the newest state pending. Spectators bound to
+     * the UDP fast path get it as a datagram right away instead.
+     *
+     * @param frame shared frame from {@link Messenger#encodeSpectatorState}
+     */
+    public void sendSpectatorState(byte[] frame) {
+        SocketAddress peer = udpPeer;
+        if (peer != null) {
+            server.udp().sendState(this, peer, frame);
+            return;
         }
+        session.sendLatest(frame);
+    }
+
+    /**
+     * Offers a delta SPECTATOR_STATE, or the matching keyframe if the
+     * previous state has not been written yet (the delta's baseline would
+     * never reach the client).
+     */
+    void sendSpectatorState(byte[] delta, byte[] keyframe) {
+        session.sendLatest(delta, keyframe);
+    }
+
+    /**
+     * Queues a STATE_BUNDLE frame shared by the player's whole group.
+     *
+     * @param frame frame from {@link MessageManagement.StateBundle#toFrame()}
+     */
+    public void sendBundle(byte[] frame) {
+        session.send(frame);
+    }
+
+    public void sendCrocSpeedIncrease() {
+        messenger.sendCrocSpeedIncrease(session);
     }
 
     public String getRemote() {
-        return socket.getRemoteSocketAddress().toString();
+        return remote;
     }
 
     public void sendSpawnCroc(byte variant, int x, int y) {
-        try {
-            messenger.sendSpawnCroc(session, variant, x, y);
-            session.log("Sent CROC_SPAWN(v="+variant+") to client " + clientId + " at (" + x + "," + y + ")");
-        } catch (IOException e) {
-            session.log("Error sending CROC_SPAWN: " + e.getMessage());
-        }
+        messenger.sendSpawnCroc(session, variant, x, y);
+        session.log("Sent CROC_SPAWN(v="+variant+") to client " + clientId + " at (" + x + "," + y + ")");
     }
 
     public void sendSpawnFruit(byte variant, int x, int y) {
-        try {
-            messenger.sendSpawnFruit(session, variant, x, y);
-            session.log("Sent FRUIT_SPAWN(v="+variant+") to client " + clientId + " at (" + x + "," + y + ")");
-        } catch (IOException e) {
-            session.log("Error sending FRUIT_SPAWN: " + e.getMessage());
-        }
+        messenger.sendSpawnFruit(session, variant, x, y);
+        session.log("Sent FRUIT_SPAWN(v="+variant+") to client " + clientId + " at (" + x + "," + y + ")");
     }
 
     public void sendRemoveFruit(int x, int y){
-        try {
-            messenger.sendRemoveFruit(session, x, y);
-            session.log("Sent REMOVE_FRUIT to " + clientId + " at ("+x+","+y+")");
-        } catch(IOException e){
-            session.log("Error REMOVE_FRUIT: " + e.getMessage());
-        }
+        messenger.sendRemoveFruit(session, x, y);
+        session.log("Sent REMOVE_FRUIT to " + clientId + " at ("+x+","+y+")");
     }
 
     public void sendRespawnDeath() {
-        try { messenger.sendRespawnDeath(session); }
-        catch (IOException e){ session.log("Error RESPawnDeath: "+e.getMessage()); }
+        messenger.sendRespawnDeath(session);
     }
 
     public void sendRespawnWin() {
-        try { messenger.sendRespawnWin(session); }
-        catch (IOException e){ session.log("Error RESPawnWin: "+e.getMessage()); }
+        messenger.sendRespawnWin(session);
     }
 
     public void sendGameOver() {
-        try { messenger.sendGameOver(session); }
-        catch (IOException e){ session.log("Error GameOver: "+e.getMessage()); }
+        messenger.sendGameOver(session);
     }
 
     public void sendLivesUpdate(byte lives) {
-        try {
-            messenger.sendLivesUpdate(session, lives);
-        } catch (IOException e) {
-            session.log("Error LIVES_UPDATE: " + e.getMessage());
-        }
+        messenger.sendLivesUpdate(session, lives);
     }
 
     public void sendScoreUpdate(int score) {
-        try {
-            messenger.sendScoreUpdate(session, score);
-        } catch (IOException e) {
-            session.log("Error SCORE_UPDATE: " + e.getMessage());
-        }
+        messenger.sendScoreUpdate(session, score);
     }
 
     public void sendGameRestart() {
-        try {
-            messenger.sendGameRestart(session);
-        } catch (IOException e) {
-            session.log("Error GAME_RESTART: " + e.getMessage());
-        }
+        messenger.sendGameRestart(session);
     }
 
 
+    /**
+     * Processes one complete inbound frame (header included) read in place
+     * from the caller's buffer.
+     *
+     * @param src        buffer holding the frame
+     * @param frameStart index of the frame's first header byte
+     * @throws IOException if the frame is malformed or the client must be dropped
+     */
+    public void onFrame(byte[] src, int frameStart) throws IOException {
+        decoder.wrap(src, frameStart);
+        answerProcessor.processFrame(decoder, session);
+    }
+
+    void log(String s) {
+        session.log(s);
+    }
+
     @Override
     public void run() {
+        if (in == null) {
+            throw new IllegalStateException("Client " + clientId + " is driven by its selector thread");
+        }
+        SocketWriter socketWriter = (SocketWriter) writer;
+        Thread writerThread = server.startSessionThread("Client-" + clientId + "-out",
+                () -> socketWriter.drain(session));
         try {
             while (true) {
-                
-                answerProcessor.processFrame(in, session);
-                
+                decoder.readFrom(in, server.messages());
+                answerProcessor.processFrame(decoder, session);
             }
         } catch (Exception e) {
             session.log("disconnect: " + e.getMessage());
         } finally {
-            try { socket.close(); } catch (IOException ignore) {}
+            writerThread.interrupt();
+            try { link.close(); } catch (IOException ignore) {}
 
             
             server.removeClient(clientId);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writer for a blocking session: its own thread polls frames from the
+     * session, writes the whole batch and flushes once when nothing is left,
+     * then parks until {@link #wake()}, so callers never wait on this
+     * client's TCP window.
+     */
+    private static final class SocketWriter implements Session.Writer {
+        private final int clientId;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private volatile Thread drainer;
+
+        SocketWriter(int clientId, Socket socket) throws IOException {
+            this.clientId = clientId;
+            this.socket   = socket;
+            this.out      = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 8 * 1024));
+        }
+
+        @Override
+        public void wake() {
+            Thread t = drainer;
+            if (t != null) LockSupport.unpark(t);
+        }
+
+        @Override
+        public void abort(String reason) {
+            System.out.println("[Client " + clientId + "] " + reason);
+            // Closing the socket ends the reader, which unregisters the client.
+            try { socket.close(); } catch (IOException ignore) {}
+        }
+
+        void drain(Session session) {
+            drainer = Thread.currentThread();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    byte[] frame = session.poll();
+                    if (frame == null) {
+                        out.flush();
+                        session.markProgress();
+                        LockSupport.park(this); // a send after poll() leaves a permit, so no wake-up is lost
+                        continue;
+                    }
+                    out.write(frame, 0, Session.DEST_ID_OFFSET);
+                    out.writeInt(clientId);
+                    out.writeInt(session.gameId());
+                    int rest = Session.GAME_ID_OFFSET + 4;
+                    out.write(frame, rest, frame.length - rest);
+                    session.markProgress();
+                }
+            } catch (IOException e) {
+                session.abort("write failed: " + e.getMessage());
+            }
+        }
+    }
+}
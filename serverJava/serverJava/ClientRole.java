@@ -7,5 +7,10 @@ public enum ClientRole {
     /** Active player controlling gameplay. */
     PLAYER,
     /** Read-only viewer attached to a player's feed. */
-    SPECTATOR
+    SPECTATOR,
+    /**
+     * Downstream {@link SpectatorRelay} subscribed to a player's feed on behalf
+     * of its own spectators; exempt from the spectator caps.
+     */
+    RELAY
 }
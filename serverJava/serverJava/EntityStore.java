@@ -0,0 +1,246 @@
+package serverJava;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dynamic entities (crocodiles, fruits) of one {@link Room}.
+ * <p>
+ * Each kind is kept as a struct of arrays: parallel {@code short} x and y
+ * columns and {@code byte} variant and flag columns, indexed by slot. There
+ * are no per-entity objects; a removed entity's slot goes on a free list and
+ * the next spawn reuses it. Fruits are also indexed by their packed (x, y)
+ * coordinate, so a pick finds its slot in O(1); there is at most one fruit
+ * per coordinate. Writers (GUI spawns, fruit picks, round resets, the room
+ * upkeep) run under the store's {@link ReentrantLock}, so a session on a
+ * virtual thread that waits for it parks rather than pinning its carrier.
+ * <p>
+ * Readers (INIT_STATIC encoders, the admin console) get an immutable
+ * {@link Snapshot} with a single volatile load: no lock, no packing. A change
+ * only marks the store dirty; the world phase of the server's
+ * {@link TickEngine} packs the live slots into fresh columns once per tick
+ * that saw changes, so a burst of changes costs one copy and every reader of
+ * that tick shares it. A reader therefore sees the world as of the last tick,
+ * at most one tick old. Each snapshot carries an epoch, one more than the
+ * previous one's. A round reset publishes at once, as a single epoch step, so
+ * no reader sees a half-cleared round.
+ */
+public final class EntityStore {
+
+    /** Size of a spawned crocodile or fruit, in world pixels. */
+    public static final int ENTITY_SIZE = 8;
+
+    /**
+     * Contents of the store at one instant.
+     *
+     * @param epoch number of this snapshot in its store, increasing with every change published
+     */
+    public record Snapshot(long epoch, Entities crocodiles, Entities fruits) {
+        /** No entities (e.g. a client without a room). */
+        public static final Snapshot EMPTY = new Snapshot(0, Entities.NONE, Entities.NONE);
+    }
+
+    /**
+     * Read-only, packed columns of one kind of entity: entity {@code i} of
+     * {@code 0..count()-1} is at ({@code x(i)}, {@code y(i)}). Coordinates are
+     * unsigned 16-bit, as on the wire.
+     */
+    public static final class Entities {
+        static final Entities NONE = new Entities(0, new short[0], new short[0], new byte[0]);
+
+        private final int count;
+        private final short[] x, y;
+        private final byte[] variant;
+
+        private Entities(int count, short[] x, short[] y, byte[] variant) {
+            this.count = count;
+            this.x = x;
+            this.y = y;
+            this.variant = variant;
+        }
+
+        public int count()          { return count; }
+        public int x(int i)         { return x[i] & 0xFFFF; }
+        public int y(int i)         { return y[i] & 0xFFFF; }
+        public byte variant(int i)  { return variant[i]; }
+    }
+
+    // Guards the writer side below. Package-private so tests can hold it.
+    final ReentrantLock lock = new ReentrantLock();
+    private final Pool crocodiles = new Pool(16);
+    private final Pool fruits = new Pool(16);
+    private final LongIntMap fruitAt = new LongIntMap(16); // packed (x, y) -> fruit slot
+    private long epoch;
+    // Set under the lock by every change; read without it by the world phase.
+    private volatile boolean dirty;
+
+    // Contents as of the last publish; replaced whole, never null.
+    private volatile Snapshot published = Snapshot.EMPTY;
+
+    /** @return contents as of the last tick that published them. Never blocks. */
+    public Snapshot snapshot() {
+        return published;
+    }
+
+    /** Publishes pending changes, if any; called once per tick by the world phase. */
+    void publishIfChanged() {
+        if (dirty) publish();
+    }
+
+    private void publish() {
+        lock.lock();
+        try {
+            if (!dirty) return;
+            published = new Snapshot(++epoch, crocodiles.pack(), fruits.pack());
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void addCrocodile(byte variant, int x, int y) {
+        lock.lock();
+        try {
+            crocodiles.add(variant, x, y);
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Adds a fruit, replacing any fruit already at (x, y). */
+    void addFruit(byte variant, int x, int y) {
+        lock.lock();
+        try {
+            long key = LongIntMap.key(x, y);
+            int slot = fruitAt.get(key);
+            if (slot == LongIntMap.MISSING) fruitAt.put(key, fruits.add(variant, x, y));
+            else fruits.variant[slot] = variant;
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void removeFruitAt(int x, int y) {
+        lock.lock();
+        try {
+            int slot = fruitAt.remove(LongIntMap.key(x, y));
+            if (slot == LongIntMap.MISSING) return;
+            fruits.free(slot);
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops crocodiles that fell below {@code maxY} (off screen). */
+    void removeCrocodilesBelow(int maxY) {
+        lock.lock();
+        try {
+            boolean changed = false;
+            for (int i = 0; i < crocodiles.limit; i++) {
+                if (crocodiles.isLive(i) && (crocodiles.y[i] & 0xFFFF) > maxY) {
+                    crocodiles.free(i);
+                    changed = true;
+                }
+            }
+            if (changed) dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            crocodiles.clear();
+            fruits.clear();
+            fruitAt.clear();
+            published = new Snapshot(++epoch, Entities.NONE, Entities.NONE);
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Writer-side columns of one kind; slots below {@code limit} are live or on the free list. */
+    private static final class Pool {
+        private static final byte LIVE = 1;
+
+        short[] x, y;
+        byte[] variant, flags;
+        int[] nextFree;      // free-list link of a freed slot
+        int freeHead = -1;
+        int limit;           // slots ever handed out since the last clear
+        int count;           // live slots
+
+        Pool(int capacity) {
+            x = new short[capacity];
+            y = new short[capacity];
+            variant = new byte[capacity];
+            flags = new byte[capacity];
+            nextFree = new int[capacity];
+        }
+
+        boolean isLive(int slot) {
+            return (flags[slot] & LIVE) != 0;
+        }
+
+        /** @return the slot used, reusing a freed one if any. */
+        int add(byte v, int px, int py) {
+            int slot;
+            if (freeHead >= 0) {
+                slot = freeHead;
+                freeHead = nextFree[slot];
+            } else {
+                if (limit == x.length) grow();
+                slot = limit++;
+            }
+            x[slot] = (short) px;
+            y[slot] = (short) py;
+            variant[slot] = v;
+            flags[slot] = LIVE;
+            count++;
+            return slot;
+        }
+
+        void free(int slot) {
+            flags[slot] = 0;
+            nextFree[slot] = freeHead;
+            freeHead = slot;
+            count--;
+        }
+
+        void clear() {
+            Arrays.fill(flags, 0, limit, (byte) 0);
+            limit = 0;
+            count = 0;
+            freeHead = -1;
+        }
+
+        Entities pack() {
+            if (count == 0) return Entities.NONE;
+            short[] px = new short[count], py = new short[count];
+            byte[] pv = new byte[count];
+            int n = 0;
+            for (int i = 0; i < limit; i++) {
+                if (!isLive(i)) continue;
+                px[n] = x[i];
+                py[n] = y[i];
+                pv[n] = variant[i];
+                n++;
+            }
+            return new Entities(n, px, py, pv);
+        }
+
+        private void grow() {
+            int cap = x.length * 2;
+            x = Arrays.copyOf(x, cap);
+            y = Arrays.copyOf(y, cap);
+            variant = Arrays.copyOf(variant, cap);
+            flags = Arrays.copyOf(flags, cap);
+            nextFree = Arrays.copyOf(nextFree, cap);
+        }
+    }
+}
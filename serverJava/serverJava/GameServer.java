@@ -2,6 +2,7 @@ package serverJava;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -9,19 +10,27 @@ import java.util.function.Consumer;
 
 import Utils.Rect;
 import Classes.Player.player;
-import serverJava.EntityState;
+import MessageManagement.FrameCodec;
 import MessageManagement.Proto;
+import MessageManagement.Messenger;
+import MessageManagement.AnswerProcessor;
+import MessageManagement.MessageRegistry;
+import MessageManagement.StateBundle;
 import Utils.MsgType;
 
-public class GameServer {
+public final class GameServer {
 
     private final int port;
+    private final ServerConfig config;
     private ServerSocket serverSocket;
+    private HandshakeStage handshakes;
+    private UdpChannel udp; // null unless --udp
 
-    private static final int MAX_PLAYERS = 2;
-    private static final int MAX_SPECTATORS_PER_PLAYER = 2;
-    private static final int MAX_TOTAL_SPECTATORS = MAX_PLAYERS * MAX_SPECTATORS_PER_PLAYER; // 4
+    // Fixed-rate loop running cleanup, trailing spectator flushes, timeouts and GUI spawns.
+    private final TickEngine tick;
 
+    // Spectator feeds owed a trailing SPECTATOR_STATE, flushed by the tick's snapshot phase.
+    private final Set<SpectatorFeed> trailingFeeds = ConcurrentHashMap.newKeySet();
 
     // Connected clients
     private final ConcurrentHashMap<Integer, ClientHandler> clients = new ConcurrentHashMap<>();
@@ -30,8 +39,17 @@ public class GameServer {
     // Map playerId -> player handler
     private final Map<Integer, ClientHandler> players = new ConcurrentHashMap<>();
 
-    // Map playerId -> list of spectator observers
-    private final Map<Integer, List<ClientHandler>> spectatorsByPlayer = new ConcurrentHashMap<>();
+    // Hosted games by gameId. Ids start at 1 and are never reused; 0 in a frame means "my room".
+    private final ConcurrentSkipListMap<Integer, Room> rooms = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextGameId = new AtomicInteger(1);
+    // Rooms open or being opened; reserved by compare-and-set against config.maxRooms.
+    private final AtomicInteger openRooms = new AtomicInteger();
+
+    // Set with --validate-moves: plausibility check of PLAYER_PROPOSED.
+    private final MoveValidator moves;
+
+    // Set with --relay: this process hosts no games and serves spectators from an upstream server.
+    private final SpectatorRelay relay;
 
     private final ConcurrentHashMap<Integer, player> playerStates = new ConcurrentHashMap<>();
 
@@ -43,29 +61,39 @@ public class GameServer {
     public final List<Rect> vines      = new ArrayList<>();
     public final List<Rect> waters     = new ArrayList<>();
 
-    // legacy (para INIT_STATIC y compatibilidad con Messenger)
-    public final List<Rect> crocodiles = new ArrayList<>();
-    public final List<Rect> fruits     = new ArrayList<>();
-
-  
-    public final List<EntityState> crocodileStates = new ArrayList<>();
-    public final List<EntityState> fruitStates     = new ArrayList<>();
-
+    // Crocodiles and fruits are per game: see Room.
 
     static final int CROC_W  = 8;
     static final int FRUIT_W = 8;
 
 
-    private Integer playerSlot1 = null;
-    private Integer playerSlot2 = null;
+    // Inbound dispatch table, filled by the shared AnswerProcessor at construction.
+    private final MessageRegistry messages = new MessageRegistry();
+    private final AnswerProcessor answers = new AnswerProcessor(this, messages);
 
     // Player rectangle used in Messenger.sendInitStaticLegacy
     public Rect player = new Rect(0, 0, 0, 0);
 
 
     public GameServer(int port) {
-        this.port = port;
+        this(configForPort(port));
+    }
+
+    public GameServer(ServerConfig config) {
+        this.config = config;
+        this.port = config.port;
+        this.tick = new TickEngine(config.tickHz, config.tickBudgetPct);
+        this.relay = (config.relayHost != null)
+                ? new SpectatorRelay(this, config.relayHost, config.relayPort, config.relayViewers)
+                : null;
         initLevel();
+        this.moves = config.validateMoves ? new MoveValidator(platforms, vines) : null;
+    }
+
+    private static ServerConfig configForPort(int port) {
+        ServerConfig c = new ServerConfig();
+        c.port = port;
+        return c;
     }
 
     // ---- initial game board ----
@@ -112,8 +140,17 @@ public class GameServer {
     public List<Rect> getPlatforms() { return platforms; }
     public List<Rect> getVines()     { return vines; }
     public List<Rect> getWaters()    { return waters; }
-    public List<Rect> getcrocodiles()   { return crocodiles; }
-    public List<Rect> getFruits()    { return fruits; }
+    HandshakeStage handshakes() { return handshakes; }
+    UdpChannel udp() { return udp; }
+    SpectatorRelay relay() { return relay; }
+    /** @return move validator, or {@code null} unless {@code --validate-moves}. */
+    public MoveValidator moveValidator() { return moves; }
+    TickEngine tick() { return tick; }
+    Set<SpectatorFeed> trailingFeeds() { return trailingFeeds; }
+    public ServerConfig config() { return config; }
+    public AnswerProcessor answers() { return answers; }
+    /** @return inbound dispatch table; register extra message types before {@link #start()}. */
+    public MessageRegistry messages() { return messages; }
     public List<Integer> getClientIdsSnapshot() {
         return new ArrayList<>(clients.keySet());
     }
@@ -125,7 +162,22 @@ public class GameServer {
                 line = line.trim();
                 if (line.equalsIgnoreCase("list")) {
                     if (clients.isEmpty()) { System.out.println("(no clients)"); continue; }
-                    clients.forEach((id, h) -> System.out.println("id=" + id + " remote=" + h.getRemote()));
+                    clients.forEach((id, h) -> System.out.println("id=" + id + " remote=" + h.getRemote()
+                            + " room=" + (h.room() == null ? "-" : h.room().gameId())
+                            + " dropped=" + h.session().droppedFrames()
+                            + " coalesced=" + h.session().coalescedFrames()));
+                }
+                else if (line.equalsIgnoreCase("rooms")) {
+                    if (rooms.isEmpty()) { System.out.println("(no rooms)"); continue; }
+                    for (Room room : rooms.values()) {
+                        EntityStore.Snapshot world = room.entities().snapshot();
+                        System.out.println("room=" + room.gameId()
+                                + " players=" + room.playerInSlot(1) + "," + room.playerInSlot(2)
+                                + " spectators=" + room.spectatorCount()
+                                + " epoch=" + world.epoch()
+                                + " crocodiles=" + world.crocodiles().count()
+                                + " fruits=" + world.fruits().count());
+                    }
                 }
                 else if (line.startsWith("croc ")) {
                     // croc <clientId> <variant> <x> <y>
@@ -161,9 +213,14 @@ public class GameServer {
                         System.out.println("Usage: fruit <clientId> <BANANA|APPLE|ORANGE|1|2|3> <x> <y>");
                     }
                 }
+                else if (line.equalsIgnoreCase("stats")) {
+                    printStats();
+                }
                 else if (line.equalsIgnoreCase("help")) {
                     System.out.println("Commands:");
                     System.out.println("  list");
+                    System.out.println("  rooms");
+                    System.out.println("  stats");
                     System.out.println("  croc  <clientId> <RED|BLUE|1|2> <x> <y>");
                     System.out.println("  fruit <clientId> <BANANA|APPLE|ORANGE|1|2|3> <x> <y>");
                     System.out.println("  help");
@@ -172,6 +229,58 @@ public class GameServer {
         } catch (IOException ignored) {}
     }
 
+    // One entity snapshot per room per tick that changed it, shared by every reader of that tick.
+    private void publishWorlds() {
+        for (Room room : rooms.values()) room.entities().publishIfChanged();
+    }
+
+    // Trailing SPECTATOR_STATE for spectators that skipped the newest state of a now-quiet player.
+    private void flushTrailingFeeds() {
+        long now = System.nanoTime();
+        for (SpectatorFeed feed : trailingFeeds) feed.flushTrailing(now);
+    }
+
+    private void cleanupRooms() {
+        for (Room room : rooms.values()) room.cleanupOffScreenCrocodiles();
+    }
+
+    // Spectators whose socket stopped draining: their SPECTATOR_STATE is coalesced and
+    // never overflows the queue, so without this they would linger forever.
+    private void dropStalledSpectators() {
+        long now = System.nanoTime();
+        for (ClientHandler h : clients.values()) {
+            if (h.getRole() == ClientRole.PLAYER) continue; // spectators and relays
+            long stalled = h.session().stalledMillis(now);
+            if (stalled > config.spectatorStallMs) {
+                h.session().abort("stalled for " + stalled + " ms");
+            }
+        }
+    }
+
+    // Connections vs. platform threads and heap, to compare session modes under load.
+    private void printStats() {
+        Runtime rt = Runtime.getRuntime();
+        long usedKb = (rt.totalMemory() - rt.freeMemory()) / 1024;
+        int platformThreads = java.lang.management.ManagementFactory.getThreadMXBean().getThreadCount();
+        String mode = (config.transport == ServerConfig.Transport.NIO) ? "nio"
+                    : (config.virtualThreads ? "virtual" : "platform");
+        long dropped = 0, coalesced = 0, staleProposals = 0;
+        for (ClientHandler h : clients.values()) {
+            dropped   += h.session().droppedFrames();
+            coalesced += h.session().coalescedFrames();
+            staleProposals += h.session().staleProposals();
+        }
+        System.out.printf("mode=%s clients=%d rooms=%d platformThreads=%d heapUsed=%dKB%n",
+                mode, clients.size(), rooms.size(), platformThreads, usedKb);
+        System.out.printf("  live sessions: droppedFrames=%d coalescedFrames=%d staleProposals=%d%n",
+                dropped, coalesced, staleProposals);
+        tick.printStats();
+        if (moves != null) moves.printStats();
+        if (udp != null) udp.printStats();
+        if (relay != null) relay.printStats();
+        messages.printStats(System.out);
+    }
+
     // Parsers auxiliares:
     private static byte parseCrocVariant(String token){
         token = token.toUpperCase();
@@ -193,121 +302,143 @@ public class GameServer {
         }
     }
 
-    public synchronized void clearEntitiesForNewRound() {
-        crocodiles.clear();
-        fruits.clear();
-        crocodileStates.clear();
-        fruitStates.clear();
+    /** @return room of a connected client, or {@code null} (unknown id, or spectator not attached yet). */
+    public Room roomOf(int clientId) {
+        ClientHandler h = clients.get(clientId);
+        return (h == null) ? null : h.room();
     }
 
-    public synchronized void cleanupOffScreenCrocodiles() {
-        // Remove crocodiles that are below the screen (y > 240)
-        crocodileStates.removeIf(c -> c.y > 240);
-        crocodiles.removeIf(r -> r.y() > 240);
+    /** Clears the crocodiles and fruits of the player's room. */
+    public void clearEntitiesForNewRound(int playerId) {
+        Room room = roomOf(playerId);
+        if (room != null) room.clearEntitiesForNewRound();
     }
 
+    /** Forgets a picked or removed fruit in the player's room. */
+    public void removeFruit(int playerId, int x, int y) {
+        Room room = roomOf(playerId);
+        if (room != null) room.removeFruitAt(x, y);
+    }
 
-    private Integer choosePlayerForSpectator() {
-        Integer best = null;
-        int bestCount = Integer.MAX_VALUE;
+    // Opens a room with slot 1 already reserved for clientId, so nobody can close it
+    // before its first player arrives; null once config.maxRooms rooms are open.
+    private Room openRoom(int clientId) {
+        int n;
+        do {
+            n = openRooms.get();
+            if (n >= config.maxRooms) return null;
+        } while (!openRooms.compareAndSet(n, n + 1));
+        int gameId = nextGameId.getAndIncrement();
+        Room room = new Room(gameId, config.spectatorsPerPlayer);
+        room.reservePlayerSlot(clientId);
+        rooms.put(gameId, room);
+        System.out.println("Opened room " + gameId + " (" + (n + 1) + " rooms)");
+        return room;
+    }
 
-        for (Map.Entry<Integer, ClientHandler> e : players.entrySet()) {
-            int pid = e.getKey();
-            List<ClientHandler> specs = spectatorsByPlayer.get(pid);
-            int count = (specs == null) ? 0 : specs.size();
-            if (count < 2 && count < bestCount) {
-                bestCount = count;
-                best = pid;
-            }
-        }
-        return best;
+    // Rooms go away with their last player. Only the caller that wins closeIfEmpty removes it.
+    private void closeRoomIfEmpty(Room room) {
+        if (room == null || !room.closeIfEmpty()) return;
+        rooms.remove(room.gameId(), room);
+        int n = openRooms.decrementAndGet();
+        room.close();
+        System.out.println("Closed room " + room.gameId() + " (" + n + " rooms)");
     }
 
+    /**
+     * Lives, score and motion of a player client, created on first use.
+     * Only PLAYER clients have one; {@link #removeClient} drops it.
+     */
     public player getPlayerFromServer(int clientId) {
         return playerStates.computeIfAbsent(clientId, id -> {
-                player p = new player(0, 0);
-                p.setLives(3);
-                p.setScore(0);
-                return p;
+                return new player(0, 0); // 3 lives, no score
         });
     }
 
-    public synchronized boolean attachSpectatorToSlot(int spectatorClientId, int slotIndex) {
+    public boolean attachSpectatorToSlot(int spectatorClientId, int slotIndex) {
+        return attachSpectatorToSlot(spectatorClientId, 0, slotIndex, false, 0);
+    }
+
+    //param gameId room to watch, 0 for the room offered in the spectator's CLIENT_ACK
+    //param deltaState true if the spectator accepts TLV_ENTITIES_DELTA in SPECTATOR_STATE
+    //param stateHz SPECTATOR_STATE rate for this spectator, 0 for config().spectatorHz
+    public boolean attachSpectatorToSlot(int spectatorClientId, int gameId, int slotIndex, boolean deltaState, int stateHz) {
         ClientHandler spectator = clients.get(spectatorClientId);
         if (spectator == null) {
             return false; // no such client
         }
-        if (spectator.getRole() != ClientRole.SPECTATOR) {
+        if (spectator.getRole() == ClientRole.PLAYER) {
             return false; // not a spectator
         }
+        if (relay != null) {
+            return relay.attach(spectator, gameId, slotIndex, deltaState, stateHz);
+        }
+        boolean privileged = spectator.getRole() == ClientRole.RELAY;
 
-        Integer targetPlayerId = null;
-        if (slotIndex == 1) {
-            targetPlayerId = playerSlot1;
-        } else if (slotIndex == 2) {
-            targetPlayerId = playerSlot2;
-        } else {
-            return false; // invalid slot index
+        Room room = (gameId != 0) ? rooms.get(gameId) : spectator.room();
+        if (room == null || room.isClosed()) {
+            return false; // no such room, or it closed meanwhile
         }
 
+        Integer targetPlayerId = room.playerInSlot(slotIndex);
         if (targetPlayerId == null) {
-            // no hay player en ese slot
+            // no hay player en ese slot (or invalid slot index)
             return false;
         }
+        BroadcastGroup group = room.spectatorsByPlayer.get(targetPlayerId);
+        if (group == null) {
+            return false; // player still in its handshake, or leaving
+        }
 
-        List<ClientHandler> specs = spectatorsByPlayer
-                .computeIfAbsent(targetPlayerId,
-                        k -> Collections.synchronizedList(new ArrayList<>()));
+        if (!spectator.claimObservedPlayer(targetPlayerId)) {
+            return false; // already watching someone
+        }
 
-        if (specs.size() >= 2) {
+        // The feed may pick the spectator up as soon as it joins: reset it first.
+        // A refused spectator is disconnected, so moving it to the room is harmless.
+        spectator.setRoom(room);
+        spectator.resetFeed(deltaState, stateHz);
+        if (!group.tryJoin(spectator, privileged)) {
             // slot full
+            spectator.releaseObservedPlayer(targetPlayerId);
+            return false;
+        }
+        // removeClient frees the slot, then drops the group, then detaches its members. Either
+        // that detach sees this join, or this check sees the player gone and backs out.
+        if (!targetPlayerId.equals(room.playerInSlot(slotIndex))
+                || room.spectatorsByPlayer.get(targetPlayerId) != group) {
+            group.leave(spectator);
+            spectator.releaseObservedPlayer(targetPlayerId);
             return false;
         }
 
-        specs.add(spectator);
-        spectator.setObservedPlayerId(targetPlayerId);
-       
         // NOTE: Spectator will receive entities via TLV in SPECTATOR_STATE messages
         // No need to send initial spawn messages - they get full snapshot each frame
 
-        player pState = getPlayerFromServer(targetPlayerId); 
-        byte lives = (byte) pState.getLives();
-        spectator.sendLivesUpdate(lives);
-        int score = pState.getScore();
-        spectator.sendScoreUpdate(score);
+        player target = playerStates.get(targetPlayerId); // null if the player just left
+        if (target != null) {
+            long stats = target.stats(); // lives and score of one instant
+            spectator.sendBundle(new StateBundle()
+                    .eventU8(MsgType.LIVES_UPDATE, Classes.Player.player.lives(stats))
+                    .eventI32(MsgType.SCORE_UPDATE, Classes.Player.player.score(stats))
+                    .toFrame());
+        }
 
 
-        System.out.println("Spectator " + spectatorClientId
+        System.out.println((privileged ? "Relay " : "Spectator ") + spectatorClientId
                 + " attached to player " + targetPlayerId
+                + " in room " + room.gameId()
                 + " (slot " + slotIndex + ")");
         return true;
     }
 
-    public void broadcastRespawnDeathToGroup(int playerId){
-        sendToPlayerGroup(playerId, ClientHandler::sendRespawnDeath);
-    }
-
-    public void broadcastRespawnWinToGroup(int playerId){
-        sendToPlayerGroup(playerId, ClientHandler::sendRespawnWin);
-    }
-
-    public void broadcastGameOverToGroup(int playerId){
-        sendToPlayerGroup(playerId, ClientHandler::sendGameOver);
-    }
-    public void broadcastLivesUpdateToGroup(int playerId, byte lives) {
-        sendToPlayerGroup(playerId, h -> h.sendLivesUpdate(lives));
-    }
-
-    public void broadcastScoreUpdateToGroup(int playerId, int score) {
-        sendToPlayerGroup(playerId, h -> h.sendScoreUpdate(score));
-    }
-
-    public void broadcastCrocSpeedIncreaseToGroup(int playerId) {
-        sendToPlayerGroup(playerId, ClientHandler::sendCrocSpeedIncrease);
-    }
-
-    public void broadcastGameRestartToGroup(int playerId) {
-        sendToPlayerGroup(playerId, ClientHandler::sendGameRestart);
+    /**
+     * Sends several events to the player and its spectators as one
+     * STATE_BUNDLE frame, encoded once for the whole group.
+     */
+    public void broadcastBundleToGroup(int playerId, StateBundle bundle) {
+        byte[] frame = bundle.toFrame();
+        sendToPlayerGroup(playerId, h -> h.sendBundle(frame));
     }
 
     public void resetCrocodileSpeed() {
@@ -319,9 +450,6 @@ public class GameServer {
 
 
     public void start() throws IOException {
-        serverSocket = new ServerSocket(port);
-        System.out.println("Server listening on port " + port);
-
         // Start admin console 
         Thread admin = new Thread(this::adminLoop, "admin-loop");
         admin.setDaemon(true);
@@ -332,289 +460,291 @@ public class GameServer {
             new ServerGui(this).show();
         });
 
-        Thread cleanupThread = new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(1000); // Clean up every second
-                    cleanupOffScreenCrocodiles();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        }, "cleanup-thread");
-        cleanupThread.setDaemon(true);
-        cleanupThread.start();
+        // Per-tick work first; once-a-second upkeep yields when the tick runs out of budget.
+        int everySecond = tick.ticksIn(1000);
+        tick.addPhase("world", 1, 1000, false, this::publishWorlds);
+        tick.addPhase("snapshots", 1, 1000, false, this::flushTrailingFeeds);
+        tick.addPhase("timeouts", everySecond, 1000, true, this::dropStalledSpectators);
+        tick.addPhase("cleanup", everySecond, 2000, true, this::cleanupRooms);
+        tick.start();
+
+        if (config.udp) {
+            udp = new UdpChannel(this, port);
+            udp.start();
+        }
 
+        handshakes = new HandshakeStage(this, config);
+
+        if (config.transport == ServerConfig.Transport.NIO) {
+            new NioTransport(this, port, config.ioThreads).run();
+            return;
+        }
+
+        serverSocket = new ServerSocket(port);
+        System.out.println("Server listening on port " + port
+                + (config.virtualThreads ? " (virtual-thread sessions)" : ""));
+
+        // The acceptor only accepts; role, ACK and INIT_STATIC happen in the handshake stage.
         while (true) {
             Socket socket = serverSocket.accept();
-            socket.setTcpNoDelay(true);
-
-            int clientId = idGen.getAndIncrement();
-
-            // Read requested role byte
-            int requestedRoleRaw;
-            try {
-                requestedRoleRaw = socket.getInputStream().read();
-            } catch (IOException e) {
-                System.out.println("Failed to read requested role from client: " + e.getMessage());
-                try { socket.close(); } catch (IOException ignore) {}
-                continue;
-            }
-            if (requestedRoleRaw == -1) {
-                System.out.println("Client disconnected before sending requested role");
-                try { socket.close(); } catch (IOException ignore) {}
-                continue;
-            }
-
-            boolean wantsPlayer    = (requestedRoleRaw == 1);
-            boolean wantsSpectator = (requestedRoleRaw == 2);
+            handshakes.submit(socket);
+        }
+    }
 
-            if (!wantsPlayer && !wantsSpectator) {
-                System.out.println("Client " + clientId + " sent invalid requested role: " + requestedRoleRaw);
-                try { socket.close(); } catch (IOException ignore) {}
-                continue;
-            }
+    /**
+     * Runs a blocking session on a virtual or platform thread depending on
+     * {@link ServerConfig#virtualThreads}.
+     */
+    Thread startSession(ClientHandler handler) {
+        return startSessionThread("Client-" + handler.getClientId(), handler);
+    }
 
-            ClientRole role = null;
-            Integer observedPlayerId = null;
-
-            // Check capacity before creating ClientHandler
-            synchronized (this) {
-                if (wantsPlayer) {
-                    // client asks to be player
-                    Integer freeSlot = null;
-                    if (playerSlot1 == null) {
-                        freeSlot = 1;
-                    } else if (playerSlot2 == null) {
-                        freeSlot = 2;
-                    }
+    /** Starts a per-session helper thread (e.g. the outbound writer) of the configured kind. */
+    Thread startSessionThread(String name, Runnable task) {
+        return config.virtualThreads
+                ? Thread.ofVirtual().name(name).start(task)
+                : Thread.ofPlatform().name(name).start(task);
+    }
 
-                    if (freeSlot != null) {
-                        role = ClientRole.PLAYER;
-                        observedPlayerId = null;
-
-                        // Reserve the slot immediately
-                        if (freeSlot == 1) {
-                            playerSlot1 = clientId;
-                        } else {
-                            playerSlot2 = clientId;
-                        }
-
-                        System.out.println("Client " + clientId
-                                + " requested PLAYER -> assigned PLAYER in slot " + freeSlot);
-                    } else {
-                        
-                        System.out.println("Client " + clientId
-                                + " requested PLAYER but no slot free. Closing.");
-                    }
-                } else if (wantsSpectator) {
-                    // client asks to be spectator
-                    if (players.isEmpty()) {
-                        // there must be at least one player
-                        System.out.println("Client " + clientId
-                                + " requested SPECTATOR but no players connected. Rejecting.");
-                    } else {
-                        // Count ALL connected spectators (from clients map)
-                        long totalSpectators = clients.values().stream()
-                                .filter(h -> h.getRole() == ClientRole.SPECTATOR)
-                                .count();
-
-                        if (totalSpectators >= MAX_TOTAL_SPECTATORS) {
-                            System.out.println("Client " + clientId
-                                    + " requested SPECTATOR but max spectators reached ("
-                                    + totalSpectators + "/" + MAX_TOTAL_SPECTATORS + "). Rejecting.");
-                        } else {
-                            // Additional check: At least one player slot must have room
-                            boolean hasAvailableSlot = false;
-                            
-                            for (ClientHandler playerHandler : players.values()) {
-                                int playerId = playerHandler.getClientId();
-                                List<ClientHandler> specs = spectatorsByPlayer.get(playerId);
-                                int currentSpecs = (specs == null) ? 0 : specs.size();
-                                
-                                if (currentSpecs < MAX_SPECTATORS_PER_PLAYER) {
-                                    hasAvailableSlot = true;
-                                    break;
-                                }
-                            }
-                            
-                            if (!hasAvailableSlot) {
-                                System.out.println("Client " + clientId
-                                        + " requested SPECTATOR but all player slots are full. Rejecting.");
-                            } else {
-                                role = ClientRole.SPECTATOR;
-                                observedPlayerId = null;
-                                System.out.println("Client " + clientId
-                                        + " requested SPECTATOR -> assigned SPECTATOR (pending selection) ("
-                                        + totalSpectators + "/" + MAX_TOTAL_SPECTATORS + ")");
-                            }
-                        }
-                    }
-                }
-            }
+    /** @return a fresh client id for a newly accepted connection. */
+    int nextClientId() {
+        return idGen.getAndIncrement();
+    }
 
-            // Send CLIENT_ACK before creating ClientHandler
-            // This way capacity check connections get their answer without a handler
-            // For spectators, include per-slot availability info
-            try {
-                DataOutputStream out = new DataOutputStream(
-                        new BufferedOutputStream(socket.getOutputStream()));
-
-                byte roleByte = (role != null) 
-                    ? (role == ClientRole.PLAYER ? (byte)1 : (byte)2) 
-                    : (byte)0;
-
-                // Gather slot info for spectators
-                int player1SpecCount = 0;
-                int player2SpecCount = 0;
-                boolean player1Active = false;
-                boolean player2Active = false;
-
-                synchronized (this) {
-                    // Check player slot 1
-                    if (playerSlot1 != null && clients.containsKey(playerSlot1)) {
-                        player1Active = true;
-                        List<ClientHandler> specs1 = spectatorsByPlayer.get(playerSlot1);
-                        player1SpecCount = (specs1 == null) ? 0 : specs1.size();
-                    }
+    /** Role granted at handshake and the room the client was placed in. */
+    record Admission(ClientRole role, Room room) {}
 
-                    // Check player slot 2
-                    if (playerSlot2 != null && clients.containsKey(playerSlot2)) {
-                        player2Active = true;
-                        List<ClientHandler> specs2 = spectatorsByPlayer.get(playerSlot2);
-                        player2SpecCount = (specs2 == null) ? 0 : specs2.size();
-                    }
+    /**
+     * Decides the role of a connecting client and places it in a room.
+     * Players take the first room with a free slot, opening a new room when
+     * all are full (up to {@link ServerConfig#maxRooms}); spectators are
+     * offered the first room that has a player with spectator room left.
+     *
+     * @param clientId         id assigned to the connection
+     * @param requestedRoleRaw role byte sent by the client (1 = player, 2 = spectator)
+     * @return the granted role and room, or {@code null} if the client is rejected
+     */
+    Admission admitClient(int clientId, int requestedRoleRaw) {
+        if (relay != null) {
+            return relay.admit(clientId, requestedRoleRaw);
+        }
+        boolean wantsPlayer    = (requestedRoleRaw == 1);
+        boolean wantsSpectator = (requestedRoleRaw == 2);
+        boolean wantsRelay     = (requestedRoleRaw == 3);
+
+        if (wantsPlayer) {
+            // client asks to be player: reserve the slot immediately
+            for (Room room : rooms.values()) {
+                int slot = room.reservePlayerSlot(clientId);
+                if (slot != 0) {
+                    System.out.println("Client " + clientId
+                            + " requested PLAYER -> assigned PLAYER in room " + room.gameId() + " slot " + slot);
+                    return new Admission(ClientRole.PLAYER, room);
                 }
+            }
+            Room room = openRoom(clientId);
+            if (room != null) {
+                System.out.println("Client " + clientId
+                        + " requested PLAYER -> assigned PLAYER in room " + room.gameId() + " slot 1");
+                return new Admission(ClientRole.PLAYER, room);
+            }
+            System.out.println("Client " + clientId
+                    + " requested PLAYER but all " + config.maxRooms + " rooms are full. Closing.");
+        } else if (wantsSpectator) {
+            // client asks to be spectator
+            if (players.isEmpty()) {
+                // there must be at least one player
+                System.out.println("Client " + clientId
+                        + " requested SPECTATOR but no players connected. Rejecting.");
+                return null;
+            }
 
-                // Send extended CLIENT_ACK with slot info
-                // Payload: [roleByte, player1Count, player2Count]
-                // If player inactive, count is 255
-                Proto.writeHeader(out, MsgType.CLIENT_ACK, clientId, 0, 3);
-                out.writeByte(roleByte);
-                out.writeByte(player1Active ? player1SpecCount : 255);
-                out.writeByte(player2Active ? player2SpecCount : 255);
-                out.flush();
-
-                if (role == null) {
-                    // Rejected - close socket
-                    socket.close();
-                    continue;
+            for (Room room : rooms.values()) {
+                if (room.hasPlayers() && room.hasSpectatorRoom()) {
+                    System.out.println("Client " + clientId
+                            + " requested SPECTATOR -> assigned SPECTATOR (pending selection) in room "
+                            + room.gameId() + " (" + room.spectatorCount() + " watching)");
+                    return new Admission(ClientRole.SPECTATOR, room);
                 }
-
-            } catch (IOException e) {
-                System.out.println("Failed to send CLIENT_ACK: " + e.getMessage());
-                try { socket.close(); } catch (IOException ignore) {}
-                
-                // If we reserved a player slot, free it
-                synchronized (this) {
-                    if (role == ClientRole.PLAYER) {
-                        if (Objects.equals(playerSlot1, clientId)) playerSlot1 = null;
-                        if (Objects.equals(playerSlot2, clientId)) playerSlot2 = null;
-                    }
+            }
+            System.out.println("Client " + clientId
+                    + " requested SPECTATOR but all player slots are full. Rejecting.");
+            return null;
+        } else if (wantsRelay) {
+            // downstream relay: offered the first game with a player, no caps
+            for (Room room : rooms.values()) {
+                if (room.hasPlayers()) {
+                    System.out.println("Client " + clientId
+                            + " requested RELAY -> assigned RELAY (pending selection) in room " + room.gameId());
+                    return new Admission(ClientRole.RELAY, room);
                 }
-                continue;
+            }
+            System.out.println("Client " + clientId
+                    + " requested RELAY but no players connected. Rejecting.");
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Builds the extended CLIENT_ACK frame for a handshake.
+     * Payload: [roleByte, player1Count, player2Count]; a count of 255 means
+     * that player slot is inactive. The header's gameId is the admitted room,
+     * which the client echoes in its own frames.
+     *
+     * @param clientId  id assigned to the connection
+     * @param admission granted role and room, or {@code null} when rejected (role byte 0)
+     * @return complete frame bytes (header + payload)
+     */
+    byte[] encodeClientAck(int clientId, Admission admission) {
+        if (relay != null) {
+            return relay.encodeClientAck(clientId, admission);
+        }
+        ClientRole role = (admission != null) ? admission.role() : null;
+        Room room = (admission != null) ? admission.room() : null;
+        byte roleByte = (role == null) ? (byte)0
+            : (role == ClientRole.PLAYER) ? (byte)1
+            : (role == ClientRole.SPECTATOR) ? (byte)2
+            : (byte)3;
+
+        // Gather slot info for spectators
+        int player1SpecCount = 0;
+        int player2SpecCount = 0;
+        boolean player1Active = false;
+        boolean player2Active = false;
+
+        if (room != null) {
+            // Check player slot 1
+            Integer p1 = room.playerInSlot(1);
+            BroadcastGroup g1 = (p1 == null) ? null : room.spectatorsByPlayer.get(p1);
+            if (g1 != null && clients.containsKey(p1)) {
+                player1Active = true;
+                player1SpecCount = g1.ackCount();
             }
 
-            // Now create the ClientHandler 
-            ClientHandler handler;
-            try {
-                handler = new ClientHandler(clientId, socket, this, role, observedPlayerId);
-            } catch (IOException e) {
-                System.out.println("Failed to create ClientHandler: " + e.getMessage());
-                try { socket.close(); } catch (IOException ignore) {}
-                
-                // Free reserved slot
-                synchronized (this) {
-                    if (role == ClientRole.PLAYER) {
-                        if (Objects.equals(playerSlot1, clientId)) playerSlot1 = null;
-                        if (Objects.equals(playerSlot2, clientId)) playerSlot2 = null;
-                    }
-                }
-                continue;
+            // Check player slot 2
+            Integer p2 = room.playerInSlot(2);
+            BroadcastGroup g2 = (p2 == null) ? null : room.spectatorsByPlayer.get(p2);
+            if (g2 != null && clients.containsKey(p2)) {
+                player2Active = true;
+                player2SpecCount = g2.ackCount();
             }
+        }
 
-            clients.put(clientId, handler);
+        byte[] frame = new byte[FrameCodec.CLIENT_ACK_LEN];
+        FrameCodec.putClientAck(ByteBuffer.wrap(frame), 0, clientId, (room != null) ? room.gameId() : 0, roleByte,
+                player1Active ? player1SpecCount : 255,
+                player2Active ? player2SpecCount : 255);
+        return frame;
+    }
 
-            if (role == ClientRole.PLAYER) {
-                players.put(clientId, handler);
-                spectatorsByPlayer.putIfAbsent(clientId,
-                        Collections.synchronizedList(new ArrayList<>()));
-            }
+    /**
+     * Frees a player slot reserved by {@link #admitClient} when the handshake
+     * fails before the client is registered.
+     */
+    void releaseReservation(int clientId, Admission admission) {
+        if (relay != null) relay.forget(clientId);
+        if (admission == null || admission.role() != ClientRole.PLAYER) return;
+        playerStates.remove(clientId); // the handler may already have created it
+        admission.room().releasePlayerSlot(clientId);
+        closeRoomIfEmpty(admission.room());
+    }
 
-            handler.start();
-            System.out.println("Client connected, id=" + clientId + " from " + socket.getRemoteSocketAddress());
-        }
+    /**
+     * Same as {@link #releaseReservation(int, Admission)} for a handshake that
+     * fails after the handler was built: also forgets its UDP offer token.
+     */
+    void releaseReservation(ClientHandler handler, Admission admission) {
+        if (udp != null) udp.forget(handler);
+        releaseReservation(handler.getClientId(), admission);
+    }
 
-        
+    /** Publishes a handshaken client so messages and broadcasts can reach it. */
+    void registerClient(ClientHandler handler) {
+        int clientId = handler.getClientId();
+        clients.put(clientId, handler);
 
+        if (handler.getRole() == ClientRole.PLAYER) {
+            players.put(clientId, handler);
+            handler.room().spectatorsOf(clientId);
+        }
     }
 
     // Called by ClientHandler when a client disconnects
-    public synchronized void removeClient(int clientId) {
+    // No lock: clients.remove picks the one caller that tears the client down.
+    public void removeClient(int clientId) {
         ClientHandler handler = clients.remove(clientId);
         if (handler == null) {
             return; // already removed
         }
 
         System.out.println("Client " + clientId + " disconnected");
+        if (udp != null) udp.forget(handler);
+        Room room = handler.room();
 
         if (handler.getRole() == ClientRole.PLAYER) {
             // quit this player
             players.remove(clientId);
+            playerStates.remove(clientId);
+            if (moves != null) moves.forget(handler.getPlayer());
 
-            
-            if (Objects.equals(playerSlot1, clientId)) {
-                playerSlot1 = null;
-                System.out.println("Freed player slot 1");
-            }
-            if (Objects.equals(playerSlot2, clientId)) {
-                playerSlot2 = null;
-                System.out.println("Freed player slot 2");
+            int slot = room.releasePlayerSlot(clientId);
+            if (slot != 0) {
+                System.out.println("Freed player slot " + slot + " of room " + room.gameId());
             }
 
-            
-            var specs = spectatorsByPlayer.remove(clientId);
+            BroadcastGroup specs = room.spectatorsByPlayer.remove(clientId);
+            SpectatorFeed feed = handler.spectatorFeed();
+            if (feed != null) feed.close();
             if (specs != null) {
-                for (ClientHandler s : specs) {
+                for (ClientHandler s : specs.members()) {
                     System.out.println("Detaching spectator " + s.getClientId()
                             + " from player " + clientId);
+                    if (s.getRole() == ClientRole.RELAY) {
+                        // a relay holds one feed per connection: closing it ends that group downstream
+                        s.session().abort("observed player " + clientId + " left");
+                        continue;
+                    }
                     try {
                         s.setObservedPlayerId(null);
                     } catch (Exception ignore) {}
                 }
             }
 
-        } else { // SPECTATOR
+        } else if (relay != null) { // SPECTATOR of a relay
+            relay.detach(handler);
+        } else if (room != null) { // SPECTATOR or RELAY
             
-            for (var entry : spectatorsByPlayer.entrySet()) {
-                List<ClientHandler> list = entry.getValue();
-                if (list != null) {
-                    list.remove(handler);
-                }
+            for (BroadcastGroup group : room.spectatorsByPlayer.values()) {
+                group.leave(handler);
             }
         }
+        closeRoomIfEmpty(room);
+    }
+
+    /** @return ids of the open rooms, ascending (the GUI's room list). */
+    public List<Integer> getGameIds() {
+        return new ArrayList<>(rooms.keySet());
     }
 
-    public Integer getPlayerClientIdForSlot(int slotIndex) {
-        return switch (slotIndex) {
-            case 1 -> playerSlot1;
-            case 2 -> playerSlot2;
-            default -> null;
-        };
+    /** @return player in a slot of room {@code gameId}, or {@code null}. */
+    public Integer getPlayerClientIdForSlot(int gameId, int slotIndex) {
+        Room room = rooms.get(gameId);
+        return (room == null) ? null : room.playerInSlot(slotIndex);
     }
 
 
     public void sendToPlayerGroup(int playerId, Consumer<ClientHandler> action) {
     //main player
         ClientHandler player = clients.get(playerId);
-        if (player != null) {
-            action.accept(player);
-        }
+        if (player == null) return;
+        action.accept(player);
 
-        //spectators
-        List<ClientHandler> specs = spectatorsByPlayer.get(playerId);
+        //spectators (no lock: the loop walks the group's membership snapshot)
+        Room room = player.room();
+        BroadcastGroup specs = (room == null) ? null : room.spectatorsByPlayer.get(playerId);
         if (specs != null) {
-            for (ClientHandler s : specs) {
+            for (ClientHandler s : specs.members()) {
                 action.accept(s);
             }
         }
@@ -622,55 +752,59 @@ public class GameServer {
 
     // Broadcast player state to all spectators observing this player
     //param playerClientId The client ID of the player whose state is being broadcasted
+    //param tlvBuf/tlvOff/tlvLen entities TLV as received, read in place from the inbound frame
     //returns void
-    public void broadcastPlayerStateToSpectators(int playerClientId, short x, short y, short vx, short vy, byte flags, byte[] entitiesTlv) {
-        List<ClientHandler> specs = spectatorsByPlayer.get(playerClientId);
+    public void broadcastPlayerStateToSpectators(int playerClientId, short x, short y, short vx, short vy, byte flags,
+                                                 byte[] tlvBuf, int tlvOff, int tlvLen) {
+        ClientHandler p = players.get(playerClientId);
+        if (p == null || p.spectatorFeed() == null || p.room() == null) return;
+        BroadcastGroup specs = p.room().spectatorsByPlayer.get(playerClientId);
         if (specs == null || specs.isEmpty()) return;
 
-        for (ClientHandler spectator : specs) {
-            spectator.sendSpectatorState(x, y, vx, vy, flags, entitiesTlv);
-        }
+        // Keyframe and delta are each encoded at most once and shared by the group.
+        p.spectatorFeed().publish(specs, x, y, vx, vy, flags, tlvBuf, tlvOff, tlvLen);
     }
 
     // Helper methods to spawn/remove entities on vines/platforms for a specific client
     // These methods calculate the actual (x,y) coordinates based on vine/platform index and position
-    // then send the appropriate spawn/remove message to the specified client
+    // record the entity in that client's room, then send the appropriate
+    // spawn/remove message, so a client joining in between never misses it
 
 
     public void spawnCrocOnVineForClient(int clientId, int vineIndex, byte variant, int pos){
         Rect v = vines.get(vineIndex);
         int x = centerXOn(v, CROC_W);
         int y = quantizeCenterY(v, pos);
+        Room room = roomOf(clientId);
+        if (room != null) room.addCrocodile(variant, x, y);
         sendToPlayerGroup(clientId, h -> h.sendSpawnCroc(variant, x, y));
-        crocodiles.add(new Rect(x, y, 8, 8));
-        crocodileStates.add(new EntityState(variant, x, y));
 
     }
     public void spawnFruitOnVineForClient(int clientId, int vineIndex, byte variant, int pos){
         Rect v = vines.get(vineIndex);
         int x = centerXOn(v, FRUIT_W);
         int y = quantizeCenterY(v, pos);
+        Room room = roomOf(clientId);
+        if (room != null) room.addFruit(variant, x, y);
         sendToPlayerGroup(clientId, h -> h.sendSpawnFruit(variant, x, y));
-        fruits.add(new Rect(x, y, 8, 8));
-        fruitStates.add(new EntityState(variant, x, y));
 
     }
     public void spawnCrocOnPlatformForClient(int clientId, int platIndex, byte variant, int pos){
         Rect p = platforms.get(platIndex);
         int x = quantizeCenterX(p, pos);
         int y = p.y() - 8; 
+        Room room = roomOf(clientId);
+        if (room != null) room.addCrocodile(variant, x, y);
         sendToPlayerGroup(clientId, h -> h.sendSpawnCroc(variant, x, y));
-        crocodiles.add(new Rect(x, y, 8, 8));
-        crocodileStates.add(new EntityState(variant, x, y));
 
     }
     public void spawnFruitOnPlatformForClient(int clientId, int platIndex, byte variant, int pos){
         Rect p = platforms.get(platIndex);
         int x = quantizeCenterX(p, pos);
         int y = p.y() - 8;
+        Room room = roomOf(clientId);
+        if (room != null) room.addFruit(variant, x, y);
         sendToPlayerGroup(clientId, h -> h.sendSpawnFruit(variant, x, y));
-        fruits.add(new Rect(x, y, 8, 8));
-        fruitStates.add(new EntityState(variant, x, y));
     }
     public void removeFruitOnVineForClient(int clientId, int vineIndex, int pos){
         Rect v = vines.get(vineIndex);
@@ -678,8 +812,7 @@ public class GameServer {
         int y = quantizeCenterY(v, pos);
 
         sendToPlayerGroup(clientId, h -> h.sendRemoveFruit(x, y));
-        fruits.removeIf(r -> r.x() == x && r.y() == y);
-        fruitStates.removeIf(f -> f.x == x && f.y == y);
+        removeFruit(clientId, x, y);
     }
     public void removeFruitOnPlatformForClient(int clientId, int platIndex, int pos){
         Rect p = platforms.get(platIndex);
@@ -688,8 +821,7 @@ public class GameServer {
 
         sendToPlayerGroup(clientId, h -> h.sendRemoveFruit(x, y));
 
-        fruits.removeIf(r -> r.x() == x && r.y() == y);
-        fruitStates.removeIf(f -> f.x == x && f.y == y);
+        removeFruit(clientId, x, y);
     }
 
 
@@ -711,8 +843,7 @@ public class GameServer {
 
 
     public static void main(String[] args) throws Exception {
-        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 9090;
-        new GameServer(port).start();
+        new GameServer(ServerConfig.fromArgs(args)).start();
     }
 
     
@@ -0,0 +1,184 @@
+package serverJava;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool that performs the connection handshake away from the acceptor:
+ * read the role byte, check capacity, send CLIENT_ACK and build the
+ * {@link ClientHandler} (which sends INIT_STATIC).
+ * <p>
+ * Every connection gets a deadline. A client that stays silent or stops reading
+ * is closed when it expires, so it only ties up one handshake worker for at
+ * most {@link ServerConfig#handshakeTimeoutMs}. When every worker is busy and
+ * the queue is full, new connections are closed right away instead of
+ * stalling the accept loop.
+ */
+public final class HandshakeStage {
+
+    private final GameServer server;
+    private final int timeoutMs;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor deadlines;
+
+    /**
+     * @param server owning game server
+     * @param config handshake pool size, queue length and deadline
+     */
+    public HandshakeStage(GameServer server, ServerConfig config) {
+        this.server    = server;
+        this.timeoutMs = config.handshakeTimeoutMs;
+
+        ThreadFactory factory = config.virtualThreads
+                ? Thread.ofVirtual().name("handshake-", 0).factory()
+                : Thread.ofPlatform().name("handshake-", 0).daemon(true).factory();
+        this.workers = new ThreadPoolExecutor(
+                config.handshakeThreads, config.handshakeThreads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.handshakeQueue),
+                factory);
+
+        this.deadlines = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("handshake-deadlines").daemon(true).factory());
+        this.deadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Queues a freshly accepted socket for handshaking. Never blocks.
+     *
+     * @param socket accepted connection; closed here if the stage is saturated
+     */
+    public void submit(Socket socket) {
+        try {
+            workers.execute(() -> handshake(socket));
+        } catch (RejectedExecutionException e) {
+            System.out.println("Handshake queue full, dropping " + socket.getRemoteSocketAddress());
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Closes {@code link} after the handshake timeout unless the returned
+     * future is cancelled first.
+     *
+     * @param link connection to close on expiry
+     * @param who  label for the log line
+     * @return handle to cancel once the handshake completes
+     */
+    public Future<?> deadline(Closeable link, String who) {
+        return deadlines.schedule(() -> {
+            System.out.println("Handshake timed out for " + who);
+            closeQuietly(link);
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void handshake(Socket socket) {
+        String who = String.valueOf(socket.getRemoteSocketAddress());
+        Future<?> deadline = deadline(socket, who);
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMs);
+
+            int clientId = server.nextClientId();
+
+            // Read requested role byte
+            int requestedRoleRaw;
+            try {
+                requestedRoleRaw = socket.getInputStream().read();
+            } catch (SocketTimeoutException e) {
+                System.out.println("Client " + who + " sent no role within " + timeoutMs + " ms");
+                closeQuietly(socket);
+                return;
+            } catch (IOException e) {
+                System.out.println("Failed to read requested role from client: " + e.getMessage());
+                closeQuietly(socket);
+                return;
+            }
+            if (requestedRoleRaw == -1) {
+                System.out.println("Client disconnected before sending requested role");
+                closeQuietly(socket);
+                return;
+            }
+
+            if (requestedRoleRaw < 1 || requestedRoleRaw > 3) {
+                System.out.println("Client " + clientId + " sent invalid requested role: " + requestedRoleRaw);
+                closeQuietly(socket);
+                return;
+            }
+
+            // Check capacity before creating ClientHandler
+            GameServer.Admission admission = server.admitClient(clientId, requestedRoleRaw);
+
+            // Send CLIENT_ACK before creating ClientHandler
+            // This way capacity check connections get their answer without a handler
+            try {
+                OutputStream out = socket.getOutputStream();
+                out.write(server.encodeClientAck(clientId, admission));
+                out.flush();
+
+                if (admission == null) {
+                    // Rejected - close socket
+                    closeQuietly(socket);
+                    return;
+                }
+
+            } catch (IOException e) {
+                System.out.println("Failed to send CLIENT_ACK: " + e.getMessage());
+                closeQuietly(socket);
+
+                // If we reserved a player slot, free it
+                server.releaseReservation(clientId, admission);
+                return;
+            }
+
+            // Now create the ClientHandler (sends INIT_STATIC, still under the deadline)
+            ClientHandler handler;
+            try {
+                handler = new ClientHandler(clientId, socket, server, admission.role(), admission.room());
+            } catch (IOException e) {
+                System.out.println("Failed to create ClientHandler: " + e.getMessage());
+                closeQuietly(socket);
+
+                // Free reserved slot
+                server.releaseReservation(clientId, admission);
+                return;
+            }
+
+            // Handshake done: the session itself may block on reads indefinitely.
+            if (!deadline.cancel(false)) {
+                server.releaseReservation(handler, admission);
+                return;
+            }
+            try {
+                socket.setSoTimeout(0);
+            } catch (IOException e) {
+                closeQuietly(socket);
+                server.releaseReservation(handler, admission);
+                return;
+            }
+
+            server.registerClient(handler);
+            server.startSession(handler);
+            System.out.println("Client connected, id=" + clientId + " from " + who);
+        } catch (IOException e) {
+            System.out.println("Handshake failed for " + who + ": " + e.getMessage());
+            closeQuietly(socket);
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try { c.close(); } catch (IOException ignore) {}
+    }
+}
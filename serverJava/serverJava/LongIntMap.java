@@ -0,0 +1,115 @@
+package serverJava;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from {@code long} keys to non-negative {@code int}
+ * values, with no boxing and no per-entry objects.
+ * <p>
+ * Linear probing; removal shifts the following entries back instead of
+ * leaving tombstones, so lookups stay short however many removals happen.
+ * Not thread-safe.
+ */
+final class LongIntMap {
+
+    /** Returned by {@link #get} and {@link #remove} for an absent key. */
+    static final int MISSING = -1;
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new long[cap];
+        values = new int[cap];
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    /** Packs an (x, y) coordinate into one key. */
+    static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** @return the value of {@code key}, or {@link #MISSING}. */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != EMPTY_KEY; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+        }
+        return MISSING;
+    }
+
+    /** @return the previous value of {@code key}, or {@link #MISSING}. */
+    int put(long key, int value) {
+        if (key == EMPTY_KEY) throw new IllegalArgumentException("reserved key");
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; keys[i] != EMPTY_KEY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) grow();
+        return MISSING;
+    }
+
+    /** @return the removed value, or {@link #MISSING}. */
+    int remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY_KEY) return MISSING;
+            i = (i + 1) & mask;
+        }
+        int old = values[i];
+        // Shift later entries of the probe run back into the gap.
+        for (int j = (i + 1) & mask; keys[j] != EMPTY_KEY; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY_KEY;
+        size--;
+        return old;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY_KEY);
+        int mask = keys.length - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            if (oldKeys[k] == EMPTY_KEY) continue;
+            int i = slot(oldKeys[k], mask);
+            while (keys[i] != EMPTY_KEY) i = (i + 1) & mask;
+            keys[i] = oldKeys[k];
+            values[i] = oldValues[k];
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
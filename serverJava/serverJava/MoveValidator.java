@@ -0,0 +1,261 @@
+package serverJava;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Classes.Player.player;
+import Utils.Rect;
+
+/**
+ * Optional authoritative check of PLAYER_PROPOSED against the level
+ * ({@code --validate-moves}).
+ * <p>
+ * Each proposal is compared with the player's last accepted state and with
+ * the platforms and vines sent in INIT_STATIC:
+ * <ul>
+ *   <li>velocity within the client's movement speeds;</li>
+ *   <li>position inside the world and no further from the last accepted one
+ *       than those speeds allow over the elapsed ticks;</li>
+ *   <li>a grounded player stands on a platform top or the floor;</li>
+ *   <li>a player on a vine touches a vine.</li>
+ * </ul>
+ * The level is indexed once in a uniform grid of {@value #CELL}-pixel cells,
+ * each listing the rects that overlap it, so the support checks look at
+ * one or two cells and a handful of rects: constant time per frame however
+ * large the level is. The grid is read-only and shared by every room.
+ * <p>
+ * A proposal that fails is clamped to the nearest plausible state, which
+ * becomes the player's accepted state and what spectators see. When that
+ * moves y, the player is sent a {@code TLV_PLAYER_CORR} (a snap onto a
+ * platform or a vertical nudge); the TLV cannot express x, speed or vine
+ * contact, so those are fixed on the server side only and counted.
+ * The baseline is dropped on respawn and restart, when the client
+ * legitimately teleports.
+ * <p>
+ * The baseline is the player's accepted motion plus the client tick it was
+ * accepted at. The tick lives here, one entry per player, and its lock
+ * makes each check and the publication of its result one step, so a
+ * proposal arriving by TCP and one by UDP, or a reset, never interleave.
+ * It is a {@link ReentrantLock}, not a monitor: the 60 Hz path may run on
+ * virtual threads, which a monitor would pin to their carrier.
+ */
+public final class MoveValidator {
+
+    /** Grid cell size in pixels. */
+    static final int CELL = 16;
+
+    // Client physics (clientC UI/Game/Logic/constants.h and game.c).
+    static final int WORLD_W = 256, WORLD_H = 240;
+    static final int PLAYER_SIZE = 16;
+    static final int MAX_VX = 1;           // MOVE_SPEED_X
+    static final int MAX_VY = 2;           // VINE_CLIMB_SPEED_FAST
+    static final int STEP_SLACK = 2;       // collision push-out per frame
+    static final int VINE_SNAP_X = PLAYER_SIZE; // side swaps and vine-to-vine hops jump in x
+    static final int SUPPORT_TOLERANCE = 2;
+    static final int MAX_GAP_TICKS = 60;   // longer silences restart the baseline
+
+    /** Platform id of the world floor, and of ungrounded corrections, in TLV_PLAYER_CORR. */
+    static final int FLOOR = -1;
+
+    // Flags byte of PLAYER_PROPOSED.
+    static final int FLAG_GROUNDED = 0x01, FLAG_DEAD = 0x02, FLAG_ON_VINE = 0x04;
+
+    private static final int[] NONE = new int[0];
+
+    /** Move baseline of one player; {@code tick} is guarded by {@code lock}. */
+    private static final class Baseline {
+        final ReentrantLock lock = new ReentrantLock();
+        long tick = -1; // client tick of the last accepted proposal, -1: take the next one as is
+    }
+
+    private final ConcurrentHashMap<player, Baseline> baselines = new ConcurrentHashMap<>();
+
+    private final List<Rect> platforms, vines;
+    private final int cols, rows;
+    private final int[][] platformsIn, vinesIn; // cell -> indices of overlapping rects
+
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder speedFixes = new LongAdder(), stepFixes = new LongAdder(), boundsFixes = new LongAdder();
+    private final LongAdder groundFixes = new LongAdder(), vineFixes = new LongAdder();
+
+    MoveValidator(List<Rect> platforms, List<Rect> vines) {
+        this.platforms = List.copyOf(platforms);
+        this.vines = List.copyOf(vines);
+        this.cols = (WORLD_W + CELL - 1) / CELL;
+        this.rows = (WORLD_H + CELL - 1) / CELL;
+        this.platformsIn = index(this.platforms);
+        this.vinesIn = index(this.vines);
+    }
+
+    // Each rect, grown by the support tolerance, is listed in every cell it touches.
+    private int[][] index(List<Rect> rects) {
+        List<List<Integer>> cells = new ArrayList<>(cols * rows);
+        for (int i = 0; i < cols * rows; i++) cells.add(new ArrayList<>());
+        for (int i = 0; i < rects.size(); i++) {
+            Rect r = rects.get(i);
+            int c0 = col(r.x() - SUPPORT_TOLERANCE), c1 = col(r.right() + SUPPORT_TOLERANCE);
+            int r0 = row(r.y() - SUPPORT_TOLERANCE), r1 = row(r.bottom() + SUPPORT_TOLERANCE);
+            for (int cy = r0; cy <= r1; cy++)
+                for (int cx = c0; cx <= c1; cx++) cells.get(cy * cols + cx).add(i);
+        }
+        int[][] out = new int[cols * rows][];
+        for (int i = 0; i < out.length; i++) {
+            List<Integer> l = cells.get(i);
+            out[i] = l.isEmpty() ? NONE : l.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return out;
+    }
+
+    private int col(int x) { return Math.max(0, Math.min(cols - 1, Math.floorDiv(x, CELL))); }
+    private int row(int y) { return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, CELL))); }
+
+    /** Forgets the player's accepted state; the next proposal is taken as is (respawn, restart). */
+    public void reset(player p) {
+        Baseline b = baselines.get(p);
+        if (b == null) return;
+        b.lock.lock();
+        try {
+            b.tick = -1;
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    /** Drops the player's baseline for good (the client left). */
+    void forget(player p) {
+        baselines.remove(p);
+    }
+
+    /**
+     * Checks one proposal and stores the accepted state (x, y, vx, vy) in {@code p}.
+     *
+     * @param tick  client tick of the proposal
+     * @param flags PLAYER_PROPOSED flags byte
+     * @return TLV_PLAYER_CORR value to send back (u8 grounded, i16 platformId,
+     *         i16 yCorr, i16 vyCorr), or {@code null} if the proposal was accepted as is.
+     *         platformId is the platform's index in INIT_STATIC, or {@link #FLOOR}
+     *         when the player lands on the floor or is not grounded
+     */
+    public byte[] validate(player p, long tick, int x, int y, int vx, int vy, int flags) {
+        checked.increment();
+        Baseline b = baselines.computeIfAbsent(p, k -> new Baseline());
+        b.lock.lock();
+        try {
+            long dt = tick - b.tick;
+            if (b.tick < 0 || dt > MAX_GAP_TICKS || (flags & FLAG_DEAD) != 0) {
+                accept(b, p, tick, x, y, vx, vy);
+                return null;
+            }
+            if (dt < 1) dt = 1; // repeated or reordered tick: judge as one frame
+
+            int ax = x, ay = y, avx = vx, avy = vy;
+
+            if (Math.abs(vx) > MAX_VX || Math.abs(vy) > MAX_VY) {
+                avx = clamp(vx, -MAX_VX, MAX_VX);
+                avy = clamp(vy, -MAX_VY, MAX_VY);
+                speedFixes.increment();
+            }
+            int reachX = (int) Math.min(WORLD_W, MAX_VX * dt + STEP_SLACK + VINE_SNAP_X);
+            int reachY = (int) Math.min(WORLD_H, MAX_VY * dt + STEP_SLACK);
+            long last = p.motion();
+            int lx = player.x(last), ly = player.y(last);
+            if (Math.abs(x - lx) > reachX || Math.abs(y - ly) > reachY) {
+                ax = clamp(x, lx - reachX, lx + reachX);
+                ay = clamp(y, ly - reachY, ly + reachY);
+                stepFixes.increment();
+            }
+            int maxX = WORLD_W - PLAYER_SIZE, maxY = WORLD_H - PLAYER_SIZE;
+            if (ax < 0 || ax > maxX || ay < 0 || ay > maxY) {
+                ax = clamp(ax, 0, maxX);
+                ay = clamp(ay, 0, maxY);
+                boundsFixes.increment();
+            }
+
+            boolean grounded = (flags & FLAG_GROUNDED) != 0;
+            int plat = FLOOR; // a grounded player at maxY stands on the floor
+            if (grounded && ay != maxY) {
+                plat = platformUnder(ax, ay + PLAYER_SIZE);
+                if (plat == FLOOR) {
+                    // Not standing on anything: let it fall from the accepted height.
+                    groundFixes.increment();
+                    accept(b, p, tick, ax, ay, avx, avy);
+                    return correction(false, FLOOR, 0, ay - y);
+                }
+                int top = platforms.get(plat).y() - PLAYER_SIZE;
+                if (top != ay) {
+                    groundFixes.increment();
+                    ay = top;
+                    avy = 0;
+                }
+            } else if ((flags & FLAG_ON_VINE) != 0 && !touchesVine(ax, ay)) {
+                vineFixes.increment();
+            }
+
+            accept(b, p, tick, ax, ay, avx, avy);
+            // The correction only moves y; x and speed fixes stay server-side.
+            if (ay == y) return null;
+            return grounded ? correction(true, plat, ay, 0) : correction(false, FLOOR, 0, ay - y);
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    private static void accept(Baseline b, player p, long tick, int x, int y, int vx, int vy) {
+        p.setMotion(x, y, vx, vy);
+        b.tick = tick;
+    }
+
+    // Platform whose top is within tolerance of feetY and that overlaps [x, x + PLAYER_SIZE); FLOOR if none.
+    private int platformUnder(int x, int feetY) {
+        int r = row(feetY);
+        int best = FLOOR, bestGap = Integer.MAX_VALUE;
+        for (int c = col(x); c <= col(x + PLAYER_SIZE - 1); c++) {
+            for (int i : platformsIn[r * cols + c]) {
+                Rect pl = platforms.get(i);
+                int gap = Math.abs(pl.y() - feetY);
+                if (gap <= SUPPORT_TOLERANCE && gap < bestGap
+                        && x < pl.right() && x + PLAYER_SIZE > pl.left()) {
+                    best = i;
+                    bestGap = gap;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean touchesVine(int x, int y) {
+        for (int r = row(y); r <= row(y + PLAYER_SIZE - 1); r++) {
+            for (int c = col(x); c <= col(x + PLAYER_SIZE - 1); c++) {
+                for (int i : vinesIn[r * cols + c]) {
+                    Rect v = vines.get(i);
+                    if (x < v.right() + SUPPORT_TOLERANCE && x + PLAYER_SIZE > v.left() - SUPPORT_TOLERANCE
+                            && y < v.bottom() + SUPPORT_TOLERANCE && y + PLAYER_SIZE > v.top() - SUPPORT_TOLERANCE) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] correction(boolean grounded, int platformId, int yCorr, int vyCorr) {
+        return new byte[]{
+                (byte) (grounded ? 1 : 0),
+                (byte) (platformId >> 8), (byte) platformId,
+                (byte) (yCorr >> 8), (byte) yCorr,
+                (byte) (vyCorr >> 8), (byte) vyCorr };
+    }
+
+    private static int clamp(int v, int lo, int hi) {
+        return Math.max(lo, Math.min(hi, v));
+    }
+
+    void printStats() {
+        System.out.printf("  moves: checked=%d corrected speed=%d step=%d bounds=%d ground=%d vine=%d%n",
+                checked.sum(), speedFixes.sum(), stepFixes.sum(), boundsFixes.sum(),
+                groundFixes.sum(), vineFixes.sum());
+    }
+}
@@ -0,0 +1,229 @@
+package serverJava;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import MessageManagement.Proto;
+import MessageManagement.Session;
+
+/**
+ * State of one client channel serviced by a {@link NioTransport.IoLoop}.
+ * <p>
+ * Inbound bytes are accumulated until the role byte (handshake) or a full
+ * 16-byte header plus payload is available, then dispatched to the
+ * {@link ClientHandler}. As the {@link Session.Writer} of its session, the
+ * owning selector thread drains queued frames into one staging buffer and
+ * writes the whole batch with a single channel write.
+ */
+public final class NioConnection implements Closeable, Session.Writer {
+
+    /** Largest payload accepted from a client, matching {@code Session.maxPayload}. */
+    private static final int MAX_PAYLOAD = 64 * 1024;
+    /** Initial read buffer; grows on demand up to one maximum-size frame. */
+    private static final int INITIAL_READ = 2 * 1024;
+    /** Initial write staging buffer; grows if a single frame is larger. */
+    private static final int INITIAL_WRITE = 8 * 1024;
+
+    private final GameServer server;
+    private final NioTransport.IoLoop loop;
+    private final SocketChannel channel;
+    private final String remote;
+    private SelectionKey key;
+    private Future<?> handshakeDeadline;
+
+    private ByteBuffer readBuf  = ByteBuffer.allocate(INITIAL_READ);
+    private ByteBuffer writeBuf = ByteBuffer.allocate(INITIAL_WRITE);
+    /** Frame taken from the session that did not fit in writeBuf yet. */
+    private byte[] carry;
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean closeWhenFlushed = false;
+    private volatile String abortReason = null;
+
+    /** Set once the role byte has been answered, by the loop thread. */
+    private volatile ClientHandler handler;
+
+    NioConnection(GameServer server, NioTransport.IoLoop loop, SocketChannel channel) throws IOException {
+        this.server  = server;
+        this.loop    = loop;
+        this.channel = channel;
+        this.remote  = String.valueOf(channel.getRemoteAddress());
+    }
+
+    void attach(SelectionKey key, Future<?> handshakeDeadline) {
+        this.key = key;
+        this.handshakeDeadline = handshakeDeadline;
+    }
+
+    /** @return remote address text for logs and the admin console. */
+    public String remote() {
+        return remote;
+    }
+
+    // ---- selector thread only ----
+
+    void onReadable() throws IOException {
+        int n = channel.read(readBuf);
+        if (n < 0) {
+            close("disconnect: end of stream");
+            return;
+        }
+        readBuf.flip();
+
+        int needed = 0;
+        if (handler == null && !closeWhenFlushed && readBuf.hasRemaining()) {
+            handshake(readBuf.get() & 0xFF);
+        }
+        while (handler != null && !closed.get() && readBuf.remaining() >= Proto.HEADER_LEN) {
+            int start = readBuf.position();
+            int len = readBuf.getInt(start + 12);
+            if (len < 0 || len > MAX_PAYLOAD) {
+                throw new IOException("invalid payload length " + len);
+            }
+            int frameLen = Proto.HEADER_LEN + len;
+            if (readBuf.remaining() < frameLen) {
+                needed = frameLen;
+                break;
+            }
+            handler.onFrame(readBuf.array(), start);
+            readBuf.position(start + frameLen);
+        }
+        if (closeWhenFlushed) {
+            readBuf.position(readBuf.limit()); // rejected client: ignore anything else
+        }
+        readBuf.compact();
+
+        if (needed > readBuf.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            readBuf.flip();
+            bigger.put(readBuf);
+            readBuf = bigger;
+        }
+    }
+
+    private void handshake(int requestedRoleRaw) {
+        // The role byte arrived; ACK and INIT_STATIC are queued without blocking anyone.
+        handshakeDeadline.cancel(false);
+
+        if (requestedRoleRaw < 1 || requestedRoleRaw > 3) {
+            System.out.println("Client from " + remote + " sent invalid requested role: " + requestedRoleRaw);
+            close(null);
+            return;
+        }
+
+        int clientId = server.nextClientId();
+        GameServer.Admission admission = server.admitClient(clientId, requestedRoleRaw);
+        writeBuf.put(server.encodeClientAck(clientId, admission));
+        wake();
+
+        if (admission == null) {
+            closeWhenFlushed = true;
+            return;
+        }
+
+        handler = new ClientHandler(clientId, this, server, admission.role(), admission.room());
+        server.registerClient(handler);
+        System.out.println("Client connected, id=" + clientId + " from " + remote);
+    }
+
+    void flushOutbound() throws IOException {
+        writeRequested.set(false);
+        if (closed.get()) return;
+        if (abortReason != null) {
+            close(abortReason);
+            return;
+        }
+
+        ClientHandler h = handler;
+        Session session = (h != null) ? h.session() : null;
+        while (true) {
+            if (session != null) stage(session);
+            writeBuf.flip();
+            if (!writeBuf.hasRemaining()) {
+                writeBuf.clear();
+                break;
+            }
+            if (channel.write(writeBuf) > 0 && session != null) session.markProgress();
+            boolean partial = writeBuf.hasRemaining();
+            writeBuf.compact();
+            if (partial) {
+                // Socket buffer full: resume when the selector reports writable.
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+        if (closeWhenFlushed) {
+            close(null);
+        }
+    }
+
+    /** Moves as many whole queued frames as fit into the staging buffer. */
+    private void stage(Session session) {
+        byte[] frame = carry;
+        carry = null;
+        if (frame == null) frame = session.poll();
+        while (frame != null) {
+            if (frame.length > writeBuf.remaining()) {
+                if (writeBuf.position() > 0) {
+                    carry = frame; // write what we have first
+                    return;
+                }
+                writeBuf = ByteBuffer.allocate(frame.length);
+            }
+            int start = writeBuf.position();
+            writeBuf.put(frame);
+            writeBuf.putInt(start + Session.DEST_ID_OFFSET, session.clientId());
+            writeBuf.putInt(start + Session.GAME_ID_OFFSET, session.gameId());
+            frame = session.poll();
+        }
+    }
+
+    // ---- any thread ----
+
+    @Override
+    public void wake() {
+        if (!closed.get() && writeRequested.compareAndSet(false, true)) {
+            loop.requestWrite(this);
+        }
+    }
+
+    @Override
+    public void abort(String reason) {
+        // Close on the selector thread: the caller may be in the middle of a broadcast.
+        abortReason = reason;
+        if (writeRequested.compareAndSet(false, true)) {
+            loop.requestWrite(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        close(null);
+    }
+
+    /**
+     * Closes the channel once and unregisters the client from the server.
+     *
+     * @param reason text logged for the client, or {@code null} for a silent close
+     */
+    void close(String reason) {
+        if (!closed.compareAndSet(false, true)) return;
+
+        if (reason != null) {
+            if (handler != null) handler.log(reason);
+            else System.out.println("[" + remote + "] " + reason);
+        }
+        try { channel.close(); } catch (IOException ignore) {}
+
+        if (handler != null) {
+            server.removeClient(handler.getClientId());
+        }
+    }
+}
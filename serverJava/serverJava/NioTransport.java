@@ -0,0 +1,207 @@
+package serverJava;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking transport: one acceptor plus a fixed pool of selector threads.
+ * <p>
+ * Every accepted {@link SocketChannel} is pinned to one {@link IoLoop} for its
+ * whole life. The loop reads bytes, cuts them into {@code Proto} frames and
+ * hands each frame to the same {@link ClientHandler} game logic used by the
+ * blocking transport, so the thread count stays flat no matter how many
+ * clients connect.
+ */
+public final class NioTransport {
+
+    private final GameServer server;
+    private final int port;
+    private final IoLoop[] loops;
+    private int nextLoop = 0;
+
+    /**
+     * @param server    game server that owns handshake and game state
+     * @param port      TCP port to bind
+     * @param ioThreads number of selector threads (at least 1)
+     * @throws IOException if a selector cannot be opened
+     */
+    public NioTransport(GameServer server, int port, int ioThreads) throws IOException {
+        this.server = server;
+        this.port   = port;
+        this.loops  = new IoLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(i);
+        }
+    }
+
+    /**
+     * Starts the selector threads and runs the accept loop on the calling thread.
+     *
+     * @throws IOException if the listening socket cannot be bound
+     */
+    public void run() throws IOException {
+        for (IoLoop loop : loops) {
+            Thread t = new Thread(loop, "nio-io-" + loop.index);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        try (ServerSocketChannel acceptor = ServerSocketChannel.open()) {
+            acceptor.bind(new InetSocketAddress(port));
+            System.out.println("Server listening on port " + port
+                    + " (nio, " + loops.length + " I/O threads)");
+
+            while (true) {
+                SocketChannel ch = acceptor.accept();
+                try {
+                    ch.configureBlocking(false);
+                    ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException e) {
+                    System.out.println("Failed to configure accepted channel: " + e.getMessage());
+                    try { ch.close(); } catch (IOException ignore) {}
+                    continue;
+                }
+                IoLoop loop = nextLiveLoop();
+                if (loop == null) {
+                    System.out.println("No live I/O thread left; refusing connection");
+                    try { ch.close(); } catch (IOException ignore) {}
+                    continue;
+                }
+                loop.register(ch);
+            }
+        }
+    }
+
+    // Round robin over loops that have not shut down; null if none is left.
+    private IoLoop nextLiveLoop() {
+        for (int tries = 0; tries < loops.length; tries++) {
+            IoLoop loop = loops[nextLoop];
+            nextLoop = (nextLoop + 1) % loops.length;
+            if (!loop.dead) return loop;
+        }
+        return null;
+    }
+
+    /**
+     * One selector thread. Other threads never touch the selector directly:
+     * they queue channels to register or connections with pending output and
+     * wake the selector up.
+     * <p>
+     * A failure of one connection (including a {@code CancelledKeyException}
+     * after another thread closed it) closes that connection only. A failure
+     * of the selector itself ends the loop: every connection on it is closed,
+     * so none is left stranded, and the acceptor stops assigning it channels.
+     */
+    final class IoLoop implements Runnable {
+        final int index;
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> pendingWrites   = new ConcurrentLinkedQueue<>();
+        volatile boolean dead = false;
+
+        IoLoop(int index) throws IOException {
+            this.index    = index;
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel ch) {
+            pendingChannels.add(ch);
+            if (dead) {
+                // Lost the race with shutDown: nobody will register it.
+                SocketChannel c;
+                while ((c = pendingChannels.poll()) != null) {
+                    try { c.close(); } catch (IOException ignore) {}
+                }
+                return;
+            }
+            selector.wakeup();
+        }
+
+        /** Called from any thread when {@code conn} has queued output. */
+        void requestWrite(NioConnection conn) {
+            pendingWrites.add(conn);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    selector.select(this::onKey);
+                    registerPending();
+                    flushPending();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Selector " + index + " failed, closing its connections: " + e);
+                shutDown();
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel ch;
+            while ((ch = pendingChannels.poll()) != null) {
+                try {
+                    NioConnection conn = new NioConnection(server, this, ch);
+                    conn.attach(ch.register(selector, SelectionKey.OP_READ, conn),
+                                server.handshakes().deadline(conn, conn.remote()));
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Failed to register channel: " + e);
+                    try { ch.close(); } catch (IOException ignore) {}
+                }
+            }
+        }
+
+        private void flushPending() {
+            NioConnection conn;
+            while ((conn = pendingWrites.poll()) != null) {
+                try {
+                    conn.flushOutbound();
+                } catch (IOException | RuntimeException e) {
+                    closeQuietly(conn, "write failed: " + e);
+                }
+            }
+        }
+
+        private void onKey(SelectionKey key) {
+            NioConnection conn = (NioConnection) key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) conn.onReadable();
+                if (key.isValid() && key.isWritable()) conn.flushOutbound();
+            } catch (Exception e) {
+                closeQuietly(conn, "disconnect: " + e.getMessage());
+            }
+        }
+
+        // Teardown (removeClient) must not take the loop down with it.
+        private void closeQuietly(NioConnection conn, String reason) {
+            try {
+                conn.close(reason);
+            } catch (RuntimeException e) {
+                System.out.println("Selector " + index + ": error closing connection: " + e);
+            }
+        }
+
+        private void shutDown() {
+            dead = true;
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioConnection conn) closeQuietly(conn, "I/O thread stopped");
+                }
+            } catch (RuntimeException ignore) {
+                // selector already closed: its channels went with it
+            }
+            SocketChannel ch;
+            while ((ch = pendingChannels.poll()) != null) {
+                try { ch.close(); } catch (IOException ignore) {}
+            }
+            try { selector.close(); } catch (IOException ignore) {}
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package serverJava;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * One independent game hosted by the server, identified by the
+ * {@code gameId} carried in every frame header.
+ * <p>
+ * A room owns its two player slots, the {@link BroadcastGroup} of each player and
+ * the dynamic entities (crocodiles, fruits) of its round. The level geometry
+ * is shared read-only by all rooms through {@link GameServer}.
+ * <p>
+ * Slots are claimed without locks. A bounded atomic counter of occupied
+ * slots admits at most {@value #MAX_PLAYERS} reservations, and each one then
+ * claims a free slot with a compare-and-set, so a slot is never handed out
+ * twice. A room with no players can be closed once, by a compare-and-set
+ * of that counter from 0; after that every reservation is refused, so a
+ * closing room never takes in a late player. Spectator groups are
+ * concurrent too. Entities live in the room's own
+ * {@link EntityStore}, so games in different rooms never contend. Periodic
+ * upkeep runs in the cleanup phase of the server's {@link TickEngine}.
+ */
+public final class Room {
+
+    static final int MAX_PLAYERS = 2;
+
+    private final int gameId;
+    private final int spectatorCap;
+
+    // Occupied slots, or CLOSED once the room has been closed.
+    private static final int CLOSED = -1;
+    private final AtomicInteger occupied = new AtomicInteger();
+    // Client id per slot (index slot - 1); 0 when free. Client ids start at 1.
+    private final AtomicIntegerArray slots = new AtomicIntegerArray(MAX_PLAYERS);
+
+    // Map playerId -> spectators of that player (players of this room only)
+    final ConcurrentHashMap<Integer, BroadcastGroup> spectatorsByPlayer = new ConcurrentHashMap<>();
+
+    // Dynamic entities of this room.
+    private final EntityStore entities = new EntityStore();
+
+    /**
+     * @param spectatorCap seats in each player's {@link BroadcastGroup}
+     */
+    Room(int gameId, int spectatorCap) {
+        this.gameId = gameId;
+        this.spectatorCap = spectatorCap;
+    }
+
+    /** @return id of this game, as carried in frame headers. */
+    public int gameId() {
+        return gameId;
+    }
+
+    /** @return crocodiles and fruits of the current round. */
+    public EntityStore entities() {
+        return entities;
+    }
+
+    /** Drops the room's entities once it is no longer hosted. */
+    void close() {
+        clearEntitiesForNewRound();
+    }
+
+    // ---- slots ----
+
+    /** @return player client id in slot 1 or 2, or {@code null}. */
+    Integer playerInSlot(int slotIndex) {
+        if (slotIndex < 1 || slotIndex > MAX_PLAYERS) return null;
+        int id = slots.get(slotIndex - 1);
+        return (id == 0) ? null : id;
+    }
+
+    /** Reserves a free player slot for {@code clientId}; returns the slot, or 0 if full or closed. */
+    int reservePlayerSlot(int clientId) {
+        int n;
+        do {
+            n = occupied.get();
+            if (n == CLOSED || n >= MAX_PLAYERS) return 0;
+        } while (!occupied.compareAndSet(n, n + 1));
+        // The counter guarantees a free slot; a concurrent reserver may take it first, so retry.
+        while (true) {
+            for (int i = 0; i < MAX_PLAYERS; i++) {
+                if (slots.compareAndSet(i, 0, clientId)) return i + 1;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /** Frees the slot held by {@code clientId}; returns the slot, or 0 if it held none. */
+    int releasePlayerSlot(int clientId) {
+        for (int i = 0; i < MAX_PLAYERS; i++) {
+            if (slots.compareAndSet(i, clientId, 0)) {
+                occupied.decrementAndGet();
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    boolean hasPlayers() {
+        return occupied.get() > 0;
+    }
+
+    /**
+     * Closes the room if it has no player, refusing every later reservation.
+     *
+     * @return {@code true} for the one caller that closed it
+     */
+    boolean closeIfEmpty() {
+        return occupied.compareAndSet(0, CLOSED);
+    }
+
+    boolean isClosed() {
+        return occupied.get() == CLOSED;
+    }
+
+    /** @return {@code true} if a spectator could still attach to some player of this room. */
+    boolean hasSpectatorRoom() {
+        for (int slot = 1; slot <= MAX_PLAYERS; slot++) {
+            Integer pid = playerInSlot(slot);
+            BroadcastGroup g = (pid == null) ? null : spectatorsByPlayer.get(pid);
+            if (g != null && !g.isFull()) return true;
+        }
+        return false;
+    }
+
+    /** @return spectators of one player of this room (created on first use, at registration). */
+    BroadcastGroup spectatorsOf(int playerId) {
+        return spectatorsByPlayer.computeIfAbsent(playerId, k -> new BroadcastGroup(spectatorCap));
+    }
+
+    /** @return spectators of this room holding a seat, over both players. */
+    int spectatorCount() {
+        int n = 0;
+        for (BroadcastGroup g : spectatorsByPlayer.values()) n += g.size();
+        return n;
+    }
+
+    // ---- entities ----
+
+    public void addCrocodile(byte variant, int x, int y) {
+        entities.addCrocodile(variant, x, y);
+    }
+
+    public void addFruit(byte variant, int x, int y) {
+        entities.addFruit(variant, x, y);
+    }
+
+    public void removeFruitAt(int x, int y) {
+        entities.removeFruitAt(x, y);
+    }
+
+    public void clearEntitiesForNewRound() {
+        entities.clear();
+    }
+
+    public void cleanupOffScreenCrocodiles() {
+        // Remove crocodiles that are below the screen (y > 240)
+        entities.removeCrocodilesBelow(240);
+    }
+}
@@ -0,0 +1,127 @@
+package serverJava;
+
+/**
+ * Startup options for {@link GameServer}.
+ * <p>
+ * Parsed from the command line: the first plain argument is the TCP port,
+ * the rest are {@code --name} or {@code --name=value} switches:
+ * <pre>
+ * --nio               use the selector-based transport instead of one thread per client
+ * --io-threads=N      number of selector threads for --nio (default: min(4, cores))
+ * --virtual-threads   run each blocking session on a virtual thread (ignored with --nio)
+ * --handshake-threads=N     workers reading role bytes and sending CLIENT_ACK (default 16)
+ * --handshake-queue=N       accepted sockets waiting for a worker before new ones are dropped (default 256)
+ * --handshake-timeout-ms=N  deadline for role byte, ACK and INIT_STATIC (default 3000)
+ * --send-queue=N      outbound frames a client may lag behind before it is dropped (default 256)
+ * --spectator-stall-ms=N    drop a spectator whose socket has not drained for this long (default 3000)
+ * --spectator-keyframe=N    full entity list every N SPECTATOR_STATE frames for delta spectators (default 60)
+ * --spectator-hz=N          SPECTATOR_STATE rate per spectator, newest state wins (default 0: every player frame)
+ * --spectators-per-player=N spectators one player can have (default 2)
+ * --udp               offer a datagram path (same port number) for PLAYER_PROPOSED and SPECTATOR_STATE
+ * --max-rooms=N       games hosted at once, two players each (default 256)
+ * --validate-moves    check PLAYER_PROPOSED against the level and send TLV_PLAYER_CORR (see MoveValidator)
+ * --tick-hz=N         rate of the server tick running cleanup, spectator flushes and timeouts (default 60)
+ * --tick-budget-pct=N share of each tick the phases should fit in; upkeep yields beyond it (default 50)
+ * --relay=HOST:PORT   host no games; serve spectators from the server at HOST:PORT (see SpectatorRelay)
+ * --relay-viewers=N   local spectators per player group in relay mode (default 64)
+ * </pre>
+ */
+public class ServerConfig {
+
+    /** How client connections are serviced. */
+    public enum Transport {
+        /** One blocking thread per {@link ClientHandler} (original mode). */
+        BLOCKING,
+        /** Fixed pool of selector threads shared by every connection. */
+        NIO
+    }
+
+    /** TCP port to listen on. */
+    public int port = 9090;
+    /** Connection servicing mode. */
+    public Transport transport = Transport.BLOCKING;
+    /** Selector threads used by {@link Transport#NIO}. */
+    public int ioThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    /** Start {@link Transport#BLOCKING} sessions on virtual threads instead of platform threads. */
+    public boolean virtualThreads = false;
+    /** Workers in the {@link HandshakeStage} pool. */
+    public int handshakeThreads = 16;
+    /** Sockets allowed to wait for a handshake worker. */
+    public int handshakeQueue = 256;
+    /** Per-connection handshake deadline in milliseconds. */
+    public int handshakeTimeoutMs = 3000;
+    /** Capacity of each session's outbound frame queue. */
+    public int sendQueue = 256;
+    /** Milliseconds a spectator may have output pending without progress before it is dropped. */
+    public int spectatorStallMs = 3000;
+    /** SPECTATOR_STATE frames between forced keyframes in delta mode. */
+    public int spectatorKeyframe = 60;
+    /** Server-wide SPECTATOR_STATE rate in Hz; 0 forwards every player frame. */
+    public int spectatorHz = 0;
+    /** Seats in each player's {@link BroadcastGroup}. */
+    public int spectatorsPerPlayer = 2;
+    /** Offer the {@link UdpChannel} fast path to clients. */
+    public boolean udp = false;
+    /** Upper bound on concurrently hosted {@link Room}s. */
+    public int maxRooms = 256;
+    /** Check proposed moves with a {@link MoveValidator}. */
+    public boolean validateMoves = false;
+    /** Ticks per second of the {@link TickEngine}. */
+    public int tickHz = 60;
+    /** Percentage of each tick period the {@link TickEngine} phases may use. */
+    public int tickBudgetPct = 50;
+    /** Upstream server of a {@link SpectatorRelay}; {@code null} for a normal game server. */
+    public String relayHost = null;
+    /** Upstream TCP port in relay mode. */
+    public int relayPort = 9090;
+    /** Spectators a relay serves per upstream player group. */
+    public int relayViewers = 64;
+
+    /**
+     * Builds a configuration from command-line arguments.
+     *
+     * @param args raw {@code main} arguments
+     * @return parsed configuration (defaults for anything not given)
+     * @throws IllegalArgumentException on an unknown switch or bad number
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig c = new ServerConfig();
+        for (String a : args) {
+            if (!a.startsWith("--")) {
+                c.port = Integer.parseInt(a);
+                continue;
+            }
+            int eq = a.indexOf('=');
+            String name  = (eq < 0) ? a.substring(2) : a.substring(2, eq);
+            String value = (eq < 0) ? null : a.substring(eq + 1);
+
+            switch (name) {
+                case "nio"             -> c.transport = Transport.NIO;
+                case "io-threads"      -> c.ioThreads = Math.max(1, Integer.parseInt(value));
+                case "virtual-threads" -> c.virtualThreads = true;
+                case "handshake-threads"    -> c.handshakeThreads = Math.max(1, Integer.parseInt(value));
+                case "handshake-queue"      -> c.handshakeQueue = Math.max(1, Integer.parseInt(value));
+                case "handshake-timeout-ms" -> c.handshakeTimeoutMs = Math.max(1, Integer.parseInt(value));
+                case "send-queue"           -> c.sendQueue = Math.max(1, Integer.parseInt(value));
+                case "spectator-stall-ms"   -> c.spectatorStallMs = Math.max(1, Integer.parseInt(value));
+                case "spectator-keyframe"   -> c.spectatorKeyframe = Math.max(1, Integer.parseInt(value));
+                case "spectator-hz"         -> c.spectatorHz = Math.max(0, Integer.parseInt(value));
+                case "spectators-per-player" -> c.spectatorsPerPlayer = Math.max(1, Integer.parseInt(value));
+                case "udp"                  -> c.udp = true;
+                case "max-rooms"            -> c.maxRooms = Math.max(1, Integer.parseInt(value));
+                case "validate-moves"       -> c.validateMoves = true;
+                case "tick-hz"              -> c.tickHz = Math.max(1, Math.min(1000, Integer.parseInt(value)));
+                case "tick-budget-pct"      -> c.tickBudgetPct = Math.max(1, Math.min(100, Integer.parseInt(value)));
+                case "relay" -> {
+                    int colon = (value == null) ? -1 : value.lastIndexOf(':');
+                    if (colon <= 0) throw new IllegalArgumentException("Expected --relay=HOST:PORT, got: " + a);
+                    c.relayHost = value.substring(0, colon);
+                    c.relayPort = Integer.parseInt(value.substring(colon + 1));
+                }
+                case "relay-viewers"        -> c.relayViewers = Math.max(1, Integer.parseInt(value));
+                default -> throw new IllegalArgumentException("Unknown option: " + a);
+            }
+        }
+        return c;
+    }
+}
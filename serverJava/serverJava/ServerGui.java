@@ -8,7 +8,7 @@ import java.awt.*;
 import java.util.List;
 
 /**
- * Swing-based admin GUI for the server. Allows selecting a target player slot,
+ * Swing-based admin GUI for the server. Allows selecting a room and a target player slot in it,
  * choosing an entity type (crocodile/fruit) and variant, picking a discrete
  * position (1..5), and spawning/removing entities on a selected vine/platform.
  */
@@ -18,6 +18,8 @@ public class ServerGui {
     private final GameServer server;
     /** Main window frame. */
     private final JFrame frame;
+    /** Room selector (gameId) holding the target player. */
+    private final JComboBox<Integer> roomCombo;
     /** Player slot selector (1 or 2) for the target player. */
     private final JComboBox<Integer> clientCombo;
 
@@ -55,7 +57,12 @@ public class ServerGui {
 
         // ---------- TOP ----------
         JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        top.add(new JLabel("Target client:"));
+        top.add(new JLabel("Room:"));
+        roomCombo = new JComboBox<>();
+        roomCombo.addActionListener(e -> refreshSlots());
+        top.add(roomCombo);
+
+        top.add(new JLabel("  Target client:"));
 
         clientCombo = new JComboBox<>();
         top.add(clientCombo);
@@ -148,11 +155,12 @@ public class ServerGui {
 
     /**
      * Sends a spawn command (croc/fruit) to the server for the chosen
-     * player slot, container, variant, and discrete position.
+     * room, player slot, container, variant, and discrete position.
      */
     private void doSend(){
+        Integer gameId = (Integer) roomCombo.getSelectedItem();
         Integer slotIndex = (Integer) clientCombo.getSelectedItem();
-        if (slotIndex == null) {
+        if (gameId == null || slotIndex == null) {
             msg("No player selected");
             return;
         }
@@ -161,39 +169,46 @@ public class ServerGui {
             return;
         }
 
-        Integer playerClientId = server.getPlayerClientIdForSlot(slotIndex);
+        Integer playerClientId = server.getPlayerClientIdForSlot(gameId, slotIndex);
         if (playerClientId == null) {
-            msg("No player connected in slot " + slotIndex);
+            msg("No player connected in slot " + slotIndex + " of room " + gameId);
             return;
         }
 
         byte variant = resolveVariantCode();
         int pos = (Integer) posCombo.getSelectedItem();
-
-        switch (selectedTarget){
-            case VINE -> {
-                if (crocRadio.isSelected())
-                    server.spawnCrocOnVineForClient(playerClientId, selectedIndex, variant, pos);
-                else
-                    server.spawnFruitOnVineForClient(playerClientId, selectedIndex, variant, pos);
+        Target target = selectedTarget;
+        int index = selectedIndex;
+        boolean croc = crocRadio.isSelected();
+
+        // Spawns run on the server tick, not on the Swing thread.
+        server.tick().post(() -> {
+            switch (target){
+                case VINE -> {
+                    if (croc)
+                        server.spawnCrocOnVineForClient(playerClientId, index, variant, pos);
+                    else
+                        server.spawnFruitOnVineForClient(playerClientId, index, variant, pos);
+                }
+                case PLATFORM -> {
+                    if (croc)
+                        server.spawnCrocOnPlatformForClient(playerClientId, index, variant, pos);
+                    else
+                        server.spawnFruitOnPlatformForClient(playerClientId, index, variant, pos);
+                }
+                default -> {}
             }
-            case PLATFORM -> {
-                if (crocRadio.isSelected())
-                    server.spawnCrocOnPlatformForClient(playerClientId, selectedIndex, variant, pos);
-                else
-                    server.spawnFruitOnPlatformForClient(playerClientId, selectedIndex, variant, pos);
-            }
-            default -> {}
-        }
+        });
     }
 
     /**
      * Issues a fruit removal at the selected container and position for
-     * the chosen player slot.
+     * the chosen room and player slot.
      */
     private void doDeleteFruit(){
+        Integer gameId = (Integer) roomCombo.getSelectedItem();
         Integer slotIndex = (Integer) clientCombo.getSelectedItem();
-        if (slotIndex == null) {
+        if (gameId == null || slotIndex == null) {
             msg("No player selected");
             return;
         }
@@ -202,19 +217,23 @@ public class ServerGui {
             return;
         }
 
-        Integer playerClientId = server.getPlayerClientIdForSlot(slotIndex);
+        Integer playerClientId = server.getPlayerClientIdForSlot(gameId, slotIndex);
         if (playerClientId == null) {
-            msg("No player connected in slot " + slotIndex);
+            msg("No player connected in slot " + slotIndex + " of room " + gameId);
             return;
         }
 
         int pos = (Integer) posCombo.getSelectedItem();
-
-        switch (selectedTarget){
-            case VINE     -> server.removeFruitOnVineForClient(playerClientId, selectedIndex, pos);
-            case PLATFORM -> server.removeFruitOnPlatformForClient(playerClientId, selectedIndex, pos);
-            default       -> {}
-        }
+        Target target = selectedTarget;
+        int index = selectedIndex;
+
+        server.tick().post(() -> {
+            switch (target){
+                case VINE     -> server.removeFruitOnVineForClient(playerClientId, index, pos);
+                case PLATFORM -> server.removeFruitOnPlatformForClient(playerClientId, index, pos);
+                default       -> {}
+            }
+        });
     }
 
     /** Loads crocodile variants into the variant combo box. */
@@ -253,16 +272,32 @@ public class ServerGui {
     }
 
     /**
-     * Refreshes the player-slot combo based on current server state.
-     * Adds slot numbers (1/2) that currently have an active player.
+     * Refreshes the room combo from the open rooms, keeping the selected
+     * room if it is still open, then its player slots.
      */
     private void refreshClients(){
+        Integer selected = (Integer) roomCombo.getSelectedItem();
+        roomCombo.removeAllItems();
+        for (Integer gameId : server.getGameIds()) {
+            roomCombo.addItem(gameId);
+        }
+        if (selected != null) roomCombo.setSelectedItem(selected);
+        refreshSlots();
+    }
+
+    /**
+     * Refreshes the player-slot combo for the selected room.
+     * Adds slot numbers (1/2) that currently have an active player.
+     */
+    private void refreshSlots(){
         clientCombo.removeAllItems();
+        Integer gameId = (Integer) roomCombo.getSelectedItem();
+        if (gameId == null) return;
 
-        if (server.getPlayerClientIdForSlot(1) != null) {
+        if (server.getPlayerClientIdForSlot(gameId, 1) != null) {
             clientCombo.addItem(1);
         }
-        if (server.getPlayerClientIdForSlot(2) != null) {
+        if (server.getPlayerClientIdForSlot(gameId, 2) != null) {
             clientCombo.addItem(2);
         }
     }
@@ -0,0 +1,241 @@
+package serverJava;
+
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import MessageManagement.Messenger;
+import Utils.MsgType;
+
+/**
+ * Turns one player's PLAYER_PROPOSED stream into SPECTATOR_STATE frames.
+ * <p>
+ * <b>Rate.</b> Each spectator has a send interval: the server-wide
+ * {@code --spectator-hz}, or its own rate from SPECTATE_REQUEST. Inbound
+ * states are stashed and a spectator only gets a frame once its interval has
+ * elapsed, always carrying the newest state; the states in between are
+ * skipped. If the player goes quiet while a spectator is still owed the
+ * latest state, the feed joins the server's trailing set and the
+ * {@link TickEngine} snapshot phase sends it on the first tick it is due.
+ * Spectators on the server-wide rate share one clock and one frame
+ * sequence, so they are due together and keep receiving deltas; spectators
+ * with their own rate always get keyframes.
+ * <p>
+ * <b>Encoding.</b> Every frame published on the shared clock gets number {@code seq}. Two
+ * encodings are produced, each at most once per frame and shared by all
+ * spectators that receive it:
+ * <ul>
+ *   <li>keyframe: the entities TLV exactly as the player sent it (the
+ *       original SPECTATOR_STATE format);</li>
+ *   <li>delta: a {@link MsgType#TLV_ENTITIES_DELTA} holding only the entity
+ *       slots that differ from frame {@code seq - 1}.</li>
+ * </ul>
+ * A spectator gets the delta only if it asked for it and frame
+ * {@code seq - 1} was the last one handed to its writer. TCP delivers in
+ * order, so that frame is the spectator's baseline. Spectators that just
+ * attached, that skipped a frame, or whose last frame was replaced before it
+ * was written get the keyframe, as does everyone every
+ * {@code keyframeInterval} frames.
+ * <p>
+ * Publishing runs from the player's session thread or the tick loop,
+ * under the feed's own {@link ReentrantLock}: a virtual-thread session that
+ * waits for it parks instead of pinning its carrier thread. Spectators join
+ * and leave the group without it, so a publish may or may not reach one that
+ * joins or leaves meanwhile.
+ */
+final class SpectatorFeed {
+
+    private static final int ENTITY_BYTES = 6;
+    private static final int MAX_ENTITIES = 255;
+
+    private final int keyframeInterval;
+    private final long defaultIntervalNanos;
+    private final Set<SpectatorFeed> trailingFeeds;
+    // Guards everything below.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Newest inbound state; version counts inbound states.
+    private short x, y, vx, vy;
+    private byte flags;
+    private byte[] tlv = new byte[256];
+    private int tlvLen;
+    private long version = 0;
+
+    // Entities of the previous published frame; prevCount < 0 when there is no usable baseline.
+    private final byte[] prev = new byte[MAX_ENTITIES * ENTITY_BYTES];
+    private int prevCount = -1;
+    private final int[] changed = new int[MAX_ENTITIES];
+    private int seq = 0;
+
+    // Shared clock of spectators on the server-wide rate.
+    private long groupNextDue = System.nanoTime();
+
+    // Pending trailing flush; the feed is in trailingFeeds while this is set.
+    private boolean trailing = false;
+    private long trailingAt;
+    private BroadcastGroup trailingSpecs;
+    private boolean closed = false;
+
+    /**
+     * @param trailingFeeds feeds owed a trailing flush, drained by the tick loop
+     */
+    SpectatorFeed(int keyframeInterval, int defaultHz, Set<SpectatorFeed> trailingFeeds) {
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.defaultIntervalNanos = intervalNanos(defaultHz);
+        this.trailingFeeds = trailingFeeds;
+    }
+
+    /** @return send interval for a rate in Hz; 0 means every state. */
+    static long intervalNanos(int hz) {
+        return (hz > 0) ? 1_000_000_000L / hz : 0;
+    }
+
+    /**
+     * Records the newest player state and sends it to the spectators that are due.
+     */
+    void publish(BroadcastGroup specs, short x, short y, short vx, short vy, byte flags,
+                 byte[] tlvBuf, int tlvOff, int tlvLen) {
+        lock.lock();
+        try {
+            if (closed) return;
+            this.x = x; this.y = y; this.vx = vx; this.vy = vy; this.flags = flags;
+            if (tlv.length < tlvLen) tlv = new byte[Math.max(tlvLen, tlv.length * 2)];
+            System.arraycopy(tlvBuf, tlvOff, tlv, 0, tlvLen);
+            this.tlvLen = tlvLen;
+            version++;
+            flush(specs, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops trailing flushes once the player has left. */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            trailing = false;
+            trailingFeeds.remove(this);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the newest state to spectators still owed it, if the pending
+     * trailing flush is due. Called by the tick loop for each feed in the
+     * trailing set; the feed leaves the set once nothing is owed.
+     */
+    void flushTrailing(long now) {
+        lock.lock();
+        try {
+            if (trailing && !closed) {
+                if (now - trailingAt < 0) return;
+                trailing = false;
+                flush(trailingSpecs, now);
+            }
+            if (!trailing) trailingFeeds.remove(this);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock.
+    private void flush(BroadcastGroup specs, long now) {
+        boolean groupDue = defaultIntervalNanos == 0 || now - groupNextDue >= 0;
+        boolean groupFrame = false;
+        long nextWake = Long.MAX_VALUE;
+
+        byte[] key = null, delta = null;
+        int count = -1;
+        for (ClientHandler s : specs.members()) {
+            if (s.feedVersion() == version) continue; // already has the newest state
+
+            long own = s.feedIntervalNanos();
+            boolean usesGroup = own < 0;
+            long interval = usesGroup ? defaultIntervalNanos : own;
+            boolean due = interval == 0 || (usesGroup ? groupDue : now - s.feedNextDue() >= 0);
+            if (!due) {
+                nextWake = Math.min(nextWake, usesGroup ? groupNextDue : s.feedNextDue());
+                continue;
+            }
+
+            if (key == null) {
+                key = Messenger.encodeSpectatorState(x, y, vx, vy, flags, tlv, 0, tlvLen);
+                count = entityCount();
+            }
+            s.setFeedVersion(version);
+
+            if (!usesGroup) {
+                // Own clock: never in step with the numbered group frames.
+                s.sendSpectatorState(key);
+                s.setFeedSeq(-1);
+                if (interval > 0) s.setFeedNextDue(now + interval);
+                continue;
+            }
+
+            if (!groupFrame) {
+                groupFrame = true;
+                seq++;
+            }
+            byte[] frame = key;
+            boolean deltaAllowed = count >= 0 && prevCount >= 0 && seq % keyframeInterval != 0;
+            if (deltaAllowed && s.wantsDelta() && s.feedSeq() == seq - 1) {
+                if (delta == null) delta = encodeDelta(count, key);
+                frame = delta;
+            }
+            if (frame == key) {
+                s.sendSpectatorState(key);
+            } else {
+                s.sendSpectatorState(frame, key);
+            }
+            s.setFeedSeq(seq);
+        }
+
+        if (groupFrame) {
+            if (defaultIntervalNanos > 0) groupNextDue = now + defaultIntervalNanos;
+            if (count >= 0) System.arraycopy(tlv, 4, prev, 0, count * ENTITY_BYTES);
+            prevCount = count;
+        }
+        if (nextWake != Long.MAX_VALUE) {
+            scheduleTrailing(specs, nextWake);
+        }
+    }
+
+    // Someone skipped the newest state: make sure it goes out even if no new state arrives.
+    private void scheduleTrailing(BroadcastGroup specs, long at) {
+        if (trailing && trailingAt - at <= 0) return; // an earlier flush is pending
+        trailing = true;
+        trailingAt = at;
+        trailingSpecs = specs;
+        trailingFeeds.add(this);
+    }
+
+    // Entities TLV: type, u16 length, u8 count, count × 6 bytes. -1 if absent or malformed.
+    private int entityCount() {
+        if (tlvLen < 4 || tlv[0] != MsgType.TLV_ENTITIES_CORR) return -1;
+        int valueLen = ((tlv[1] & 0xFF) << 8) | (tlv[2] & 0xFF);
+        int n = tlv[3] & 0xFF;
+        return (3 + valueLen <= tlvLen && 1 + n * ENTITY_BYTES <= valueLen) ? n : -1;
+    }
+
+    // Falls back to the keyframe when the delta would not be smaller.
+    private byte[] encodeDelta(int count, byte[] key) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (i >= prevCount || !sameEntity(4 + i * ENTITY_BYTES, i * ENTITY_BYTES)) {
+                changed[n++] = i;
+            }
+        }
+        if (2 + n * (1 + ENTITY_BYTES) >= 1 + count * ENTITY_BYTES) {
+            return key;
+        }
+        return Messenger.encodeSpectatorDelta(x, y, vx, vy, flags, tlv, 4, count, changed, n);
+    }
+
+    private boolean sameEntity(int off, int prevOff) {
+        for (int k = 0; k < ENTITY_BYTES; k++) {
+            if (tlv[off + k] != prev[prevOff + k]) return false;
+        }
+        return true;
+    }
+}
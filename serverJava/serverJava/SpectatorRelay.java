@@ -0,0 +1,467 @@
+package serverJava;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import MessageManagement.FrameCodec;
+import MessageManagement.Proto;
+import MessageManagement.StateBundle;
+import MessageManagement.TLVParser;
+import Utils.MsgType;
+
+/**
+ * Spectator fan-out from a second server process ({@code --relay=HOST:PORT}).
+ * <p>
+ * A relay hosts no games. Spectators connect to it and handshake exactly as
+ * with a game server; when one sends SPECTATE_REQUEST the relay subscribes
+ * upstream on its behalf, with one TCP connection per watched player (game
+ * and slot) opened with role byte 3 ({@link ClientRole#RELAY}). The upstream
+ * server treats that connection as a single privileged spectator: it is
+ * exempt from the spectator caps and gets everything a spectator of that
+ * player gets. The relay reads each frame once and serves it to all of its
+ * local spectators of that player:
+ * <ul>
+ *   <li>SPECTATOR_STATE goes through a local {@link SpectatorFeed}, so local
+ *       spectators keep their own rate and delta opt-in;</li>
+ *   <li>every other frame (HUD bundles, spawns, respawns...) is queued as-is,
+ *       shared by all of them; the session writers stamp each one's id;</li>
+ *   <li>LIVES_UPDATE and SCORE_UPDATE, alone or inside a STATE_BUNDLE, are
+ *       also mirrored so spectators attaching later get the current HUD.</li>
+ * </ul>
+ * The subscription is closed with its last local spectator. If upstream
+ * ends it (the player left) the local spectators are detached; if upstream
+ * refused it they are disconnected, as a game server does on a failed attach.
+ * <p>
+ * Slot information for CLIENT_ACK comes from a short upstream probe (a RELAY
+ * handshake closed right after the ACK), repeated every {@value #LOBBY_TTL_MS} ms
+ * on the relay's own lobby thread, and again as soon as a subscription ends.
+ * Handshakes only read the newest result: a slow upstream never holds up
+ * the selector or a handshake worker. Until the first probe answers, local
+ * spectators are turned away as if upstream were down.
+ * Upstream subscriptions ask for full entity lists: a delta stream cannot be
+ * shared with spectators that join mid-stream.
+ */
+final class SpectatorRelay {
+
+    private static final long LOBBY_TTL_MS = 1000;
+    private static final int MAX_PAYLOAD = 64 * 1024;
+
+    private final GameServer server;
+    private final String host;
+    private final int port;
+    private final int viewersPerGroup;
+    private final int timeoutMs;
+
+    // (gameId, slot) -> live subscription. Joining an existing one and leaving happen under groupsLock,
+    // a ReentrantLock so that handshake and session virtual threads park on it instead of pinning a carrier.
+    private final Map<Long, Group> groups = new HashMap<>();
+    private final ReentrantLock groupsLock = new ReentrantLock();
+    // Local spectator -> game offered in its CLIENT_ACK, for SPECTATE_REQUEST with gameId 0.
+    private final ConcurrentHashMap<Integer, Integer> offered = new ConcurrentHashMap<>();
+    // Local spectator -> subscription it watches.
+    private final ConcurrentHashMap<Integer, Group> watching = new ConcurrentHashMap<>();
+
+    // Newest upstream probe result, null while upstream is unreachable. Written by the lobby thread only.
+    private volatile Lobby lobby;
+    private final ScheduledThreadPoolExecutor prober;
+
+    private final AtomicLong framesIn  = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong probes    = new AtomicLong();
+
+    /** Game offered by upstream and which of its player slots are active. */
+    private record Lobby(int gameId, boolean slot1, boolean slot2) {
+        boolean active(int slot) {
+            return (slot == 1) ? slot1 : (slot == 2) && slot2;
+        }
+    }
+
+    /** HUD values mirrored from one upstream subscription. */
+    private record Hud(int lives, int score) {}
+
+    /**
+     * @param server          local server whose spectators are served
+     * @param host            upstream game server
+     * @param port            upstream TCP port
+     * @param viewersPerGroup local spectators allowed per upstream player
+     */
+    SpectatorRelay(GameServer server, String host, int port, int viewersPerGroup) {
+        this.server = server;
+        this.host = host;
+        this.port = port;
+        this.viewersPerGroup = viewersPerGroup;
+        this.timeoutMs = server.config().handshakeTimeoutMs;
+        this.prober = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("relay-lobby").daemon(true).factory());
+        this.prober.scheduleWithFixedDelay(this::probe, 0, LOBBY_TTL_MS, TimeUnit.MILLISECONDS);
+        System.out.println("Relay mode: serving spectators of " + host + ":" + port);
+    }
+
+    // ---- handshake ----
+
+    /**
+     * Admits local spectators while upstream has a player to watch; players
+     * are turned away (a relay hosts no games).
+     */
+    GameServer.Admission admit(int clientId, int requestedRoleRaw) {
+        if (requestedRoleRaw != 2) {
+            System.out.println("Client " + clientId + " requested role " + requestedRoleRaw
+                    + " but this server is a spectator relay. Rejecting.");
+            return null;
+        }
+        Lobby l = lobby;
+        if (l == null || (!l.slot1() && !l.slot2())) {
+            System.out.println("Client " + clientId
+                    + " requested SPECTATOR but no players upstream. Rejecting.");
+            return null;
+        }
+        offered.put(clientId, l.gameId());
+        System.out.println("Client " + clientId
+                + " requested SPECTATOR -> assigned SPECTATOR (pending selection) for upstream game " + l.gameId());
+        return new GameServer.Admission(ClientRole.SPECTATOR, null);
+    }
+
+    /**
+     * CLIENT_ACK for a local handshake, in the game server's format. Local
+     * capacity is far above the two seats launchers know about, so each
+     * active slot reports {@link BroadcastGroup#ackCount()}.
+     */
+    byte[] encodeClientAck(int clientId, GameServer.Admission admission) {
+        Lobby l = (admission != null) ? lobby : null;
+        int gameId = (l != null) ? l.gameId() : 0;
+
+        int[] slots = new int[Room.MAX_PLAYERS];
+        for (int slot = 1; slot <= Room.MAX_PLAYERS; slot++) {
+            if (l == null || !l.active(slot)) {
+                slots[slot - 1] = 255;
+            } else {
+                Group g = group(gameId, slot);
+                slots[slot - 1] = (g != null) ? g.viewers.ackCount() : 0;
+            }
+        }
+        byte[] frame = new byte[FrameCodec.CLIENT_ACK_LEN];
+        FrameCodec.putClientAck(ByteBuffer.wrap(frame), 0, clientId, gameId,
+                (byte) ((admission != null) ? 2 : 0), slots[0], slots[1]);
+        return frame;
+    }
+
+    /** Refreshes {@link #lobby} with one upstream probe; runs on the lobby thread only. */
+    private void probe() {
+        probes.incrementAndGet();
+        try (Socket s = connect()) {
+            byte[] ack = readFrame(new DataInputStream(new BufferedInputStream(s.getInputStream())));
+            ByteBuffer b = ByteBuffer.wrap(ack);
+            boolean relayed = ack[1] == MsgType.CLIENT_ACK && b.getInt(12) >= 3 && ack[Proto.HEADER_LEN] == 3;
+            lobby = relayed
+                    ? new Lobby(b.getInt(8), (ack[Proto.HEADER_LEN + 1] & 0xFF) != 255,
+                                (ack[Proto.HEADER_LEN + 2] & 0xFF) != 255)
+                    : new Lobby(0, false, false);
+        } catch (IOException e) {
+            if (lobby != null || probes.get() == 1) { // log once per outage
+                System.out.println("Relay: upstream " + host + ":" + port + " unreachable: " + e.getMessage());
+            }
+            lobby = null;
+        }
+    }
+
+    /** Probes again now instead of at the next period, e.g. after a player left. */
+    private void staleLobby() {
+        prober.execute(this::probe);
+    }
+
+    // ---- local spectators ----
+
+    /**
+     * Attaches a local spectator to a player of an upstream game, opening the
+     * upstream subscription if it is the first one watching that player.
+     *
+     * @param gameId upstream game, 0 for the one offered in CLIENT_ACK
+     * @return {@code false} if the spectator already watches, or the local group is full
+     */
+    boolean attach(ClientHandler spectator, int gameId, int slotIndex, boolean deltaState, int stateHz) {
+        int id = spectator.getClientId();
+        if (gameId == 0) gameId = offered.getOrDefault(id, 0);
+        if (gameId == 0 || slotIndex < 1 || slotIndex > Room.MAX_PLAYERS || watching.containsKey(id)) {
+            return false;
+        }
+
+        Group g;
+        int n;
+        groupsLock.lock();
+        try {
+            long key = key(gameId, slotIndex);
+            g = groups.get(key);
+            if (g == null) {
+                g = new Group(gameId, slotIndex);
+                groups.put(key, g);
+                g.start();
+            }
+            spectator.session().setGameId(gameId);
+            spectator.resetFeed(deltaState, stateHz);
+            if (!g.viewers.tryJoin(spectator, false)) {
+                return false; // slot full
+            }
+            n = g.viewers.size();
+            watching.put(id, g);
+        } finally {
+            groupsLock.unlock();
+        }
+
+        // HUD sync happens outside the locks; before the first upstream HUD
+        // the subscription's own HUD bundle reaches everyone anyway.
+        StateBundle hud = g.hud();
+        if (hud != null) spectator.sendBundle(hud.toFrame());
+
+        System.out.println("Spectator " + id + " attached to upstream game " + gameId
+                + " (slot " + slotIndex + ") via relay, " + n + " local viewers");
+        return true;
+    }
+
+    /** Forgets a disconnected local spectator; closes its subscription if it was the last viewer. */
+    void detach(ClientHandler spectator) {
+        forget(spectator.getClientId());
+        Group g = watching.remove(spectator.getClientId());
+        if (g == null) return;
+
+        boolean last;
+        groupsLock.lock();
+        try {
+            g.viewers.leave(spectator);
+            last = g.viewers.isEmpty();
+            if (last) groups.remove(key(g.gameId, g.slot), g);
+        } finally {
+            groupsLock.unlock();
+        }
+        if (last) g.shutdown();
+    }
+
+    /** Drops what the handshake recorded for a client that never got registered. */
+    void forget(int clientId) {
+        offered.remove(clientId);
+    }
+
+    private Group group(int gameId, int slot) {
+        groupsLock.lock();
+        try {
+            return groups.get(key(gameId, slot));
+        } finally {
+            groupsLock.unlock();
+        }
+    }
+
+    private static long key(int gameId, int slot) {
+        return ((long) gameId << 8) | slot;
+    }
+
+    /** Prints relay counters for the admin {@code stats} command. */
+    void printStats() {
+        int groupCount, viewerCount = 0;
+        groupsLock.lock();
+        try {
+            groupCount = groups.size();
+            for (Group g : groups.values()) {
+                viewerCount += g.viewers.size();
+            }
+        } finally {
+            groupsLock.unlock();
+        }
+        System.out.printf("  relay: upstream=%s:%d subscriptions=%d viewers=%d framesIn=%d framesOut=%d probes=%d%n",
+                host, port, groupCount, viewerCount, framesIn.get(), framesOut.get(), probes.get());
+    }
+
+    // ---- upstream ----
+
+    private Socket connect() throws IOException {
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(host, port), timeoutMs);
+            s.setSoTimeout(timeoutMs);
+            s.setTcpNoDelay(true);
+            s.getOutputStream().write(3); // role byte: RELAY
+            s.getOutputStream().flush();
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        return s;
+    }
+
+    // One whole frame (header + payload) as sent by the upstream writer.
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        byte[] header = new byte[Proto.HEADER_LEN];
+        in.readFully(header);
+        int len = ByteBuffer.wrap(header).getInt(12);
+        if (header[0] != Proto.VERSION || len < 0 || len > MAX_PAYLOAD) {
+            throw new IOException("bad upstream frame header");
+        }
+        byte[] frame = new byte[Proto.HEADER_LEN + len];
+        System.arraycopy(header, 0, frame, 0, Proto.HEADER_LEN);
+        in.readFully(frame, Proto.HEADER_LEN, len);
+        return frame;
+    }
+
+    /**
+     * One upstream subscription: a RELAY connection attached to one player,
+     * read by its own thread and fanned out to {@link #viewers}.
+     */
+    private final class Group implements Runnable {
+        final int gameId;
+        final int slot;
+        // Local spectators.
+        final BroadcastGroup viewers = new BroadcastGroup(viewersPerGroup);
+        private final SpectatorFeed feed;
+        private final TLVParser tlv = new TLVParser();
+        private volatile Socket socket;
+        private volatile boolean closing = false;
+        // True once upstream accepted the subscription (first HUD bundle or state). Reader thread only.
+        private boolean confirmed = false;
+        // Newest upstream HUD, null until the first one. Replaced whole by the reader thread.
+        private volatile Hud hud;
+
+        Group(int gameId, int slot) {
+            this.gameId = gameId;
+            this.slot = slot;
+            ServerConfig c = server.config();
+            this.feed = new SpectatorFeed(c.spectatorKeyframe, c.spectatorHz, server.trailingFeeds());
+        }
+
+        void start() {
+            Thread t = new Thread(this, "relay-" + gameId + "-" + slot);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        /** Ends the subscription (last viewer left). */
+        void shutdown() {
+            closing = true;
+            Socket s = socket;
+            if (s != null) {
+                try { s.close(); } catch (IOException ignore) {}
+            }
+        }
+
+        StateBundle hud() {
+            Hud h = hud;
+            return (h != null) ? new StateBundle()
+                    .eventU8(MsgType.LIVES_UPDATE, h.lives())
+                    .eventI32(MsgType.SCORE_UPDATE, h.score()) : null;
+        }
+
+        @Override
+        public void run() {
+            String reason = "upstream closed";
+            try (Socket s = connect()) {
+                socket = s;
+                if (closing) return;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                byte[] ack = readFrame(in);
+                if (ack[1] != MsgType.CLIENT_ACK || ack.length <= Proto.HEADER_LEN || ack[Proto.HEADER_LEN] != 3) {
+                    throw new IOException("upstream refused relay");
+                }
+
+                ByteBuffer req = ByteBuffer.allocate(Proto.HEADER_LEN + 2);
+                FrameCodec.putHeader(req, 0, MsgType.SPECTATE_REQUEST, 0, gameId, 2);
+                req.put(Proto.HEADER_LEN, (byte) slot);
+                req.put(Proto.HEADER_LEN + 1, (byte) 0); // full entity lists: shared with viewers that join mid-stream
+                s.getOutputStream().write(req.array());
+                s.getOutputStream().flush();
+                s.setSoTimeout(0); // a quiet player is not an error
+
+                System.out.println("Relay subscribed to upstream game " + gameId + " slot " + slot);
+                while (true) {
+                    onFrame(readFrame(in));
+                }
+            } catch (IOException e) {
+                if (!closing && e.getMessage() != null) reason = e.getMessage();
+            } finally {
+                end(reason);
+            }
+        }
+
+        private void onFrame(byte[] frame) {
+            framesIn.incrementAndGet();
+            byte type = frame[1];
+            int len = frame.length - Proto.HEADER_LEN;
+            if (type == MsgType.CLIENT_ACK || type == MsgType.INIT_STATIC || type == MsgType.UDP_OFFER) {
+                return; // connection setup, not part of the player's feed
+            }
+
+            if (type == MsgType.SPECTATOR_STATE) {
+                if (len < 9) return;
+                ByteBuffer b = ByteBuffer.wrap(frame);
+                int p = Proto.HEADER_LEN;
+                confirmed = true;
+                feed.publish(viewers, b.getShort(p), b.getShort(p + 2), b.getShort(p + 4), b.getShort(p + 6),
+                        frame[p + 8], frame, p + 9, len - 9);
+                framesOut.addAndGet(viewers.size());
+                return;
+            }
+
+            confirmed = true;
+            mirrorHud(type, frame, Proto.HEADER_LEN, len);
+            for (ClientHandler v : viewers.members()) {
+                v.session().send(frame);
+            }
+            framesOut.addAndGet(viewers.size());
+        }
+
+        // Reader thread only: the single writer of hud.
+        private void mirrorHud(byte type, byte[] buf, int off, int len) {
+            Hud h = hud;
+            if (type == MsgType.LIVES_UPDATE && len >= 1) {
+                hud = new Hud(buf[off] & 0xFF, (h != null) ? h.score() : 0);
+            } else if (type == MsgType.SCORE_UPDATE && len >= 4) {
+                hud = new Hud((h != null) ? h.lives() : 0, ByteBuffer.wrap(buf, off, 4).getInt());
+            } else if (type == MsgType.STATE_BUNDLE) {
+                tlv.reset(buf, off, len);
+                while (tlv.next()) {
+                    if (tlv.type() != MsgType.STATE_BUNDLE) {
+                        mirrorHud(tlv.type(), buf, tlv.valueOffset(), tlv.valueLength());
+                    }
+                }
+            }
+        }
+
+        private void end(String reason) {
+            List<ClientHandler> left;
+            groupsLock.lock();
+            try {
+                groups.remove(key(gameId, slot), this);
+            } finally {
+                groupsLock.unlock();
+            }
+            feed.close();
+            boolean accepted = confirmed;
+            left = new ArrayList<>();
+            for (ClientHandler v : viewers.members()) {
+                if (viewers.leave(v)) left.add(v);
+            }
+            if (!closing) {
+                System.out.println("Relay subscription to upstream game " + gameId + " slot " + slot
+                        + " ended: " + reason);
+                staleLobby(); // the player may have left
+            }
+            for (ClientHandler v : left) {
+                watching.remove(v.getClientId(), this);
+                if (accepted) {
+                    System.out.println("Detaching spectator " + v.getClientId()
+                            + " from upstream game " + gameId + " slot " + slot);
+                } else {
+                    // same outcome as a failed attach on a game server
+                    v.session().abort("upstream refused game " + gameId + " slot " + slot);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package serverJava;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed-timestep loop that runs the server's periodic work as ordered phases
+ * on one thread ({@code server-tick}).
+ * <p>
+ * <b>Timing.</b> Tick {@code n} is due at {@code start + n * period}. Deadlines
+ * are absolute, so oversleeping or a slow tick never shifts later ticks: the
+ * loop simply sleeps less until it is back on schedule. After a long stall
+ * (more than {@link #MAX_CATCH_UP} periods behind, e.g. a GC pause) the
+ * missed ticks are skipped and counted instead of being run in a burst.
+ * A phase that runs every N ticks keeps its own next due tick, so a skip
+ * past that tick runs it on the first tick after the stall instead of
+ * waiting a whole cycle.
+ * <p>
+ * <b>Budgets.</b> Each tick may spend {@code budgetPct}% of its period on
+ * work. Every phase has its own budget too; runs over either are counted. A
+ * deferrable phase that comes up after the tick budget is spent waits for the
+ * next tick that has time left, so low-priority upkeep gives way to
+ * per-tick work under load.
+ * <p>
+ * Phases are registered before {@link #start()}. {@link #post} hands work to
+ * the loop from any thread; it runs in the next tick, before every phase.
+ * The clock is injectable, and {@link #runDueTick()} is one step of the loop,
+ * so tests drive the engine on simulated time.
+ */
+final class TickEngine {
+
+    /** Ticks the loop may fall behind before skipping ahead. */
+    static final int MAX_CATCH_UP = 4;
+
+    private final int hz;
+    private final long periodNanos;
+    private final long budgetNanos;
+    private final List<Phase> phases = new ArrayList<>();
+    private final Queue<Runnable> posted = new ConcurrentLinkedQueue<>();
+    private final Phase postedPhase;
+
+    private final LongSupplier clock;
+    private volatile boolean running;
+    private Thread thread;
+    // Tick thread only: number and deadline of the next tick.
+    private long tick;
+    private long next;
+
+    // Written by the tick thread only, read by printStats from the console thread.
+    private volatile long ticks; // ticks run (skipped ones excluded)
+    private volatile long lateTicks, skippedTicks, overruns;
+    private volatile long maxLateNanos, maxWorkNanos, totalWorkNanos;
+
+    private static final class Phase {
+        final String name;
+        final int everyTicks;
+        final long budgetNanos;
+        final boolean deferrable;
+        final Runnable task;
+        // Tick thread only.
+        boolean pending;
+        long nextDue;
+        // Written by the tick thread, read by printStats.
+        volatile long runs, totalNanos, maxNanos, overBudget, deferred;
+
+        Phase(String name, int everyTicks, long budgetNanos, boolean deferrable, Runnable task) {
+            this.name = name;
+            this.everyTicks = Math.max(1, everyTicks);
+            this.budgetNanos = budgetNanos;
+            this.deferrable = deferrable;
+            this.task = task;
+        }
+    }
+
+    /**
+     * @param hz        ticks per second
+     * @param budgetPct share of each period the phases may use, in percent
+     */
+    TickEngine(int hz, int budgetPct) {
+        this(hz, budgetPct, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of {@link System#nanoTime()}-like readings
+     */
+    TickEngine(int hz, int budgetPct, LongSupplier clock) {
+        this.clock = clock;
+        this.next = clock.getAsLong();
+        this.hz = Math.max(1, hz);
+        this.periodNanos = 1_000_000_000L / this.hz;
+        this.budgetNanos = periodNanos * Math.max(1, Math.min(100, budgetPct)) / 100;
+        this.postedPhase = new Phase("posted", 1, budgetNanos / 4, false, this::runPosted);
+    }
+
+    /** @return ticks per second. */
+    int hz() {
+        return hz;
+    }
+
+    /** @return number of ticks in {@code millis} milliseconds, at least 1. */
+    int ticksIn(long millis) {
+        return (int) Math.max(1, millis * hz / 1000);
+    }
+
+    /**
+     * Adds a phase; phases run in the order they were added.
+     *
+     * @param everyTicks   run on every Nth tick
+     * @param budgetMicros time the phase should stay under
+     * @param deferrable   may wait for a later tick when the tick budget is spent
+     */
+    void addPhase(String name, int everyTicks, long budgetMicros, boolean deferrable, Runnable task) {
+        if (thread != null) throw new IllegalStateException("phases must be added before start()");
+        phases.add(new Phase(name, everyTicks, budgetMicros * 1000, deferrable, task));
+    }
+
+    /** Runs {@code task} on the tick thread at the start of the next tick. */
+    void post(Runnable task) {
+        posted.add(task);
+    }
+
+    void start() {
+        next = clock.getAsLong();
+        running = true;
+        thread = Thread.ofPlatform().name("server-tick").daemon(true).start(this::loop);
+    }
+
+    void stop() {
+        running = false;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    private void loop() {
+        while (running) {
+            long wait = runDueTick();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * Runs the next tick if it is due. Tick thread only (or a test driving
+     * the engine in place of {@link #start()}).
+     *
+     * @return nanoseconds until the next tick is due, or 0 if a tick ran
+     */
+    long runDueTick() {
+        long now = clock.getAsLong();
+        long late = now - next;
+        if (late < 0) return -late;
+        if (late >= periodNanos * MAX_CATCH_UP) {
+            long missed = late / periodNanos;
+            skippedTicks += missed;
+            tick += missed;
+            next += missed * periodNanos;
+            late -= missed * periodNanos;
+        }
+        if (late >= periodNanos) lateTicks++;
+        maxLateNanos = Math.max(maxLateNanos, late);
+
+        runTick(tick, now);
+        long work = clock.getAsLong() - now;
+        totalWorkNanos += work;
+        maxWorkNanos = Math.max(maxWorkNanos, work);
+        if (work > budgetNanos) overruns++;
+
+        tick++;
+        ticks++;
+        next += periodNanos;
+        return 0;
+    }
+
+    private void runTick(long tick, long start) {
+        runPhase(postedPhase);
+        for (Phase p : phases) {
+            if (tick >= p.nextDue) {
+                // >= rather than ==: a catch-up skip may have jumped past the due tick.
+                p.pending = true;
+                p.nextDue = (tick / p.everyTicks + 1) * p.everyTicks;
+            }
+            if (!p.pending) continue;
+            if (p.deferrable && clock.getAsLong() - start > budgetNanos) {
+                p.deferred++;
+                continue;
+            }
+            p.pending = false;
+            runPhase(p);
+        }
+    }
+
+    private void runPhase(Phase p) {
+        long t0 = clock.getAsLong();
+        try {
+            p.task.run();
+        } catch (RuntimeException e) {
+            System.err.println("Tick phase " + p.name + " failed: " + e);
+        }
+        long spent = clock.getAsLong() - t0;
+        p.runs++;
+        p.totalNanos += spent;
+        p.maxNanos = Math.max(p.maxNanos, spent);
+        if (spent > p.budgetNanos) p.overBudget++;
+    }
+
+    // Only what was queued when the tick began, so a task that posts again waits a tick.
+    private void runPosted() {
+        for (int n = posted.size(); n > 0; n--) {
+            Runnable task = posted.poll();
+            if (task == null) break;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Posted tick task failed: " + e);
+            }
+        }
+    }
+
+    void printStats() {
+        long n = ticks;
+        System.out.printf("  tick: hz=%d ticks=%d late=%d skipped=%d overBudget=%d (budget %dus) avgWork=%.1fus maxWork=%dus maxLate=%dus%n",
+                hz, n, lateTicks, skippedTicks, overruns, budgetNanos / 1000,
+                n == 0 ? 0.0 : totalWorkNanos / 1000.0 / n, maxWorkNanos / 1000, maxLateNanos / 1000);
+        printPhase(postedPhase);
+        for (Phase p : phases) printPhase(p);
+    }
+
+    private static void printPhase(Phase p) {
+        System.out.printf("    %-10s every=%-4d runs=%d avg=%.1fus max=%dus overBudget=%d (budget %dus) deferred=%d%n",
+                p.name, p.everyTicks, p.runs, p.runs == 0 ? 0.0 : p.totalNanos / 1000.0 / p.runs,
+                p.maxNanos / 1000, p.overBudget, p.budgetNanos / 1000, p.deferred);
+    }
+}
@@ -0,0 +1,242 @@
+package serverJava;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import MessageManagement.FrameCodec;
+import MessageManagement.FrameDecoder;
+import MessageManagement.Proto;
+import MessageManagement.Session;
+import Utils.MsgType;
+
+/**
+ * Optional datagram path for the two 60 Hz streams where only the newest
+ * message matters: PLAYER_PROPOSED (client to server) and SPECTATOR_STATE
+ * (server to spectator). A lost datagram is simply superseded by the next
+ * one instead of holding up every later state the way a lost TCP segment
+ * does. Everything else stays on the client's TCP connection.
+ * <p>
+ * <b>Negotiation.</b> After INIT_STATIC every client gets a UDP_OFFER over TCP
+ * (u16 port, u32 token). A client that wants the fast path sends UDP_HELLO
+ * with that token from its datagram socket; the server binds the source
+ * address to the client and echoes the HELLO back, which tells the client
+ * the path works. Clients that never answer keep using TCP only.
+ * <p>
+ * <b>Datagrams.</b> One frame per datagram, same 16-byte header as TCP.
+ * PLAYER_PROPOSED goes through the same handler as over TCP, which orders
+ * both transports by the frame's {@code tick} field (see
+ * {@link Session#acceptProposedTick}): anything not newer than the last
+ * accepted tick is dropped, whichever path it took. SPECTATOR_STATE carries a
+ * per-spectator u16 sequence number in the header's reserved field so
+ * spectators can drop stale or duplicated states; UDP spectators always get
+ * full entity lists, since a delta's baseline may be lost.
+ * <p>
+ * The channel is non-blocking: the receiver thread waits on its own
+ * selector, and senders stage frames in the spectator's own buffer (see
+ * {@link ClientHandler#claimUdpOut}), so no sender ever waits for another.
+ * <p>
+ * <b>Limit.</b> There is one receiver thread ({@code udp-recv}) for the whole
+ * server, and it runs each datagram's PLAYER_PROPOSED handler itself: move
+ * validation and the spectator fan-out of every UDP player in every room
+ * happen on it, one after another. That is the same work a TCP player's
+ * session thread does per frame, but here it is serialized; with many busy
+ * rooms and large spectator groups the receiver falls behind and the socket
+ * buffer starts dropping datagrams (newer ones supersede them, so players see
+ * coarser updates rather than stale ones). Such servers are better off
+ * without {@code --udp}, or with the spectators on a {@link SpectatorRelay}.
+ */
+final class UdpChannel implements Runnable {
+
+    private static final int MAX_DATAGRAM = 64 * 1024;
+
+    private final GameServer server;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final int port;
+
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<Integer, ClientHandler> byToken = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<SocketAddress, ClientHandler> byPeer = new ConcurrentHashMap<>();
+
+    // Receive side: owned by the receiver thread. Heap buffer so the decoder reads it in place.
+    private final ByteBuffer in = ByteBuffer.allocate(MAX_DATAGRAM);
+    private final FrameDecoder decoder = new FrameDecoder(MAX_DATAGRAM - Proto.HEADER_LEN);
+
+    private final AtomicLong received  = new AtomicLong();
+    private final AtomicLong unbound   = new AtomicLong();
+    private final AtomicLong sent      = new AtomicLong();
+    private final AtomicLong sendDrops = new AtomicLong();
+
+    /**
+     * @param server game server whose handlers process inbound datagrams
+     * @param port   UDP port to bind (the TCP port number by convention)
+     * @throws IOException if the port cannot be bound
+     */
+    UdpChannel(GameServer server, int port) throws IOException {
+        this.server  = server;
+        this.port    = port;
+        this.channel = DatagramChannel.open();
+        this.channel.configureBlocking(false);
+        this.channel.bind(new InetSocketAddress(port));
+        this.selector = Selector.open();
+        this.channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /** Starts the receiver thread. */
+    void start() {
+        Thread t = new Thread(this, "udp-recv");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("UDP fast path on port " + port);
+    }
+
+    /**
+     * Sends UDP_OFFER to a freshly connected client over its TCP session.
+     */
+    void offer(ClientHandler h) {
+        int token;
+        do {
+            token = random.nextInt();
+        } while (token == 0 || byToken.putIfAbsent(token, h) != null);
+        h.setUdpToken(token);
+
+        byte[] frame = new byte[Proto.HEADER_LEN + 6];
+        ByteBuffer buf = ByteBuffer.wrap(frame);
+        int at = FrameCodec.putHeader(buf, 0, MsgType.UDP_OFFER, h.getClientId(), 0, 6);
+        at = FrameCodec.putU16(buf, at, port);
+        buf.putInt(at, token);
+        h.session().send(frame);
+    }
+
+    /** Forgets a disconnected client's token and address. */
+    void forget(ClientHandler h) {
+        byToken.remove(h.udpToken(), h);
+        SocketAddress peer = h.udpPeer();
+        if (peer != null) byPeer.remove(peer, h);
+    }
+
+    /**
+     * Sends a SPECTATOR_STATE frame to a spectator bound to the fast path,
+     * stamping its id, game and next sequence number. Never blocks: if the socket
+     * buffer is full, or another state for the same spectator is going out right
+     * now, the state is dropped; the next one supersedes it.
+     *
+     * @param frame shared frame from the spectator feed (not modified)
+     */
+    void sendState(ClientHandler spec, SocketAddress peer, byte[] frame) {
+        ByteBuffer out = spec.claimUdpOut(frame.length);
+        if (out == null) {
+            sendDrops.incrementAndGet();
+            return;
+        }
+        try {
+            out.put(frame);
+            out.putShort(2, (short) spec.nextUdpSeq());
+            out.putInt(Session.DEST_ID_OFFSET, spec.getClientId());
+            out.putInt(Session.GAME_ID_OFFSET, spec.session().gameId());
+            out.flip();
+            if (channel.send(out, peer) == 0) {
+                sendDrops.incrementAndGet();
+            } else {
+                sent.incrementAndGet();
+            }
+        } catch (IOException e) {
+            sendDrops.incrementAndGet();
+        } finally {
+            spec.releaseUdpOut();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (channel.isOpen()) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+            } catch (IOException e) {
+                System.out.println("UDP selector failed: " + e.getMessage());
+                return;
+            }
+            // Drain everything queued: one wakeup may cover many datagrams.
+            while (true) {
+                SocketAddress from;
+                try {
+                    in.clear();
+                    from = channel.receive(in);
+                } catch (IOException e) {
+                    System.out.println("UDP receive failed: " + e.getMessage());
+                    break;
+                }
+                if (from == null) break;
+                onDatagram(from);
+            }
+        }
+    }
+
+    private void onDatagram(SocketAddress from) {
+        int n = in.position();
+        if (n < Proto.HEADER_LEN || in.get(0) != Proto.VERSION
+                || in.getInt(12) != n - Proto.HEADER_LEN) {
+            return; // not one whole frame
+        }
+        received.incrementAndGet();
+
+        byte type = in.get(1);
+        if (type == MsgType.UDP_HELLO) {
+            onHello(from, n);
+        } else if (type == MsgType.PLAYER_PROPOSED) {
+            onProposed(from, n);
+        }
+        // anything else belongs on TCP
+    }
+
+    private void onHello(SocketAddress from, int n) {
+        if (n < Proto.HEADER_LEN + 4) return;
+        ClientHandler h = byToken.get(in.getInt(Proto.HEADER_LEN));
+        if (h == null) {
+            unbound.incrementAndGet();
+            return;
+        }
+        SocketAddress old = h.udpPeer();
+        if (!from.equals(old)) {
+            if (old != null) byPeer.remove(old, h);
+            byPeer.put(from, h);
+            h.bindUdp(from);
+            h.log("UDP fast path bound to " + from);
+        }
+        // Echo so the client knows datagrams get through both ways.
+        in.flip();
+        try {
+            channel.send(in, from);
+        } catch (IOException ignore) {}
+    }
+
+    private void onProposed(SocketAddress from, int n) {
+        ClientHandler h = byPeer.get(from);
+        if (h == null) {
+            unbound.incrementAndGet();
+            return;
+        }
+        // Own decoder: the handler's belongs to its TCP reader.
+        try {
+            decoder.wrap(in.array(), 0);
+            server.answers().processFrame(decoder, h.session());
+        } catch (IOException e) {
+            h.log("UDP frame rejected: " + e.getMessage());
+        }
+    }
+
+    /** Prints datagram counters for the admin {@code stats} command. */
+    void printStats() {
+        System.out.printf("  udp: received=%d unbound=%d sent=%d sendDrops=%d peers=%d%n",
+                received.get(), unbound.get(), sent.get(), sendDrops.get(), byPeer.size());
+    }
+}
@@ -0,0 +1,257 @@
+package MessageManagement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import Messages.OutboundMessage;
+import Messages.factories.CrocodileFactory;
+import Messages.factories.FruitFactory;
+import Utils.MsgType;
+import Utils.Rect;
+import serverJava.EntityStore;
+import serverJava.EntityStoreFixture;
+
+/**
+ * Checks that {@link FrameCodec} produces, byte for byte, the frames the
+ * {@link DataOutputStream} encoders produced before it (kept below as
+ * {@code ref*}, written with the {@link Proto} stream helpers).
+ * <p>
+ * Each message is encoded three times: into an exact-size heap buffer, into
+ * a direct buffer at a non-zero offset (the UDP path), and checked for the
+ * returned end index. Exits with status 1 on the first mismatch.
+ */
+public final class FrameCodecTest {
+
+    private static int checks;
+
+    public static void main(String[] args) {
+        Rect player = new Rect(10, 20, 30, 40);
+        List<Rect> platforms = List.of(new Rect(0, 500, 800, 20), new Rect(-5, 32767, 65535, 1));
+        List<Rect> vines = List.of(new Rect(100, 0, 8, 300));
+        EntityStore.Snapshot entities = EntityStoreFixture.snapshot(
+                new int[][] {{1, 100, 200}, {2, 0, 65535}},
+                new int[][] {{3, 40, 50}, {4, 60, 70}, {5, 80, 90}});
+        EntityStore.Entities crocs = entities.crocodiles(), fruits = entities.fruits();
+
+        check("INIT_STATIC", refInitStatic(7, player, platforms, vines, crocs, fruits),
+                FrameCodec.initStaticLength(platforms.size(), vines.size(), crocs.count(), fruits.count()),
+                (b, at) -> FrameCodec.putInitStatic(b, at, 7, player, platforms, vines, crocs, fruits));
+        check("INIT_STATIC empty", refInitStatic(7, player, List.of(), List.of(),
+                        EntityStore.Snapshot.EMPTY.crocodiles(), EntityStore.Snapshot.EMPTY.fruits()),
+                FrameCodec.initStaticLength(0, 0, 0, 0),
+                (b, at) -> FrameCodec.putInitStatic(b, at, 7, player, List.of(), List.of(),
+                        EntityStore.Snapshot.EMPTY.crocodiles(), EntityStore.Snapshot.EMPTY.fruits()));
+
+        OutboundMessage croc = new CrocodileFactory().spawn((byte) 1, 300, 400);
+        OutboundMessage fruit = new FruitFactory().spawn((byte) 2, -1, 65535);
+        for (OutboundMessage m : List.of(croc, fruit)) {
+            check("SPAWN type " + m.type(), refFrame(m.type(), 9, m.payload()),
+                    Proto.HEADER_LEN + m.payload().length,
+                    (b, at) -> FrameCodec.putMessage(b, at, m.type(), 9, m.payload()));
+        }
+
+        check("REMOVE_FRUIT", refRemoveFruit(3, 0x1234, -2), FrameCodec.REMOVE_FRUIT_LEN,
+                (b, at) -> FrameCodec.putRemoveFruit(b, at, 3, 0x1234, -2));
+        for (byte type : new byte[] {MsgType.PLAYER_RESPAWN, MsgType.PLAYER_GAME_OVER, MsgType.RESPAWN_VICTORY,
+                                     MsgType.CROC_SPEED_INCREASE, MsgType.GAME_RESTART}) {
+            check("EMPTY type " + type, refEmpty(type, 4), FrameCodec.EMPTY_LEN,
+                    (b, at) -> FrameCodec.putEmpty(b, at, type, 4));
+        }
+        check("LIVES_UPDATE", refLivesUpdate(5, (byte) -1), FrameCodec.LIVES_UPDATE_LEN,
+                (b, at) -> FrameCodec.putLivesUpdate(b, at, 5, (byte) -1));
+        check("SCORE_UPDATE", refScoreUpdate(5, 0x7FFF_ABCD), FrameCodec.SCORE_UPDATE_LEN,
+                (b, at) -> FrameCodec.putScoreUpdate(b, at, 5, 0x7FFF_ABCD));
+        check("CLIENT_ACK", refClientAck(6, 42, 2, 1, 255), FrameCodec.CLIENT_ACK_LEN,
+                (b, at) -> FrameCodec.putClientAck(b, at, 6, 42, (byte) 2, 1, 255));
+
+        byte[] tlv = {0, 0, MsgType.TLV_ENTITIES_CORR, 0, 3, 1, 2, 3, 0};
+        check("SPECTATOR_STATE", refSpectatorState((short) 1, (short) -2, (short) 3, (short) -4, (byte) 5, tlv, 2, 6),
+                FrameCodec.SPECTATOR_STATE_LEN + 6,
+                (b, at) -> FrameCodec.putSpectatorState(b, at, 0, (short) 1, (short) -2, (short) 3, (short) -4,
+                        (byte) 5, tlv, 2, 6));
+        check("SPECTATOR_STATE no TLV", refSpectatorState((short) 1, (short) 2, (short) 0, (short) 0, (byte) 0, null, 0, 0),
+                FrameCodec.SPECTATOR_STATE_LEN,
+                (b, at) -> FrameCodec.putSpectatorState(b, at, 0, (short) 1, (short) 2, (short) 0, (short) 0,
+                        (byte) 0, null, 0, 0));
+
+        byte[] ents = new byte[1 + 4 * 6];
+        for (int i = 0; i < ents.length; i++) ents[i] = (byte) (i * 7);
+        int[] changed = {0, 2, 3, 99};
+        check("SPECTATOR_STATE delta", refSpectatorDelta((short) 9, (short) 8, (short) 7, (short) 6, (byte) 1,
+                        ents, 1, 4, changed, 3),
+                FrameCodec.SPECTATOR_STATE_LEN + 5 + 7 * 3,
+                (b, at) -> FrameCodec.putSpectatorDelta(b, at, 0, (short) 9, (short) 8, (short) 7, (short) 6,
+                        (byte) 1, ents, 1, 4, changed, 3));
+
+        // The Messenger wrappers shared by every spectator go through the same code.
+        same("Messenger.encodeSpectatorState",
+                refSpectatorState((short) 1, (short) -2, (short) 3, (short) -4, (byte) 5, tlv, 2, 6),
+                Messenger.encodeSpectatorState((short) 1, (short) -2, (short) 3, (short) -4, (byte) 5, tlv, 2, 6));
+        same("Messenger.encodeSpectatorDelta",
+                refSpectatorDelta((short) 9, (short) 8, (short) 7, (short) 6, (byte) 1, ents, 1, 4, changed, 3),
+                Messenger.encodeSpectatorDelta((short) 9, (short) 8, (short) 7, (short) 6, (byte) 1, ents, 1, 4, changed, 3));
+
+        byte[] rawTlv = {1, 2, 3};
+        same("StateBundle", refStateBundle(MsgType.LIVES_UPDATE, rawTlv),
+                new StateBundle().event(MsgType.LIVES_UPDATE, rawTlv).toFrame());
+
+        System.out.println("FrameCodecTest: " + checks + " checks passed");
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        int put(ByteBuffer buf, int at);
+    }
+
+    private static void check(String name, byte[] expected, int declaredLen, Encoder encoder) {
+        if (declaredLen != expected.length) {
+            fail(name, "declared length " + declaredLen + ", reference frame is " + expected.length);
+        }
+
+        ByteBuffer heap = ByteBuffer.allocate(expected.length);
+        int end = encoder.put(heap, 0);
+        if (end != expected.length) fail(name, "heap: returned " + end + ", expected " + expected.length);
+        same(name + " (heap)", expected, heap.array());
+
+        // Direct buffer, frame written after a 5-byte prefix that must stay untouched.
+        int at = 5;
+        ByteBuffer direct = ByteBuffer.allocateDirect(at + expected.length + 3);
+        for (int i = 0; i < direct.capacity(); i++) direct.put(i, (byte) 0x5A);
+        end = encoder.put(direct, at);
+        if (end != at + expected.length) fail(name, "direct: returned " + end + ", expected " + (at + expected.length));
+        if (direct.position() != 0 || direct.limit() != direct.capacity()) fail(name, "position or limit moved");
+        byte[] all = new byte[direct.capacity()];
+        direct.get(0, all);
+        same(name + " (direct)", expected, Arrays.copyOfRange(all, at, end));
+        for (int i = 0; i < all.length; i++) {
+            if ((i < at || i >= end) && all[i] != 0x5A) fail(name, "wrote outside the frame at " + i);
+        }
+    }
+
+    private static void same(String name, byte[] expected, byte[] actual) {
+        checks++;
+        if (!Arrays.equals(expected, actual)) {
+            fail(name, "\n  expected " + Arrays.toString(expected) + "\n  actual   " + Arrays.toString(actual));
+        }
+    }
+
+    private static void fail(String name, String why) {
+        System.out.println("FAIL " + name + ": " + why);
+        System.exit(1);
+    }
+
+    // ---- Reference encoders: the stream-based code FrameCodec replaced ----
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] stream(Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            body.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] refInitStatic(int dest, Rect player, List<Rect> platforms, List<Rect> vines,
+                                        EntityStore.Entities crocs, EntityStore.Entities fruits) {
+        int payloadLen = 8 + 2 + platforms.size() * 8 + 2 + vines.size() * 8
+                       + 2 + crocs.count() * 8 + 2 + fruits.count() * 8;
+        return stream(out -> {
+            Proto.writeHeader(out, MsgType.INIT_STATIC, dest, 0, payloadLen);
+            Proto.writeRect(out, player);
+            Proto.writeU16(out, platforms.size()); for (Rect r : platforms) Proto.writeRect(out, r);
+            Proto.writeU16(out, vines.size());     for (Rect r : vines)     Proto.writeRect(out, r);
+            for (EntityStore.Entities e : List.of(crocs, fruits)) {
+                Proto.writeU16(out, e.count());
+                for (int i = 0; i < e.count(); i++) {
+                    Proto.writeU16(out, e.x(i));
+                    Proto.writeU16(out, e.y(i));
+                    Proto.writeU16(out, EntityStore.ENTITY_SIZE);
+                    Proto.writeU16(out, EntityStore.ENTITY_SIZE);
+                }
+            }
+        });
+    }
+
+    private static byte[] refFrame(byte type, int dest, byte[] payload) {
+        return stream(out -> {
+            Proto.writeHeader(out, type, dest, 0, payload.length);
+            out.write(payload);
+        });
+    }
+
+    private static byte[] refRemoveFruit(int dest, int x, int y) {
+        return refFrame(MsgType.REMOVE_FRUIT, dest, new byte[] {(byte) (x >> 8), (byte) x, (byte) (y >> 8), (byte) y});
+    }
+
+    private static byte[] refEmpty(byte type, int dest) {
+        return stream(out -> Proto.writeHeader(out, type, dest, 0, 0));
+    }
+
+    private static byte[] refLivesUpdate(int dest, byte lives) {
+        return stream(out -> {
+            Proto.writeHeader(out, MsgType.LIVES_UPDATE, dest, 0, 1);
+            out.writeByte(lives);
+        });
+    }
+
+    private static byte[] refScoreUpdate(int dest, int score) {
+        return stream(out -> {
+            Proto.writeHeader(out, MsgType.SCORE_UPDATE, dest, 0, 4);
+            out.writeInt(score);
+        });
+    }
+
+    private static byte[] refClientAck(int dest, int gameId, int role, int slot1, int slot2) {
+        return stream(out -> {
+            Proto.writeHeader(out, MsgType.CLIENT_ACK, dest, gameId, 3);
+            out.writeByte(role);
+            out.writeByte(slot1);
+            out.writeByte(slot2);
+        });
+    }
+
+    private static byte[] refSpectatorState(short x, short y, short vx, short vy, byte flags,
+                                            byte[] tlv, int tlvOff, int tlvLen) {
+        return stream(out -> {
+            Proto.writeHeader(out, MsgType.SPECTATOR_STATE, 0, 0, 9 + tlvLen);
+            out.writeShort(x); out.writeShort(y); out.writeShort(vx); out.writeShort(vy);
+            out.writeByte(flags);
+            if (tlvLen > 0) out.write(tlv, tlvOff, tlvLen);
+        });
+    }
+
+    private static byte[] refSpectatorDelta(short x, short y, short vx, short vy, byte flags,
+                                            byte[] ents, int entsOff, int count, int[] changed, int nChanged) {
+        int valueLen = 2 + nChanged * 7;
+        return stream(out -> {
+            Proto.writeHeader(out, MsgType.SPECTATOR_STATE, 0, 0, 9 + 3 + valueLen);
+            out.writeShort(x); out.writeShort(y); out.writeShort(vx); out.writeShort(vy);
+            out.writeByte(flags);
+            out.writeByte(MsgType.TLV_ENTITIES_DELTA);
+            out.writeShort(valueLen);
+            out.writeByte(count);
+            out.writeByte(nChanged);
+            for (int i = 0; i < nChanged; i++) {
+                out.writeByte(changed[i]);
+                out.write(ents, entsOff + changed[i] * 6, 6);
+            }
+        });
+    }
+
+    private static byte[] refStateBundle(byte tlvType, byte[] value) {
+        return stream(out -> {
+            Proto.writeHeader(out, MsgType.STATE_BUNDLE, 0, 0, 3 + value.length);
+            Proto.writeTLV(out, tlvType, value);
+        });
+    }
+}
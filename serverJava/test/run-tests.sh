@@ -0,0 +1,25 @@
+#!/bin/bash
+# run-tests.sh
+# Compiles the server and the test tree, then runs every *Test class.
+# Benchmarks (*Bench) are not run here: start them by hand, e.g.
+#   java -cp "$OUT" MessageManagement.FrameCodecBench
+
+set -e
+
+TEST_DIR="$(cd "$(dirname "$0")" && pwd)"
+SRC_DIR="$(dirname "$TEST_DIR")"
+OUT="${OUT:-$(mktemp -d)}"
+
+echo "Compiling into $OUT..."
+javac -Xlint:all -encoding UTF-8 -d "$OUT" $(find "$SRC_DIR" -name '*.java')
+
+failed=0
+for test in $(cd "$TEST_DIR" && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g' | sort); do
+    echo "== $test"
+    if ! java -ea -cp "$OUT" "$test"; then
+        echo "FAILED: $test"
+        failed=1
+    fi
+done
+
+exit $failed
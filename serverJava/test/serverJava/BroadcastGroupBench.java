@@ -0,0 +1,205 @@
+package serverJava;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import MessageManagement.FrameCodec;
+import MessageManagement.Proto;
+import Utils.MsgType;
+
+/**
+ * Fan-out cost of one player's {@link BroadcastGroup} at 10, 100 and 1000
+ * viewers, through the real server: an in-process NIO {@link GameServer},
+ * one player sending PLAYER_PROPOSED at 60 Hz (10-entity TLV) plus a
+ * FRUIT_PICK every 10th tick, and N spectators on loopback drained by one
+ * selector thread. With {@code churn}, one more client keeps joining and
+ * leaving the same group during the run.
+ * <p>
+ * Usage: {@code java -cp OUT serverJava.BroadcastGroupBench [seconds per size] [churn]}.
+ * Reports the server's average handler time for PROPOSED (one
+ * SPECTATOR_STATE fan-out) and FRUIT_PICK (one HUD bundle fan-out), and the
+ * bytes each viewer received (min and max: a viewer that fell behind or was
+ * dropped shows up as a low min). On the 1-CPU build sandbox (JDK 21, 5 s):
+ * <pre>
+ * viewers  PROPOSED avg  FRUIT_PICK avg  per viewer  KB/viewer min..max  churn
+ *      10       137.3us         175.8us     13.73us      27.2..27.2          0
+ *     100       161.9us         153.0us      1.62us      27.2..27.2          0
+ *    1000       513.9us         433.0us      0.51us      26.9..26.9          0
+ * with churn:
+ *      10       121.0us         438.3us     12.10us      27.2..27.2        882
+ *     100       131.6us         123.6us      1.32us      27.2..27.2        965
+ *    1000       519.9us         423.9us      0.52us      26.6..26.6        356
+ * </pre>
+ * The 10-viewer row is mostly the fixed cost of decoding and encoding the
+ * frame, plus JIT warm-up (it runs first); past that the cost grows with the
+ * number of viewers, and churn on the same group does not slow broadcasts.
+ */
+public final class BroadcastGroupBench {
+
+    private static final int[] SIZES = {10, 100, 1000};
+
+    public static void main(String[] args) throws Exception {
+        int secs = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+        boolean churn = args.length > 1 && args[1].equals("churn");
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // the servers log every join and leave
+        console.println("viewers  PROPOSED avg  FRUIT_PICK avg  per viewer  KB/viewer min..max  churn");
+
+        int port = 47310;
+        for (int n : SIZES) {
+            GameServer server = new GameServer(ServerConfig.fromArgs(new String[] {
+                    String.valueOf(++port), "--nio", "--spectators-per-player=" + (n + 10)}));
+            Thread.ofPlatform().daemon(true).start(() -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(500);
+            Result r = run(port, n, secs, churn);
+
+            double proposed = avgMicros(server, MsgType.PLAYER_PROPOSED);
+            double pick = avgMicros(server, MsgType.NOTIFY_FRUIT_PICK);
+            console.printf("%7d  %10.1fus  %12.1fus  %8.2fus  %8.1f..%-8.1f  %5d%n",
+                    n, proposed, pick, proposed / n, r.minBytes / 1024.0, r.maxBytes / 1024.0, r.churned);
+        }
+    }
+
+    private record Result(long minBytes, long maxBytes, long churned) {}
+
+    private static Result run(int port, int n, int secs, boolean churn) throws Exception {
+        Socket player = new Socket("127.0.0.1", port);
+        player.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(player.getOutputStream()));
+        out.write(1);
+        out.flush();
+        Thread.ofPlatform().daemon(true).start(() -> {
+            try {
+                player.getInputStream().transferTo(OutputStream.nullOutputStream());
+            } catch (IOException ignore) {}
+        });
+        Thread.sleep(200);
+
+        Selector selector = Selector.open();
+        List<SocketChannel> viewers = new ArrayList<>();
+        long[] bytes = new long[n];
+        for (int i = 0; i < n; i++) {
+            SocketChannel ch = spectator(port);
+            ch.configureBlocking(false);
+            ch.register(selector, SelectionKey.OP_READ, i);
+            viewers.add(ch);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = Thread.ofPlatform().start(() -> {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+            try {
+                while (running.get()) {
+                    selector.select(100);
+                    for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                        SelectionKey k = it.next();
+                        it.remove();
+                        buf.clear();
+                        int read = ((SocketChannel) k.channel()).read(buf);
+                        if (read < 0) k.cancel();
+                        else bytes[(Integer) k.attachment()] += read;
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        long[] churned = new long[1];
+        Thread churner = Thread.ofPlatform().unstarted(() -> {
+            while (running.get()) {
+                try {
+                    SocketChannel c = spectator(port);
+                    Thread.sleep(5);
+                    c.close();
+                    churned[0]++;
+                } catch (Exception ignore) {}
+            }
+        });
+        if (churn) churner.start();
+
+        // PLAYER_PROPOSED: tick, x, y, vx, vy, flags, then a 10-entity TLV.
+        byte[] proposed = new byte[13 + 3 + 1 + 60];
+        proposed[13] = MsgType.TLV_ENTITIES_CORR;
+        proposed[15] = 61;
+        proposed[16] = 10;
+        long start = System.nanoTime();
+        int tick = 0;
+        while (System.nanoTime() - start < secs * 1_000_000_000L) {
+            proposed[3] = (byte) tick;
+            proposed[5] = (byte) tick;
+            proposed[17 + (tick % 10) * 6 + 3] = (byte) tick;
+            out.write(frame(MsgType.PLAYER_PROPOSED, proposed));
+            if (tick % 10 == 0) out.write(frame(MsgType.NOTIFY_FRUIT_PICK, new byte[] {0, 10, 0, 20}));
+            out.flush();
+            tick++;
+            long wait = start + tick * 16_666_667L - System.nanoTime();
+            if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+        Thread.sleep(500);
+        running.set(false);
+        reader.join();
+        if (churn) churner.join();
+
+        for (SocketChannel ch : viewers) ch.close();
+        player.close();
+        long min = Long.MAX_VALUE, max = 0;
+        for (long b : bytes) {
+            min = Math.min(min, b);
+            max = Math.max(max, b);
+        }
+        return new Result(min, max, churned[0]);
+    }
+
+    private static SocketChannel spectator(int port) throws IOException {
+        SocketChannel ch = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+        ch.write(ByteBuffer.wrap(new byte[] {2}));
+        ByteBuffer ack = ByteBuffer.allocate(FrameCodec.CLIENT_ACK_LEN);
+        while (ack.hasRemaining()) {
+            if (ch.read(ack) < 0) throw new EOFException("closed during handshake");
+        }
+        if (ack.get(Proto.HEADER_LEN) != 2) {
+            ch.close();
+            throw new IOException("refused");
+        }
+        ch.write(ByteBuffer.wrap(frame(MsgType.SPECTATE_REQUEST, new byte[] {1, 0})));
+        return ch;
+    }
+
+    private static byte[] frame(byte type, byte[] payload) {
+        return ByteBuffer.allocate(Proto.HEADER_LEN + payload.length)
+                .put(Proto.VERSION).put(type).putShort((short) 0)
+                .putInt(0).putInt(0).putInt(payload.length).put(payload).array();
+    }
+
+    /** @return average handler time of one message type, parsed from the admin {@code stats} lines. */
+    private static double avgMicros(GameServer server, byte type) {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        server.messages().printStats(new PrintStream(text));
+        Matcher m = Pattern.compile(String.format("0x%02x \\S+ +calls=\\d+ avg=([0-9.]+)us", type)).matcher(text.toString());
+        return m.find() ? Double.parseDouble(m.group(1)) : Double.NaN;
+    }
+}
@@ -0,0 +1,23 @@
+package serverJava;
+
+/**
+ * Lets tests outside this package build an {@link EntityStore} with known
+ * contents; the store's mutators are package-private.
+ */
+public final class EntityStoreFixture {
+
+    private EntityStoreFixture() { /* no instances */ }
+
+    /**
+     * @param crocodiles {variant, x, y} per crocodile
+     * @param fruits     {variant, x, y} per fruit
+     * @return snapshot of a store holding exactly those entities
+     */
+    public static EntityStore.Snapshot snapshot(int[][] crocodiles, int[][] fruits) {
+        EntityStore store = new EntityStore();
+        for (int[] c : crocodiles) store.addCrocodile((byte) c[0], c[1], c[2]);
+        for (int[] f : fruits)     store.addFruit((byte) f[0], f[1], f[2]);
+        store.publishIfChanged(); // what the world phase does each tick
+        return store.snapshot();
+    }
+}
@@ -0,0 +1,227 @@
+package serverJava;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Concurrent spawns, fruit picks, crocodile cleanup and round resets on one
+ * room's {@link EntityStore}, with a tick thread publishing and readers
+ * checking every snapshot they load (the cleanup thread starts a new round
+ * whenever crocodiles pile up past {@value #ROUND_CROCODILES}):
+ * <ul>
+ *   <li>epochs never go back;</li>
+ *   <li>every entity is one a writer could have put there (known fruit
+ *       coordinates, crocodile variant), with at most one fruit per coordinate.</li>
+ * </ul>
+ * Then, once quiet: cleanup leaves no crocodile below the screen, picking
+ * every fruit leaves none, concurrent adds and removes all land, and
+ * {@link EntityStore#snapshot()} answers while a writer holds the store.
+ * Exits with status 1 on the first failure.
+ */
+public final class EntityStoreStressTest {
+
+    private static final int SPAWNERS = 4, PICKERS = 4, READERS = 3;
+    private static final int FRUITS_PER_SPAWNER = 50;
+    private static final int ROUND_CROCODILES = 2000;
+    private static final byte FRUIT = 1, CROC = 2;
+
+    public static void main(String[] args) throws Exception {
+        long millis = (args.length > 0) ? Long.parseLong(args[0]) : 1500;
+        Room room = new Room(1, 2);
+        EntityStore store = room.entities();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicLong spawns = new AtomicLong(), picks = new AtomicLong(), resets = new AtomicLong();
+        AtomicLong reads = new AtomicLong(), publishes = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < SPAWNERS; t++) {
+            int id = t;
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                for (int i = 0; running.get(); i++) {
+                    room.addFruit(FRUIT, fruitX(id, i), fruitY(i));
+                    room.addCrocodile(CROC, id, r.nextInt(300));
+                    spawns.incrementAndGet();
+                }
+            }, "spawner-" + t));
+        }
+        for (int t = 0; t < PICKERS; t++) {
+            int id = t % SPAWNERS;
+            threads.add(new Thread(() -> {
+                for (int i = 0; running.get(); i++) {
+                    room.removeFruitAt(fruitX(id, i), fruitY(i));
+                    picks.incrementAndGet();
+                }
+            }, "picker-" + t));
+        }
+        threads.add(new Thread(() -> {
+            while (running.get()) {
+                room.cleanupOffScreenCrocodiles();
+                if (store.snapshot().crocodiles().count() > ROUND_CROCODILES) {
+                    room.clearEntitiesForNewRound();
+                    resets.incrementAndGet();
+                }
+            }
+        }, "cleanup"));
+        threads.add(new Thread(() -> {
+            while (running.get()) {
+                store.publishIfChanged();
+                publishes.incrementAndGet();
+                Thread.onSpinWait();
+            }
+        }, "tick"));
+        for (int t = 0; t < READERS; t++) {
+            threads.add(new Thread(() -> {
+                long last = -1;
+                while (running.get()) {
+                    EntityStore.Snapshot s = store.snapshot();
+                    String why = inconsistency(s, last);
+                    if (why != null) failure.compareAndSet(null, why);
+                    last = s.epoch();
+                    reads.incrementAndGet();
+                }
+            }, "reader-" + t));
+        }
+
+        threads.forEach(Thread::start);
+        Thread.sleep(millis);
+        running.set(false);
+        for (Thread t : threads) t.join();
+        if (failure.get() != null) fail(failure.get());
+
+        // Quiet: cleanup then a tick leaves nothing below the screen.
+        room.cleanupOffScreenCrocodiles();
+        store.publishIfChanged();
+        EntityStore.Entities crocs = store.snapshot().crocodiles();
+        for (int i = 0; i < crocs.count(); i++) {
+            if (crocs.y(i) > 240) fail("crocodile at y=" + crocs.y(i) + " survived cleanup");
+        }
+        // Picking every coordinate any spawner used leaves no fruit.
+        for (int id = 0; id < SPAWNERS; id++) {
+            for (int i = 0; i < FRUITS_PER_SPAWNER; i++) room.removeFruitAt(fruitX(id, i), fruitY(i));
+        }
+        store.publishIfChanged();
+        if (store.snapshot().fruits().count() != 0) {
+            fail(store.snapshot().fruits().count() + " fruits left after picking them all");
+        }
+
+        concurrentAddsAndRemoves(room, store);
+        readsDoNotWaitForWriters(store);
+
+        System.out.printf("EntityStoreStressTest: spawns=%d picks=%d resets=%d publishes=%d reads=%d epoch=%d%n",
+                spawns.get(), picks.get(), resets.get(), publishes.get(), reads.get(), store.snapshot().epoch());
+    }
+
+    /** 8 threads add 500 distinct fruits and crocodiles each, then remove every fruit: nothing is lost. */
+    private static void concurrentAddsAndRemoves(Room room, EntityStore store) throws InterruptedException {
+        int threads = 8, each = 500;
+        room.clearEntitiesForNewRound();
+        long before = store.snapshot().epoch();
+        inParallel(threads, id -> {
+            for (int i = 0; i < each; i++) {
+                room.addFruit(FRUIT, 10_000 + id, i);
+                room.addCrocodile(CROC, id, i % 240);
+            }
+        });
+        store.publishIfChanged();
+        EntityStore.Snapshot s = store.snapshot();
+        if (s.fruits().count() != threads * each || s.crocodiles().count() != threads * each) {
+            fail("concurrent adds: expected " + threads * each + " of each, got "
+                    + s.fruits().count() + " fruits and " + s.crocodiles().count() + " crocodiles");
+        }
+        if (s.epoch() != before + 1) fail("one tick published " + (s.epoch() - before) + " epochs");
+
+        inParallel(threads, id -> {
+            for (int i = 0; i < each; i++) room.removeFruitAt(10_000 + id, i);
+        });
+        store.publishIfChanged();
+        if (store.snapshot().fruits().count() != 0) {
+            fail("concurrent removes left " + store.snapshot().fruits().count() + " fruits");
+        }
+    }
+
+    /** A reader loads the published snapshot even while a writer holds the store's lock. */
+    private static void readsDoNotWaitForWriters(EntityStore store) throws InterruptedException {
+        CountDownLatch read = new CountDownLatch(1);
+        store.lock.lock();
+        try {
+            Thread reader = new Thread(() -> {
+                store.snapshot();
+                read.countDown();
+            });
+            reader.start();
+            if (!read.await(2, TimeUnit.SECONDS)) fail("snapshot() blocked behind a writer");
+        } finally {
+            store.lock.unlock();
+        }
+    }
+
+    private interface Task {
+        void run(int id);
+    }
+
+    private static void inParallel(int n, Task task) throws InterruptedException {
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[n];
+        for (int t = 0; t < n; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.run(id);
+            });
+            threads[t].start();
+        }
+        go.countDown();
+        for (Thread t : threads) t.join();
+    }
+
+    private static int fruitX(int spawner, int i) {
+        return spawner * 1000 + i % FRUITS_PER_SPAWNER;
+    }
+
+    private static int fruitY(int i) {
+        return i % FRUITS_PER_SPAWNER;
+    }
+
+    /** @return why {@code s} could not have been published, or {@code null} if it is consistent */
+    private static String inconsistency(EntityStore.Snapshot s, long lastEpoch) {
+        if (s.epoch() < lastEpoch) return "epoch went back from " + lastEpoch + " to " + s.epoch();
+
+        EntityStore.Entities c = s.crocodiles();
+        for (int i = 0; i < c.count(); i++) {
+            if (c.variant(i) != CROC || c.x(i) >= SPAWNERS || c.y(i) >= 300) {
+                return "unknown crocodile at (" + c.x(i) + ", " + c.y(i) + ") variant " + c.variant(i);
+            }
+        }
+
+        EntityStore.Entities f = s.fruits();
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < f.count(); i++) {
+            int x = f.x(i), y = f.y(i);
+            if (f.variant(i) != FRUIT || x / 1000 >= SPAWNERS || x % 1000 != y || y >= FRUITS_PER_SPAWNER) {
+                return "unknown fruit at (" + x + ", " + y + ") variant " + f.variant(i);
+            }
+            if (!seen.add(x << 16 | y)) return "two fruits at (" + x + ", " + y + ")";
+        }
+        return null;
+    }
+
+    private static void fail(String why) {
+        System.out.println("FAIL " + why);
+        System.exit(1);
+    }
+}
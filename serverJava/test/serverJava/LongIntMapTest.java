@@ -0,0 +1,197 @@
+package serverJava;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@link LongIntMap} against {@link HashMap}:
+ * <ul>
+ *   <li>2M random put/get/remove (and the odd clear) over a small key space,
+ *       so most operations hit an existing key;</li>
+ *   <li>probe runs that wrap from the last slot of the table to the first,
+ *       with every removal order (backward-shift deletion must keep every
+ *       remaining key reachable);</li>
+ *   <li>growth from the smallest table to 100k keys and back;</li>
+ *   <li>{@link LongIntMap#key} packing of negative and large coordinates.</li>
+ * </ul>
+ * Exits with status 1 on the first failure.
+ */
+public final class LongIntMapTest {
+
+    // Keys handed out by keysHomedAt, so no set holds the same key twice.
+    private static final List<Long> usedKeys = new ArrayList<>();
+
+    public static void main(String[] args) {
+        int ops = (args.length > 0) ? Integer.parseInt(args[0]) : 2_000_000;
+        randomOps(ops);
+        int orders = wrapAround();
+        growth();
+        packing();
+        System.out.printf("LongIntMapTest: %d random ops, %d wrap-around removal orders, growth to 100000 keys passed%n",
+                ops, orders);
+    }
+
+    private static void randomOps(int ops) {
+        Random r = new Random(7);
+        LongIntMap map = new LongIntMap(4);
+        Map<Long, Integer> ref = new HashMap<>();
+        for (int n = 0; n < ops; n++) {
+            long key = LongIntMap.key(r.nextInt(64) - 32, r.nextInt(64) - 32);
+            int op = r.nextInt(100);
+            if (op < 45) {
+                int v = r.nextInt(1 << 20);
+                check(n, "put", map.put(key, v), ref.put(key, v));
+            } else if (op < 80) {
+                check(n, "remove", map.remove(key), ref.remove(key));
+            } else if (op < 99) {
+                check(n, "get", map.get(key), ref.get(key));
+            } else if (r.nextInt(1000) == 0) {
+                map.clear();
+                ref.clear();
+            }
+            if (map.size() != ref.size()) fail("op " + n + ": size " + map.size() + ", expected " + ref.size());
+            if (n % 100_000 == 0) sameContents(map, ref, "op " + n);
+        }
+        sameContents(map, ref, "end of random ops");
+    }
+
+    /**
+     * Four keys homed at the last slot of an 8-slot table fill slots 7, 0, 1
+     * and 2; mixed with keys homed at slots 0 and 1, removing them in every
+     * order must leave each remaining key reachable.
+     *
+     * @return removal orders checked
+     */
+    private static int wrapAround() {
+        List<long[]> sets = List.of(
+                concat(keysHomedAt(7, 8, 4)),
+                concat(keysHomedAt(7, 8, 2), keysHomedAt(0, 8, 1), keysHomedAt(7, 8, 1)),
+                concat(keysHomedAt(6, 8, 1), keysHomedAt(7, 8, 2), keysHomedAt(1, 8, 1)));
+        int orders = 0;
+        for (long[] keys : sets) {
+            for (int[] order : permutations(keys.length)) {
+                LongIntMap map = new LongIntMap(4); // 8 slots, grows past 4 keys
+                Map<Long, Integer> ref = new HashMap<>();
+                for (int i = 0; i < keys.length; i++) {
+                    map.put(keys[i], i);
+                    ref.put(keys[i], i);
+                }
+                sameContents(map, ref, "wrap-around fill");
+                for (int i : order) {
+                    check(orders, "wrap-around remove", map.remove(keys[i]), ref.remove(keys[i]));
+                    sameContents(map, ref, "wrap-around after removing key " + i);
+                    check(orders, "wrap-around absent", map.get(keys[i]), null);
+                }
+                orders++;
+            }
+        }
+        return orders;
+    }
+
+    private static void growth() {
+        LongIntMap map = new LongIntMap(1);
+        Map<Long, Integer> ref = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = LongIntMap.key(i % 317, i / 317);
+            map.put(key, i);
+            ref.put(key, i);
+        }
+        sameContents(map, ref, "after growth");
+        for (int i = 0; i < 100_000; i += 2) {
+            long key = LongIntMap.key(i % 317, i / 317);
+            check(i, "shrink remove", map.remove(key), ref.remove(key));
+        }
+        sameContents(map, ref, "after removing every other key");
+        try {
+            map.put(Long.MIN_VALUE, 1);
+            fail("the reserved key was accepted");
+        } catch (IllegalArgumentException expected) {
+            // the empty-slot marker cannot be a key
+        }
+    }
+
+    private static void packing() {
+        int[] coords = {0, 1, -1, 239, 65535, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        Map<Long, String> seen = new HashMap<>();
+        for (int x : coords) {
+            for (int y : coords) {
+                String prev = seen.put(LongIntMap.key(x, y), x + "," + y);
+                if (prev != null) fail("key(" + x + ", " + y + ") collides with (" + prev + ")");
+            }
+        }
+    }
+
+    // ---- helpers ----
+
+    // Mirrors LongIntMap's private slot(): multiplicative hash, folded, masked.
+    private static int home(long key, int capacity) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (capacity - 1);
+    }
+
+    private static long[] keysHomedAt(int slot, int capacity, int n) {
+        long[] keys = new long[n];
+        int found = 0;
+        for (int x = 1; found < n; x++) {
+            long key = LongIntMap.key(x, x * 7);
+            if (home(key, capacity) == slot && !usedKeys.contains(key)) {
+                keys[found++] = key;
+                usedKeys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static long[] concat(long[]... parts) {
+        int len = 0;
+        for (long[] p : parts) len += p.length;
+        long[] all = new long[len];
+        int at = 0;
+        for (long[] p : parts) {
+            System.arraycopy(p, 0, all, at, p.length);
+            at += p.length;
+        }
+        return all;
+    }
+
+    private static List<int[]> permutations(int n) {
+        List<int[]> out = new ArrayList<>();
+        permute(new int[n], new boolean[n], 0, out);
+        return out;
+    }
+
+    private static void permute(int[] cur, boolean[] used, int depth, List<int[]> out) {
+        if (depth == cur.length) {
+            out.add(cur.clone());
+            return;
+        }
+        for (int i = 0; i < cur.length; i++) {
+            if (used[i]) continue;
+            used[i] = true;
+            cur[depth] = i;
+            permute(cur, used, depth + 1, out);
+            used[i] = false;
+        }
+    }
+
+    private static void sameContents(LongIntMap map, Map<Long, Integer> ref, String when) {
+        if (map.size() != ref.size()) fail(when + ": size " + map.size() + ", expected " + ref.size());
+        for (Map.Entry<Long, Integer> e : ref.entrySet()) {
+            int got = map.get(e.getKey());
+            if (got != e.getValue()) fail(when + ": key " + e.getKey() + " -> " + got + ", expected " + e.getValue());
+        }
+    }
+
+    private static void check(int n, String op, int got, Integer expected) {
+        int want = (expected == null) ? LongIntMap.MISSING : expected;
+        if (got != want) fail("op " + n + " " + op + ": got " + got + ", expected " + want);
+    }
+
+    private static void fail(String why) {
+        System.out.println("FAIL " + why);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,259 @@
+package serverJava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Classes.Player.player;
+import Utils.Rect;
+
+/**
+ * {@link MoveValidator} on the real level ({@link GameServer}'s platforms and
+ * vines):
+ * <ul>
+ *   <li>grid index: at every position in the world, a grounded proposal is
+ *       snapped onto the same platform a scan of every platform finds (or let
+ *       fall when there is none), and the vine check agrees with a scan of
+ *       every vine;</li>
+ *   <li>a grounded player clamped onto the floor gets platform id
+ *       {@link MoveValidator#FLOOR};</li>
+ *   <li>speed and step clamps, growing with the ticks elapsed;</li>
+ *   <li>the baseline restarts after {@link MoveValidator#MAX_GAP_TICKS}, on
+ *       {@link MoveValidator#reset} and on death.</li>
+ * </ul>
+ * Exits with status 1 on the first failure.
+ */
+public final class MoveValidatorTest {
+
+    private static final int SIZE = MoveValidator.PLAYER_SIZE;
+    private static final int MAX_X = MoveValidator.WORLD_W - SIZE, MAX_Y = MoveValidator.WORLD_H - SIZE;
+
+    public static void main(String[] args) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        GameServer server = new GameServer(0); // never started: only its level is used
+        System.setOut(console);
+        List<Rect> platforms = server.getPlatforms(), vines = server.getVines();
+
+        int[] ground = groundSweep(platforms);
+        int vineMisses = vineSweep(vines);
+        floor(platforms, vines);
+        clamps(platforms, vines);
+        gaps(platforms, vines);
+        System.out.printf("MoveValidatorTest: %d grounded positions (%d on a platform, %d snapped, %d falling), "
+                        + "%d positions off every vine, clamp and baseline checks passed%n",
+                ground[0], ground[1], ground[2], ground[3], vineMisses);
+    }
+
+    /** @return {positions, standing exactly on a top, snapped, not supported} */
+    private static int[] groundSweep(List<Rect> platforms) {
+        MoveValidator v = new MoveValidator(platforms, List.of());
+        int positions = 0, standing = 0, snapped = 0, falling = 0;
+        for (int y = 0; y < MAX_Y; y++) {
+            for (int x = 0; x <= MAX_X; x++) {
+                positions++;
+                player p = new player(0, 0);
+                v.validate(p, 0, x, y, 0, 0, 0); // baseline
+                byte[] corr = v.validate(p, 1, x, y, 0, 0, MoveValidator.FLAG_GROUNDED);
+                int plat = supportScan(platforms, x, y + SIZE);
+                String at = "grounded at (" + x + ", " + y + ")";
+                if (plat == MoveValidator.FLOOR) {
+                    falling++;
+                    expect(corr, correction(false, MoveValidator.FLOOR, 0, 0), at + " over nothing");
+                    expectMotion(p, x, y, at + " over nothing");
+                    continue;
+                }
+                int top = platforms.get(plat).y() - SIZE;
+                if (top == y) {
+                    standing++;
+                    expect(corr, null, at + " on platform " + plat);
+                } else {
+                    snapped++;
+                    expect(corr, correction(true, plat, top, 0), at + " near platform " + plat);
+                }
+                expectMotion(p, x, top, at);
+            }
+        }
+        if (standing == 0 || snapped == 0 || falling == 0) fail("ground sweep missed a case");
+        long fixes = stat(v, "ground");
+        if (fixes != snapped + falling) fail("ground fixes " + fixes + ", expected " + (snapped + falling));
+        return new int[] {positions, standing, snapped, falling};
+    }
+
+    /** @return positions off every vine */
+    private static int vineSweep(List<Rect> vines) {
+        MoveValidator v = new MoveValidator(List.of(), vines);
+        int misses = 0;
+        for (int y = 0; y <= MAX_Y; y++) {
+            for (int x = 0; x <= MAX_X; x++) {
+                player p = new player(0, 0);
+                v.validate(p, 0, x, y, 0, 0, 0);
+                long before = stat(v, "vine");
+                expect(v.validate(p, 1, x, y, 0, 1, MoveValidator.FLAG_ON_VINE), null, "on vine at (" + x + ", " + y + ")");
+                boolean flagged = stat(v, "vine") != before;
+                boolean touches = touchScan(vines, x, y);
+                if (flagged == touches) {
+                    fail("vine at (" + x + ", " + y + "): scan says " + (touches ? "touching" : "off")
+                            + ", validator " + (flagged ? "flagged it" : "did not flag it"));
+                }
+                if (!touches) misses++;
+            }
+        }
+        if (misses == 0) fail("vine sweep never left a vine");
+        return misses;
+    }
+
+    private static void floor(List<Rect> platforms, List<Rect> vines) {
+        MoveValidator v = new MoveValidator(platforms, vines);
+        player p = new player(0, 0);
+        v.validate(p, 0, 120, MAX_Y - 2, 0, 0, MoveValidator.FLAG_GROUNDED);
+        // Step clamp to MAX_Y + 2, bounds clamp to MAX_Y: the floor.
+        byte[] corr = v.validate(p, 1, 120, MAX_Y + 4, 0, 0, MoveValidator.FLAG_GROUNDED);
+        expect(corr, correction(true, MoveValidator.FLOOR, MAX_Y, 0), "grounded below the floor");
+        expectMotion(p, 120, MAX_Y, "grounded below the floor");
+        // Already on the floor: nothing to say.
+        expect(v.validate(p, 2, 121, MAX_Y, 1, 0, MoveValidator.FLAG_GROUNDED), null, "grounded on the floor");
+    }
+
+    private static void clamps(List<Rect> platforms, List<Rect> vines) {
+        MoveValidator v = new MoveValidator(platforms, vines);
+        player p = new player(0, 0);
+        v.validate(p, 0, 100, 100, 0, 0, 0);
+
+        // Speed: clamped, position untouched, nothing sent.
+        expect(v.validate(p, 1, 100, 100, 5, -9, 0), null, "fast proposal");
+        long m = p.motion();
+        if (player.vx(m) != MoveValidator.MAX_VX || player.vy(m) != -MoveValidator.MAX_VY) {
+            fail("speed clamped to (" + player.vx(m) + ", " + player.vy(m) + ")");
+        }
+
+        // Step over one tick: x within MAX_VX + slack + vine hop, y within MAX_VY + slack.
+        int reachX = MoveValidator.MAX_VX + MoveValidator.STEP_SLACK + MoveValidator.VINE_SNAP_X;
+        int reachY = MoveValidator.MAX_VY + MoveValidator.STEP_SLACK;
+        expect(v.validate(p, 2, 100 + reachX, 100 + reachY, 0, 0, 0), null, "step at the limit");
+        expectMotion(p, 100 + reachX, 100 + reachY, "step at the limit");
+        int x0 = 100 + reachX, y0 = 100 + reachY;
+        byte[] corr = v.validate(p, 3, x0 + reachX + 30, y0 + reachY + 7, 0, 0, 0);
+        expect(corr, correction(false, MoveValidator.FLOOR, 0, -7), "step too far");
+        expectMotion(p, x0 + reachX, y0 + reachY, "step too far");
+
+        // Ten ticks later the reach is ten steps.
+        int x1 = x0 + reachX, y1 = y0 + reachY;
+        int reachY10 = 10 * MoveValidator.MAX_VY + MoveValidator.STEP_SLACK;
+        expect(v.validate(p, 13, x1, y1 - reachY10, 0, 0, 0), null, "ten-tick step at the limit");
+        corr = v.validate(p, 14, x1, y1 - reachY10 - reachY - 3, 0, 0, 0);
+        expect(corr, correction(false, MoveValidator.FLOOR, 0, 3), "step up too far");
+
+        // A repeated tick is judged as one frame, not zero.
+        long before = p.motion();
+        expect(v.validate(p, 14, player.x(before), player.y(before) + reachY, 0, 0, 0), null, "repeated tick");
+
+        // Out of the world: clamped to the edge.
+        player q = new player(0, 0);
+        v.validate(q, 0, 1, 100, 0, 0, 0);
+        v.validate(q, 1, -2, 100, 0, 0, 0);
+        expectMotion(q, 0, 100, "left of the world");
+    }
+
+    private static void gaps(List<Rect> platforms, List<Rect> vines) {
+        MoveValidator v = new MoveValidator(platforms, vines);
+        player p = new player(0, 0);
+        v.validate(p, 0, 10, 10, 0, 0, 0);
+
+        // Up to MAX_GAP_TICKS the step is judged: clamped.
+        int reachY = MoveValidator.MAX_VY * MoveValidator.MAX_GAP_TICKS + MoveValidator.STEP_SLACK;
+        int far = Math.min(MAX_Y, 10 + reachY + 20);
+        v.validate(p, MoveValidator.MAX_GAP_TICKS, 200, far, 0, 0, 0);
+        expectMotion(p, 10 + MoveValidator.MAX_VX * MoveValidator.MAX_GAP_TICKS
+                + MoveValidator.STEP_SLACK + MoveValidator.VINE_SNAP_X, Math.min(far, 10 + reachY), "gap of MAX_GAP_TICKS");
+
+        // Past it the baseline restarts: taken as is.
+        long t = MoveValidator.MAX_GAP_TICKS;
+        expect(v.validate(p, t + MoveValidator.MAX_GAP_TICKS + 1, 30, 200, 0, 0, 0), null, "gap past MAX_GAP_TICKS");
+        expectMotion(p, 30, 200, "gap past MAX_GAP_TICKS");
+        t += MoveValidator.MAX_GAP_TICKS + 1;
+
+        // Reset (respawn): the next proposal is taken as is, then judged again.
+        v.reset(p);
+        expect(v.validate(p, t + 1, 200, 20, 0, 0, 0), null, "after reset");
+        expectMotion(p, 200, 20, "after reset");
+        v.validate(p, t + 2, 10, 20, 0, 0, 0);
+        if (player.x(p.motion()) == 10) fail("baseline not restored after reset");
+
+        // Death: taken as is.
+        expect(v.validate(p, t + 3, 50, 150, 0, 0, MoveValidator.FLAG_DEAD), null, "dead");
+        expectMotion(p, 50, 150, "dead");
+    }
+
+    // ---- reference scans over every rect ----
+
+    private static int supportScan(List<Rect> platforms, int x, int feetY) {
+        int best = MoveValidator.FLOOR, bestGap = Integer.MAX_VALUE;
+        for (int i = 0; i < platforms.size(); i++) {
+            Rect pl = platforms.get(i);
+            int gap = Math.abs(pl.y() - feetY);
+            if (gap <= MoveValidator.SUPPORT_TOLERANCE && gap < bestGap && x < pl.right() && x + SIZE > pl.left()) {
+                best = i;
+                bestGap = gap;
+            }
+        }
+        return best;
+    }
+
+    private static boolean touchScan(List<Rect> vines, int x, int y) {
+        int t = MoveValidator.SUPPORT_TOLERANCE;
+        for (Rect v : vines) {
+            if (x < v.right() + t && x + SIZE > v.left() - t && y < v.bottom() + t && y + SIZE > v.top() - t) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---- helpers ----
+
+    // One counter of MoveValidator.printStats.
+    private static long stat(MoveValidator v, String name) {
+        PrintStream console = System.out;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buf));
+        try {
+            v.printStats();
+        } finally {
+            System.setOut(console);
+        }
+        Matcher m = Pattern.compile("\\b" + name + "=(\\d+)").matcher(buf.toString());
+        if (!m.find()) fail("no " + name + " counter in: " + buf);
+        return Long.parseLong(m.group(1));
+    }
+
+    private static byte[] correction(boolean grounded, int platformId, int yCorr, int vyCorr) {
+        return new byte[] {
+                (byte) (grounded ? 1 : 0),
+                (byte) (platformId >> 8), (byte) platformId,
+                (byte) (yCorr >> 8), (byte) yCorr,
+                (byte) (vyCorr >> 8), (byte) vyCorr };
+    }
+
+    private static void expect(byte[] got, byte[] want, String what) {
+        if (!Arrays.equals(got, want)) {
+            fail(what + ": correction " + Arrays.toString(got) + ", expected " + Arrays.toString(want));
+        }
+    }
+
+    private static void expectMotion(player p, int x, int y, String what) {
+        long m = p.motion();
+        if (player.x(m) != x || player.y(m) != y) {
+            fail(what + ": accepted (" + player.x(m) + ", " + player.y(m) + "), expected (" + x + ", " + y + ")");
+        }
+    }
+
+    private static void fail(String why) {
+        System.out.println("FAIL " + why);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,219 @@
+package serverJava;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Races on one {@link Room}: player reservations and releases against
+ * {@link Room#closeIfEmpty()} (the compare-and-set {@code occupied}
+ * protocol), and spectator joins and leaves on one player's
+ * {@link BroadcastGroup}.
+ * <p>
+ * Slots: a slot is never held by two clients, the holder is the one
+ * {@link Room#playerInSlot} reports, a release frees the slot it reserved,
+ * the room closes only with no slot held, and once it is closed nobody gets
+ * in. Groups: seats never exceed the cap, privileged members never take
+ * one, nobody is listed twice, a member can neither join twice nor leave
+ * twice, and the group is empty once everyone has left.
+ * <p>
+ * Exits with status 1 on the first failure.
+ */
+public final class RoomConcurrencyTest {
+
+    private static final int THREADS = 6;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 120;
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // handlers log as they are built
+
+        long reservations = 0, refusedAfterClose = 0;
+        for (int r = 0; r < rounds; r++) {
+            long[] counts = slotRace(new Room(r + 1, 2), 1 + r % THREADS);
+            reservations += counts[0];
+            refusedAfterClose += counts[1];
+        }
+        long[] group = groupRace(3, 2000);
+
+        System.setOut(console);
+        System.out.printf("RoomConcurrencyTest: rounds=%d reservations=%d refusedAfterClose=%d joins=%d leaves=%d refusedFull=%d%n",
+                rounds, reservations, refusedAfterClose, group[0], group[1], group[2]);
+    }
+
+    /**
+     * {@code clients} threads reserve and release slots while one more keeps
+     * trying to close the room, until it manages to; everyone then tries once
+     * more. With few clients the room empties often and the close lands
+     * mid-race; with many it mostly lands once they are done.
+     *
+     * @return {reservations granted, reservations refused after the close}
+     */
+    private static long[] slotRace(Room room, int clients) throws InterruptedException {
+        AtomicReferenceArray<Integer> holder = new AtomicReferenceArray<>(Room.MAX_PLAYERS + 1);
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicLong granted = new AtomicLong(), refusedAfterClose = new AtomicLong();
+        AtomicInteger ids = new AtomicInteger(1), attempts = new AtomicInteger();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < clients; t++) {
+            threads.add(Thread.ofPlatform().unstarted(() -> {
+                await(go);
+                // A few reserve/release cycles each, so the room empties now and then.
+                for (int i = 0; i < 20 && failure.get() == null; i++) {
+                    int id = ids.getAndIncrement();
+                    attempts.incrementAndGet();
+                    boolean wasClosed = closed.get();
+                    int slot = room.reservePlayerSlot(id);
+                    if (slot == 0) {
+                        if (wasClosed) refusedAfterClose.incrementAndGet();
+                        continue;
+                    }
+                    if (wasClosed) failure.compareAndSet(null, "reserved slot " + slot + " of a closed room");
+                    granted.incrementAndGet();
+                    if (!holder.compareAndSet(slot, null, id)) {
+                        failure.compareAndSet(null, "slot " + slot + " handed to " + id + " while held by " + holder.get(slot));
+                    }
+                    Integer shown = room.playerInSlot(slot);
+                    if (shown == null || shown != id) {
+                        failure.compareAndSet(null, "slot " + slot + " reserved by " + id + " shows " + shown);
+                    }
+                    Thread.yield();
+                    holder.set(slot, null);
+                    int freed = room.releasePlayerSlot(id);
+                    if (freed != slot) failure.compareAndSet(null, id + " reserved slot " + slot + " but freed " + freed);
+                    Thread.yield(); // the room may be empty now: give the closer a chance
+                }
+                // Whatever happened, a reservation after the close must fail.
+                while (!closed.get()) Thread.onSpinWait();
+                if (room.reservePlayerSlot(ids.getAndIncrement()) != 0) {
+                    failure.compareAndSet(null, "reserved a slot after the room closed");
+                } else {
+                    refusedAfterClose.incrementAndGet();
+                }
+            }));
+        }
+        threads.add(Thread.ofPlatform().unstarted(() -> {
+            await(go);
+            // Let the clients get going first, so the close races live reservations.
+            while (attempts.get() < clients * 5) Thread.onSpinWait();
+            while (!room.closeIfEmpty()) Thread.onSpinWait();
+            // occupied was 0: every release had already cleared its slot.
+            for (int s = 1; s <= Room.MAX_PLAYERS; s++) {
+                if (room.playerInSlot(s) != null) failure.compareAndSet(null, "closed with slot " + s + " held");
+            }
+            if (room.closeIfEmpty()) failure.compareAndSet(null, "room closed twice");
+            closed.set(true);
+        }));
+
+        threads.forEach(Thread::start);
+        go.countDown();
+        for (Thread t : threads) t.join();
+        if (failure.get() != null) fail(failure.get());
+        if (!room.isClosed() || room.hasPlayers()) fail("room not closed and empty at the end");
+        return new long[] {granted.get(), refusedAfterClose.get()};
+    }
+
+    /**
+     * THREADS spectators and one privileged member join and leave one group
+     * with {@code cap} seats; a checker reads the group all along.
+     *
+     * @return {joins, leaves, joins refused as full}
+     */
+    private static long[] groupRace(int cap, int cycles) throws Exception {
+        GameServer server = new GameServer(0); // never started: handlers only need its config and players
+        Room room = new Room(1, cap);
+        BroadcastGroup group = room.spectatorsOf(1);
+        if (room.spectatorsOf(1) != group) fail("spectatorsOf created a second group for the same player");
+
+        List<ClientHandler> members = new ArrayList<>();
+        try (ServerSocket listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            List<Socket> sockets = new ArrayList<>();
+            for (int i = 0; i <= THREADS; i++) {
+                Socket client = new Socket(listener.getInetAddress(), listener.getLocalPort());
+                sockets.add(client);
+                Socket accepted = listener.accept();
+                sockets.add(accepted);
+                ClientRole role = (i == THREADS) ? ClientRole.RELAY : ClientRole.SPECTATOR;
+                members.add(new ClientHandler(100 + i, accepted, server, role, room));
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong joins = new AtomicLong(), leaves = new AtomicLong(), full = new AtomicLong();
+            AtomicReference<String> failure = new AtomicReference<>();
+            CountDownLatch go = new CountDownLatch(THREADS + 1);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t <= THREADS; t++) {
+                ClientHandler me = members.get(t);
+                boolean privileged = (t == THREADS);
+                threads.add(Thread.ofPlatform().start(() -> {
+                    go.countDown();
+                    await(go);
+                    for (int i = 0; i < cycles; i++) {
+                        if (!group.tryJoin(me, privileged)) {
+                            if (privileged) failure.compareAndSet(null, "privileged member refused");
+                            full.incrementAndGet();
+                            continue;
+                        }
+                        joins.incrementAndGet();
+                        if (group.tryJoin(me, privileged)) failure.compareAndSet(null, "joined twice");
+                        if (ThreadLocalRandom.current().nextInt(4) == 0) Thread.yield();
+                        if (!group.leave(me)) failure.compareAndSet(null, "member could not leave");
+                        leaves.incrementAndGet();
+                        if (group.leave(me)) failure.compareAndSet(null, "left twice");
+                    }
+                }));
+            }
+            Thread checker = Thread.ofPlatform().start(() -> {
+                while (running.get()) {
+                    ClientHandler[] seen = group.members();
+                    IdentityHashMap<ClientHandler, Boolean> distinct = new IdentityHashMap<>();
+                    int seated = 0;
+                    for (ClientHandler h : seen) {
+                        if (distinct.put(h, Boolean.TRUE) != null) failure.compareAndSet(null, "member listed twice");
+                        if (h.getRole() != ClientRole.RELAY) seated++;
+                    }
+                    if (seated > cap) failure.compareAndSet(null, seated + " seated members, cap " + cap);
+                    if (group.size() > cap) failure.compareAndSet(null, "size " + group.size() + " over cap " + cap);
+                }
+            });
+
+            for (Thread t : threads) t.join();
+            running.set(false);
+            checker.join();
+            if (failure.get() != null) fail(failure.get());
+            if (!group.isEmpty() || group.size() != 0) fail("group not empty after everyone left");
+            if (joins.get() != leaves.get()) fail(joins.get() + " joins but " + leaves.get() + " leaves");
+
+            for (Socket s : sockets) s.close();
+            return new long[] {joins.get(), leaves.get(), full.get()};
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void fail(String why) {
+        System.err.println("FAIL " + why);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,176 @@
+package serverJava;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import MessageManagement.FrameCodec;
+import MessageManagement.Proto;
+import Utils.MsgType;
+
+/**
+ * Memory and connection capacity of blocking sessions on platform threads
+ * versus virtual threads ({@code --virtual-threads}). Each mode runs in its
+ * own JVM: an in-process blocking {@link GameServer}, one player, and idle
+ * spectators of that player connected one after another until the target
+ * count or the first refused connection. Every spectator session holds a
+ * reader and a writer thread on the server.
+ * <p>
+ * Usage: {@code java -cp OUT serverJava.SessionThreadsBench [max spectators]}.
+ * At 1000, 2000, 4000... connections it reports the platform threads of the
+ * process, heap used after a GC, resident memory and the time that step took
+ * per 1000 connections. On the 1-CPU, 6 GB build sandbox (JDK 21, default
+ * heap):
+ * <pre>
+ * mode      connections  platform threads  heap MB  RSS MB  ms/1000 conns
+ * platform         1000              2029       30     261           1098
+ * platform         2000              4019       59     362            731
+ * platform         4000              8018      116     582           1106
+ * platform         8000             16015      230     973           1616
+ * virtual          1000                18       27     106           1020
+ * virtual          2000                18       52     133            358
+ * virtual          4000                18      101     201            363
+ * virtual          8000                18      191     344            361
+ * </pre>
+ * Heap is the same in both modes (about 29 KB per connection, mostly session
+ * buffers; parked virtual-thread stacks are small). Resident memory is not:
+ * about 100 KB per connection on platform threads, two kernel threads with
+ * their stacks, against about 30 KB on virtual threads, whose platform
+ * thread count stays flat. Connecting also stays cheap with virtual threads
+ * as the count grows. With {@code 12000} both modes stop near 9995 connections
+ * on the sandbox's 20000 file descriptors (client and server end of each
+ * loopback connection live in this process); platform threads are at 20012
+ * kernel threads by then, so without that limit they would run into the
+ * process thread limit long before virtual threads do.
+ */
+public final class SessionThreadsBench {
+
+    private static final int FIRST_STEP = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            child(args[1].equals("virtual"), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int max = (args.length > 0) ? Integer.parseInt(args[0]) : 8000;
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String cp = System.getProperty("java.class.path");
+
+        System.out.println("mode      connections  platform threads  heap MB  RSS MB  ms/1000 conns");
+        int port = 47400;
+        for (String mode : new String[] {"platform", "virtual"}) {
+            Process p = new ProcessBuilder(java, "-cp", cp, SessionThreadsBench.class.getName(),
+                    "child", mode, String.valueOf(++port), String.valueOf(max))
+                    .inheritIO().start();
+            if (p.waitFor() != 0) System.out.println(mode + ": child exited with " + p.exitValue());
+        }
+    }
+
+    private static void child(boolean virtual, int port, int max) throws Exception {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // the server logs every join
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
+            if (!(e instanceof java.awt.HeadlessException)) e.printStackTrace(); // the server GUI, without a display
+        });
+        String mode = virtual ? "virtual" : "platform";
+
+        List<String> opts = new ArrayList<>(List.of(String.valueOf(port), "--spectators-per-player=" + max));
+        if (virtual) opts.add("--virtual-threads");
+        GameServer server = new GameServer(ServerConfig.fromArgs(opts.toArray(new String[0])));
+        Thread.ofPlatform().daemon(true).start(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(500);
+
+        Socket player = new Socket("127.0.0.1", port);
+        player.getOutputStream().write(1);
+        player.getOutputStream().flush();
+        Thread.ofPlatform().daemon(true).start(() -> {
+            try {
+                player.getInputStream().transferTo(OutputStream.nullOutputStream());
+            } catch (IOException ignore) {}
+        });
+        Thread.sleep(200);
+
+        List<Socket> viewers = new ArrayList<>();
+        int step = FIRST_STEP, stepFrom = 0;
+        long stepStart = System.nanoTime();
+        String stop = null;
+        try {
+            while (viewers.size() < max) {
+                viewers.add(spectator(port));
+                if (viewers.size() == step || viewers.size() == max) {
+                    long nanosPerConn = (System.nanoTime() - stepStart) / (viewers.size() - stepFrom);
+                    report(console, mode, viewers.size(), nanosPerConn / 1000); // ms per 1000 connections
+                    stepFrom = viewers.size();
+                    step *= 2;
+                    stepStart = System.nanoTime();
+                }
+            }
+        } catch (IOException e) {
+            stop = e.getMessage();
+        }
+        if (stop != null) {
+            console.println(mode + ": stopped at " + viewers.size() + " connections: " + stop);
+            report(console, mode, viewers.size(), -1);
+        }
+        for (Socket s : viewers) s.close();
+        player.close();
+        System.exit(0); // the server's threads are not daemons
+    }
+
+    private static void report(PrintStream out, String mode, int connections, long msPer1000) {
+        System.gc();
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        long heapMb = (rt.totalMemory() - rt.freeMemory()) >> 20;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        out.printf("%-8s  %11d  %16d  %7d  %6d  %13s%n", mode, connections, threads, heapMb, rssMb(),
+                (msPer1000 < 0) ? "-" : String.valueOf(msPer1000));
+    }
+
+    // Resident set of this process, from /proc; -1 where there is none (or no descriptor left to read it).
+    private static long rssMb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("\\D", "")) >> 10;
+            }
+        } catch (IOException ignore) {}
+        return -1;
+    }
+
+    // Handshakes as a spectator of slot 1 and never reads again; a server out of resources times out.
+    private static Socket spectator(int port) throws IOException {
+        Socket s = new Socket("127.0.0.1", port);
+        try {
+            s.setSoTimeout(5000);
+            s.getOutputStream().write(2);
+            byte[] ack = new byte[FrameCodec.CLIENT_ACK_LEN];
+            new DataInputStream(s.getInputStream()).readFully(ack);
+            if (ack[Proto.HEADER_LEN] != 2) throw new IOException("refused");
+            s.getOutputStream().write(frame(MsgType.SPECTATE_REQUEST, new byte[] {1, 0}));
+            return s;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    private static byte[] frame(byte type, byte[] payload) {
+        return ByteBuffer.allocate(Proto.HEADER_LEN + payload.length)
+                .put(Proto.VERSION).put(type).putShort((short) 0)
+                .putInt(0).putInt(0).putInt(payload.length).put(payload).array();
+    }
+}
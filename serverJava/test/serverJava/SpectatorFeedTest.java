@@ -0,0 +1,262 @@
+package serverJava;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import MessageManagement.Proto;
+import Utils.MsgType;
+
+/**
+ * {@link SpectatorFeed#publish} driven with a random entity stream (entities
+ * moving, appearing, leaving and coming back, every one changing at once,
+ * frames with no entity list) while spectators rebuild their entity list from exactly the
+ * frames their session hands the writer, the way a client does:
+ * <ul>
+ *   <li>every spectator's rebuilt list always equals the list of the state it
+ *       last received (the player x of each published state is its number);</li>
+ *   <li>spectators that did not ask for deltas, and spectators on their own
+ *       rate, only ever get keyframes;</li>
+ *   <li>a delta spectator gets deltas, but never more than
+ *       {@code keyframeInterval - 1} in a row;</li>
+ *   <li>a keyframe follows a frame without a usable entity list (baseline
+ *       reset), a spectator joining mid-stream, and a spectator whose last
+ *       frame was replaced before it was written;</li>
+ *   <li>a frame where every entity changed goes out as a keyframe (the delta
+ *       would not be smaller).</li>
+ * </ul>
+ * Exits with status 1 on the first failure.
+ */
+public final class SpectatorFeedTest {
+
+    private static final int KEYFRAME_INTERVAL = 8;
+    private static final int PUBLISHES = 3000;
+
+    /** One spectator and the entity list it has rebuilt from its frames. */
+    private static final class Viewer {
+        final String name;
+        final ClientHandler handler;
+        final boolean drainsEveryFrame;
+        List<byte[]> entities;     // null until the first keyframe
+        int lastState = -1;        // number of the last state received
+        int frames, deltas, deltaRun, maxDeltaRun;
+        boolean expectKeyframe = true;
+
+        Viewer(String name, ClientHandler handler, boolean drainsEveryFrame) {
+            this.name = name;
+            this.handler = handler;
+            this.drainsEveryFrame = drainsEveryFrame;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // handlers log as they are built
+
+        GameServer server = new GameServer(0); // never started: handlers only need its config
+        Set<SpectatorFeed> trailing = ConcurrentHashMap.newKeySet();
+        SpectatorFeed feed = new SpectatorFeed(KEYFRAME_INTERVAL, 0, trailing);
+        BroadcastGroup group = new BroadcastGroup(16);
+        Room room = new Room(1, 16);
+        List<Socket> sockets = new ArrayList<>();
+        List<Viewer> viewers = new ArrayList<>();
+
+        try (ServerSocket listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Viewer delta  = join(group, viewers, spectator(listener, sockets, server, room, 1), "delta", true, 0, true);
+            Viewer full   = join(group, viewers, spectator(listener, sockets, server, room, 2), "full", false, 0, true);
+            Viewer ownHz  = join(group, viewers, spectator(listener, sockets, server, room, 3), "own-rate", true, 1_000_000, true);
+            Viewer slow   = join(group, viewers, spectator(listener, sockets, server, room, 4), "slow", true, 0, false);
+            ClientHandler lateHandler = spectator(listener, sockets, server, room, 5);
+            Viewer late = null;
+
+            Random r = new Random(11);
+            List<byte[]> ents = new ArrayList<>(), gone = new ArrayList<>();
+            for (int i = 0; i < 30; i++) ents.add(randomEntity(r));
+            List<List<byte[]>> published = new ArrayList<>();
+            int allChangedFrames = 0, allChangedAsKeyframe = 0, noListFrames = 0;
+
+            for (int n = 0; n < PUBLISHES; n++) {
+                if (n == PUBLISHES / 2) {
+                    late = join(group, viewers, lateHandler, "late", true, 0, true);
+                }
+
+                boolean noList = r.nextInt(50) == 0;
+                boolean allChanged = !noList && !ents.isEmpty() && r.nextInt(40) == 0;
+                evolve(ents, gone, r, allChanged);
+                published.add(noList ? null : copy(ents));
+                byte[] tlv = noList ? new byte[0] : entitiesTlv(ents);
+                feed.publish(group, (short) n, (short) 0, (short) 0, (short) 0, (byte) 0, tlv, 0, tlv.length);
+
+                if (noList) {
+                    noListFrames++;
+                    for (Viewer v : viewers) v.expectKeyframe = true; // no baseline for the next frame
+                }
+                boolean slowDrains = r.nextInt(5) == 0;
+                for (Viewer v : viewers) {
+                    if (v.drainsEveryFrame || slowDrains) {
+                        int deltasBefore = v.deltas;
+                        drain(v, published);
+                        if (v == delta && allChanged && v.deltas == deltasBefore) allChangedAsKeyframe++;
+                    }
+                }
+                if (allChanged) allChangedFrames++;
+            }
+
+            for (Viewer v : viewers) {
+                if (v.frames == 0) fail(v.name + " received nothing");
+            }
+            if (full.deltas != 0) fail("spectator without delta opt-in got " + full.deltas + " deltas");
+            if (ownHz.deltas != 0) fail("spectator on its own rate got " + ownHz.deltas + " deltas");
+            if (delta.deltas < PUBLISHES / 2) fail("delta spectator got only " + delta.deltas + " deltas");
+            if (delta.maxDeltaRun > KEYFRAME_INTERVAL - 1) {
+                fail(delta.maxDeltaRun + " deltas in a row, keyframe interval " + KEYFRAME_INTERVAL);
+            }
+            if (late == null || late.deltas == 0) fail("spectator joining mid-stream never got deltas");
+            if (slow.frames >= PUBLISHES / 2) fail("slow spectator was not coalesced (" + slow.frames + " frames)");
+            if (allChangedFrames == 0 || allChangedAsKeyframe != allChangedFrames) {
+                fail(allChangedAsKeyframe + " of " + allChangedFrames + " all-changed frames went out as keyframes");
+            }
+
+            System.setOut(console);
+            System.out.printf("SpectatorFeedTest: %d states (%d without entities, %d all changed); "
+                            + "frames/deltas delta=%d/%d full=%d/%d own-rate=%d/%d slow=%d/%d late=%d/%d%n",
+                    PUBLISHES, noListFrames, allChangedFrames,
+                    delta.frames, delta.deltas, full.frames, full.deltas, ownHz.frames, ownHz.deltas,
+                    slow.frames, slow.deltas, late.frames, late.deltas);
+        } finally {
+            for (Socket s : sockets) s.close();
+        }
+    }
+
+    private static ClientHandler spectator(ServerSocket listener, List<Socket> sockets, GameServer server,
+                                           Room room, int id) throws Exception {
+        sockets.add(new Socket(listener.getInetAddress(), listener.getLocalPort()));
+        Socket accepted = listener.accept();
+        sockets.add(accepted);
+        return new ClientHandler(100 + id, accepted, server, ClientRole.SPECTATOR, room);
+    }
+
+    private static Viewer join(BroadcastGroup group, List<Viewer> viewers, ClientHandler h, String name,
+                               boolean wantsDelta, int hz, boolean drainsEveryFrame) {
+        h.resetFeed(wantsDelta, hz);
+        if (!group.tryJoin(h, false)) fail(name + " could not join");
+        Viewer v = new Viewer(name, h, drainsEveryFrame);
+        viewers.add(v);
+        return v;
+    }
+
+    /** Takes every frame the writer would write and applies it, like a client. */
+    private static void drain(Viewer v, List<List<byte[]>> published) {
+        for (byte[] f = v.handler.session().poll(); f != null; f = v.handler.session().poll()) {
+            if (f[1] != MsgType.SPECTATOR_STATE) continue;
+            ByteBuffer b = ByteBuffer.wrap(f);
+            int state = b.getShort(Proto.HEADER_LEN);
+            if (state <= v.lastState) fail(v.name + " got state " + state + " after " + v.lastState);
+            if (state > v.lastState + 1) v.expectKeyframe = true; // missed a state: no baseline
+            v.lastState = state;
+            v.frames++;
+
+            int at = Proto.HEADER_LEN + 9;
+            byte tlvType = (f.length > at) ? f[at] : 0;
+            if (tlvType == MsgType.TLV_ENTITIES_DELTA) {
+                if (v.expectKeyframe) fail(v.name + " got a delta for state " + state + " where a keyframe was due");
+                if (v.entities == null) fail(v.name + " got a delta before any keyframe");
+                int count = f[at + 3] & 0xFF, changed = f[at + 4] & 0xFF;
+                while (v.entities.size() > count) v.entities.remove(v.entities.size() - 1);
+                while (v.entities.size() < count) v.entities.add(null);
+                for (int i = 0, p = at + 5; i < changed; i++, p += 7) {
+                    v.entities.set(f[p] & 0xFF, Arrays.copyOfRange(f, p + 1, p + 7));
+                }
+                v.deltas++;
+                v.deltaRun++;
+                v.maxDeltaRun = Math.max(v.maxDeltaRun, v.deltaRun);
+            } else if (tlvType == MsgType.TLV_ENTITIES_CORR) {
+                int count = f[at + 3] & 0xFF;
+                v.entities = new ArrayList<>();
+                for (int i = 0, p = at + 4; i < count; i++, p += 6) v.entities.add(Arrays.copyOfRange(f, p, p + 6));
+                v.deltaRun = 0;
+            } else {
+                v.entities = null; // no entity list in this state
+                v.deltaRun = 0;
+            }
+            v.expectKeyframe = false;
+
+            List<byte[]> want = published.get(state);
+            if (!sameEntities(v.entities, want)) {
+                fail(v.name + " rebuilt a wrong entity list for state " + state
+                        + " (" + size(v.entities) + " entities, expected " + size(want) + ")");
+            }
+        }
+    }
+
+    // Moves a few entities; now and then some appear, some leave, or the last
+    // ones to leave come back unchanged. allChanged moves every one.
+    private static void evolve(List<byte[]> ents, List<byte[]> gone, Random r, boolean allChanged) {
+        if (allChanged) {
+            for (byte[] e : ents) e[0]++;
+            return;
+        }
+        int op = r.nextInt(10);
+        if (op == 0 && ents.size() < 60) {
+            for (int k = 1 + r.nextInt(5); k > 0; k--) ents.add(randomEntity(r));
+        } else if (op == 1 && !ents.isEmpty()) {
+            gone.clear();
+            for (int k = 1 + r.nextInt(Math.min(8, ents.size())); k > 0; k--) {
+                gone.add(0, ents.remove(ents.size() - 1));
+            }
+        } else if (op == 2 && !gone.isEmpty() && ents.size() + gone.size() <= 60) {
+            ents.addAll(gone);
+            gone.clear();
+        }
+        for (int k = r.nextInt(3); k > 0 && !ents.isEmpty(); k--) {
+            ents.get(r.nextInt(ents.size()))[3]++;
+        }
+    }
+
+    private static byte[] randomEntity(Random r) {
+        byte[] e = new byte[6];
+        r.nextBytes(e);
+        return e;
+    }
+
+    // TLV_ENTITIES_CORR as the player sends it: type, u16 length, u8 count, count × 6 bytes.
+    private static byte[] entitiesTlv(List<byte[]> ents) {
+        ByteBuffer b = ByteBuffer.allocate(4 + 6 * ents.size());
+        b.put(MsgType.TLV_ENTITIES_CORR).putShort((short) (1 + 6 * ents.size())).put((byte) ents.size());
+        for (byte[] e : ents) b.put(e);
+        return b.array();
+    }
+
+    private static List<byte[]> copy(List<byte[]> ents) {
+        List<byte[]> out = new ArrayList<>();
+        for (byte[] e : ents) out.add(e.clone());
+        return out;
+    }
+
+    private static boolean sameEntities(List<byte[]> a, List<byte[]> b) {
+        if (a == null || b == null) return a == b;
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!Arrays.equals(a.get(i), b.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static int size(List<byte[]> l) {
+        return (l == null) ? -1 : l.size();
+    }
+
+    private static void fail(String why) {
+        System.err.println("FAIL " + why);
+        System.exit(1);
+    }
+}
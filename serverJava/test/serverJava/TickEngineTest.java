@@ -0,0 +1,134 @@
+package serverJava;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link TickEngine} on a simulated clock, stepped with
+ * {@link TickEngine#runDueTick()} in place of its thread:
+ * <ul>
+ *   <li>absolute deadlines: random oversleeping does not make the engine
+ *       drift, 10 s at 60 Hz still run 600 ticks;</li>
+ *   <li>catch-up: a short stall is made up in a burst, a long one is
+ *       skipped;</li>
+ *   <li>an every-second phase still runs when a skip jumps past its due tick;</li>
+ *   <li>a deferrable phase waits for the next tick once the tick budget is
+ *       spent, then resumes its schedule;</li>
+ *   <li>posted tasks run at the start of the next tick, before the phases.</li>
+ * </ul>
+ * Exits with status 1 on the first failure.
+ */
+public final class TickEngineTest {
+
+    private static final int HZ = 60;
+    private static final long PERIOD = 1_000_000_000L / HZ;
+
+    public static void main(String[] args) {
+        noDrift();
+        catchUp();
+        everyPhaseSurvivesSkip();
+        deferral();
+        postedFirst();
+        System.out.println("TickEngineTest: drift, catch-up, skip, deferral and posted checks passed");
+    }
+
+    private static void noDrift() {
+        long[] now = {0};
+        TickEngine e = new TickEngine(HZ, 50, () -> now[0]);
+        long[] ran = {0};
+        e.addPhase("count", 1, 1000, false, () -> ran[0]++);
+        Random r = new Random(42);
+        while (now[0] < 10_000_000_000L) {
+            long wait = e.runDueTick();
+            if (wait > 0) now[0] += wait + r.nextInt(3_000_000); // oversleep up to 3 ms
+        }
+        // Deadlines k * PERIOD below 10 s: k = 0..600.
+        if (ran[0] < 600 || ran[0] > 601) fail("10 s at " + HZ + " Hz with oversleep ran " + ran[0] + " ticks");
+    }
+
+    private static void catchUp() {
+        long[] now = {0};
+        TickEngine e = new TickEngine(HZ, 50, () -> now[0]);
+        e.addPhase("idle", 1, 1000, false, () -> {});
+        if (e.runDueTick() != 0) fail("tick 0 not due at start");
+
+        now[0] += 3 * PERIOD; // ticks 1..3 due: behind by less than MAX_CATCH_UP, all run
+        int n = burst(e);
+        if (n != 3) fail("short stall: expected 3 ticks in a burst, got " + n);
+
+        now[0] += 20 * PERIOD; // far behind: run one tick, skip the rest
+        n = burst(e);
+        if (n != 1) fail("long stall: expected 1 tick, got " + n + " (missed ticks were run)");
+    }
+
+    // Ticks run at the current instant, until the engine asks to wait.
+    private static int burst(TickEngine e) {
+        int n = 0;
+        while (e.runDueTick() == 0) {
+            if (++n > 100) fail("engine never waits");
+        }
+        return n;
+    }
+
+    private static void everyPhaseSurvivesSkip() {
+        long[] now = {0};
+        TickEngine e = new TickEngine(HZ, 50, () -> now[0]);
+        List<Long> runsAt = new ArrayList<>();
+        e.addPhase("timeouts", e.ticksIn(1000), 1000, true, () -> runsAt.add(now[0]));
+
+        // Up to tick 55, then a stall past tick 60 (skipped), then on to 3 s.
+        runUntil(e, now, 55 * PERIOD);
+        now[0] += 10 * PERIOD;
+        runUntil(e, now, 3_000_000_000L);
+        // Due at ticks 0, 60 (after the stall: tick 65), 120 and 180.
+        if (runsAt.size() != 4) fail("every-second phase ran " + runsAt.size() + " times in 3 s, expected 4: " + runsAt);
+        long afterStall = runsAt.get(1);
+        if (afterStall < 60 * PERIOD || afterStall > 66 * PERIOD) {
+            fail("every-second phase did not run on the first tick after the stall (ran at " + afterStall + " ns)");
+        }
+    }
+
+    private static void deferral() {
+        long[] now = {0};
+        TickEngine e = new TickEngine(HZ, 50, () -> now[0]);
+        int[] tick = {-1};
+        List<Integer> upkeepTicks = new ArrayList<>();
+        e.addPhase("count", 1, 1000, false, () -> tick[0]++);
+        e.addPhase("heavy", 1, 1000, false, () -> {
+            if (tick[0] == 4) now[0] += PERIOD * 6 / 10; // over the 50% tick budget
+        });
+        e.addPhase("upkeep", 2, 1000, true, () -> upkeepTicks.add(tick[0]));
+        while (tick[0] < 9) {
+            long wait = e.runDueTick();
+            if (wait > 0) now[0] += wait;
+        }
+        // Due at 0, 2, 4, 6, 8; tick 4 spent its budget, so that run moves to 5.
+        if (!upkeepTicks.equals(List.of(0, 2, 5, 6, 8))) fail("deferrable phase ran on ticks " + upkeepTicks);
+    }
+
+    private static void postedFirst() {
+        long[] now = {0};
+        TickEngine e = new TickEngine(HZ, 50, () -> now[0]);
+        List<String> order = new ArrayList<>();
+        e.addPhase("phase", 1, 1000, false, () -> order.add("phase"));
+        e.post(() -> order.add("posted"));
+        e.runDueTick();
+        e.post(() -> order.add("posted again"));
+        now[0] += PERIOD;
+        e.runDueTick();
+        if (!order.equals(List.of("posted", "phase", "posted again", "phase"))) fail("tick order " + order);
+    }
+
+    private static void runUntil(TickEngine e, long[] now, long until) {
+        while (now[0] < until) {
+            long wait = e.runDueTick();
+            if (wait > 0) now[0] += wait;
+        }
+    }
+
+    private static void fail(String why) {
+        System.out.println("FAIL " + why);
+        System.exit(1);
+    }
+}